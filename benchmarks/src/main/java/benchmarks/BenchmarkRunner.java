@@ -0,0 +1,37 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of the image pipeline with the allocation profiler ({@code -prof gc})
+ * always enabled, so that every run reports the bytes allocated per operation next to the time.
+ * All of the usual JMH command line options are accepted, for example {@code -p megapixels=1} to
+ * only run the smallest images or a regular expression to select benchmarks.
+ */
+public final class BenchmarkRunner {
+
+  private BenchmarkRunner() {
+    // entry point only
+  }
+
+  /**
+   * Runs the benchmarks selected by the given JMH command line options.
+   *
+   * @param args the JMH command line options
+   * @throws CommandLineOptionException if the options are malformed
+   * @throws RunnerException            if running the benchmarks fails
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    Options options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import model.color.AColorTransformation;
+import model.color.Grayscale;
+import model.color.GrayscaleBlue;
+import model.color.GrayscaleGreen;
+import model.color.GrayscaleRed;
+import model.image.IImage;
+import model.image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link AColorTransformation#apply} for every grayscale variant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "--add-modules", "jdk.incubator.vector"})
+public class ColorTransformBenchmark {
+
+  @Param({"1", "12", "48"})
+  public int megapixels;
+
+  @Param({"grayscale", "grayscale-red", "grayscale-green", "grayscale-blue"})
+  public String transformation;
+
+  private Image image;
+  private AColorTransformation colorTransformation;
+
+  @Setup
+  public void setUp() {
+    this.image = SyntheticImages.create(this.megapixels);
+    switch (this.transformation) {
+      case "grayscale":
+        this.colorTransformation = new Grayscale();
+        break;
+      case "grayscale-red":
+        this.colorTransformation = new GrayscaleRed();
+        break;
+      case "grayscale-green":
+        this.colorTransformation = new GrayscaleGreen();
+        break;
+      case "grayscale-blue":
+        this.colorTransformation = new GrayscaleBlue();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown transformation: " + this.transformation);
+    }
+  }
+
+  @Benchmark
+  public IImage apply() {
+    return this.colorTransformation.apply(this.image);
+  }
+}
@@ -0,0 +1,87 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import model.image.IImage;
+import model.image.Image;
+import model.layer.BlendMode;
+import model.layer.ILayer;
+import model.layer.Layer;
+import model.layer.LayerCompositor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link LayerCompositor#flatten} over stacks of translucent layers that cycle through
+ * every blend mode, with a single thread and with every available core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "--add-modules", "jdk.incubator.vector"})
+public class CompositeBenchmark {
+
+  @Param({"1", "12"})
+  public int megapixels;
+
+  @Param({"20", "50"})
+  public int numLayers;
+
+  // 0 stands for every available core
+  @Param({"1", "0"})
+  public int parallelism;
+
+  private List<ILayer> layers;
+  private LayerCompositor compositor;
+
+  @Setup
+  public void setUp() {
+    Image base = SyntheticImages.create(this.megapixels);
+    int width = base.getWidth();
+    int height = base.getHeight();
+    int[] raster = new int[width * height];
+    base.getRows(0, height, raster, 0);
+    byte[] alpha = new byte[raster.length];
+    SplittableRandom random = new SplittableRandom(this.numLayers);
+    for (int i = 0; i < alpha.length; i++) {
+      alpha[i] = (byte) random.nextInt(256);
+    }
+
+    // the layers share their pixels, which are never written
+    this.layers = new ArrayList<>();
+    BlendMode[] modes = BlendMode.values();
+    for (int i = 0; i < this.numLayers; i++) {
+      ILayer layer = new Layer("layer" + i);
+      layer.setImage(i == 0 ? base : new Image(width, height, raster, alpha, "layer" + i));
+      layer.setBlendMode(modes[i % modes.length]);
+      this.layers.add(layer);
+    }
+    this.compositor = this.parallelism == 0 ? LayerCompositor.getDefault()
+        : new LayerCompositor(this.parallelism, 0);
+  }
+
+  @TearDown
+  public void tearDown() {
+    // stops the threads of a compositor with its own pool
+    this.compositor.close();
+  }
+
+  @Benchmark
+  public IImage flatten() {
+    return this.compositor.flatten(this.layers);
+  }
+}
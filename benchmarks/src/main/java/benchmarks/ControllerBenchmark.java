@@ -0,0 +1,54 @@
+package benchmarks;
+
+import controller.SimpleIImageProcessingController;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import model.layer.LayerModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks running a whole script through {@link SimpleIImageProcessingController}: creating a
+ * layer, loading a plain PPM file, applying a grayscale and a flip, and saving the result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "--add-modules", "jdk.incubator.vector"})
+public class ControllerBenchmark {
+
+  @Param({"1", "12", "48"})
+  public int megapixels;
+
+  private String script;
+
+  @Setup
+  public void setUp() throws IOException {
+    File input = SyntheticImages.writePlainPPM(this.megapixels);
+    File output = File.createTempFile("controller-" + this.megapixels + "mp-", ".ppm");
+    output.deleteOnExit();
+    this.script = "create base\ncurrent base\nload " + input.getPath() + "\ngrayscale\nflip-h\n"
+        + "save " + output.getPath() + "\nq\n";
+  }
+
+  @Benchmark
+  public StringBuilder runScript() {
+    StringBuilder out = new StringBuilder();
+    new SimpleIImageProcessingController(new LayerModel(), new StringReader(this.script), out)
+        .processImage();
+    return out;
+  }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import model.exports.PPMExport;
+import model.image.IPixel;
+import model.image.Image;
+import model.managers.PPMReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.ImageUtil;
+
+/**
+ * Benchmarks reading plain PPM files ({@link ImageUtil#readPPM}, which still materialises pixel
+ * objects, and {@link PPMReader}) and exporting them ({@link PPMExport#export}). Exports are written
+ * to a stream that discards its bytes so that the encoder is measured rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "--add-modules", "jdk.incubator.vector"})
+public class IOBenchmark {
+
+  @Param({"1", "12", "48"})
+  public int megapixels;
+
+  private File plainFile;
+  private Image image;
+
+  @Setup
+  public void setUp() throws IOException {
+    this.plainFile = SyntheticImages.writePlainPPM(this.megapixels);
+    this.image = SyntheticImages.create(this.megapixels);
+  }
+
+  @Benchmark
+  public IPixel[][] readPPM() {
+    return ImageUtil.readPPM(this.plainFile.getPath());
+  }
+
+  @Benchmark
+  public Image readPackedPPM() {
+    return PPMReader.readFile(this.plainFile.getPath());
+  }
+
+  @Benchmark
+  public void export() throws IOException {
+    new PPMExport(this.image, OutputStream.nullOutputStream()).export();
+  }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import model.image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the in-memory operations of {@link Image}: flipping and converting to a {@link
+ * BufferedImage}. A flip only records the new orientation of the image, so every flip is followed
+ * by reading all the pixels in their new orientation into a buffer reused between invocations,
+ * which measures the cost of the flip as seen by the next reader rather than of recording it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "--add-modules", "jdk.incubator.vector"})
+public class ImageBenchmark {
+
+  @Param({"1", "12", "48"})
+  public int megapixels;
+
+  private Image image;
+  // the pixels of the flipped image, row after row
+  private int[] rows;
+
+  @Setup
+  public void setUp() {
+    this.image = SyntheticImages.create(this.megapixels);
+    this.rows = new int[this.image.getWidth() * this.image.getHeight()];
+  }
+
+  @Benchmark
+  public int[] flipImageH() {
+    this.image.flipImageH();
+    this.image.getRows(0, this.image.getHeight(), this.rows, 0);
+    return this.rows;
+  }
+
+  @Benchmark
+  public int[] flipImageV() {
+    this.image.flipImageV();
+    this.image.getRows(0, this.image.getHeight(), this.rows, 0);
+    return this.rows;
+  }
+
+  @Benchmark
+  public BufferedImage getBufferedImage() {
+    return this.image.getBufferedImage();
+  }
+}
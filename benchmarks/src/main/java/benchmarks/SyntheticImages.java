@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import model.exports.PPMExport;
+import model.image.Image;
+
+/**
+ * This class contains static helpers to create the synthetic images the benchmarks run on. The
+ * images are filled with reproducible random colors so that nothing can be optimised for a
+ * particular content.
+ */
+final class SyntheticImages {
+
+  private SyntheticImages() {
+    // static helpers only
+  }
+
+  /**
+   * Gets the width and height of an image with roughly the given number of megapixels and a 4:3
+   * aspect ratio.
+   *
+   * @param megapixels the number of megapixels: 1, 12 or 48
+   * @return the width and height of the image
+   * @throws IllegalArgumentException if the number of megapixels is not supported
+   */
+  static int[] dimensions(int megapixels) throws IllegalArgumentException {
+    switch (megapixels) {
+      case 1:
+        return new int[]{1152, 864};
+      case 12:
+        return new int[]{4000, 3000};
+      case 48:
+        return new int[]{8000, 6000};
+      default:
+        throw new IllegalArgumentException("Unsupported size: " + megapixels + " MP");
+    }
+  }
+
+  /**
+   * Creates an image with roughly the given number of megapixels.
+   *
+   * @param megapixels the number of megapixels: 1, 12 or 48
+   * @return the new image
+   */
+  static Image create(int megapixels) {
+    int[] size = dimensions(megapixels);
+    int[] raster = new int[size[0] * size[1]];
+    SplittableRandom random = new SplittableRandom(megapixels);
+    for (int i = 0; i < raster.length; i++) {
+      raster[i] = random.nextInt(0x1000000);
+    }
+    return new Image(size[0], size[1], raster, "synthetic-" + megapixels + "mp.ppm");
+  }
+
+  /**
+   * Writes a plain (P3) PPM file of an image with roughly the given number of megapixels to a
+   * temporary file which is deleted when the virtual machine exits.
+   *
+   * @param megapixels the number of megapixels: 1, 12 or 48
+   * @return the written file
+   * @throws IOException if writing the file fails
+   */
+  static File writePlainPPM(int megapixels) throws IOException {
+    File file = File.createTempFile("synthetic-" + megapixels + "mp-", ".ppm");
+    file.deleteOnExit();
+    new PPMExport(create(megapixels), new FileOutputStream(file)).export();
+    return file;
+  }
+}
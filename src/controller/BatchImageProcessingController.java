@@ -0,0 +1,201 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import model.layer.ILayerModel;
+import model.layer.LayerModel;
+
+/**
+ * The controller which runs the same script once for every image of a directory, each with its own
+ * {@link LayerModel}, instead of running one script against one model. The script is a template in
+ * which {@code {input}} stands for the path of the image and {@code {name}} for its filename
+ * without the extension, such as:
+ *
+ * <pre>
+ *   create base current base load {input} grayscale save out/{name}.ppm
+ * </pre>
+ *
+ * <p>Images are processed on a fixed number of worker threads. The number of images in flight
+ * (and so decoded in memory) at once is bounded as well: the controller waits for an image to be
+ * done before it hands out the next one, so a directory of any size takes the same memory. Unlike
+ * the interactive controller, the script is compiled once (see {@link ScriptCompiler}) and run for
+ * every image with its own values of the placeholders, a path with spaces staying one argument.
+ * The script stops at the first command that fails, and the outcome of every image is reported
+ * once all of them are done, one line per image in the order of their paths.
+ */
+public class BatchImageProcessingController implements IImageProcessingController {
+
+  private final CompiledScript script;
+  private final Path directory;
+  private final String glob;
+  private final int workers;
+  private final int maxInFlight;
+  private final Appendable ap;
+
+  /**
+   * Constructs a {@code BatchImageProcessingController} object.
+   *
+   * @param script      the script template to run for every image, which is compiled once here so
+   *                    that an invalid script fails before any image is processed
+   * @param directory   the directory of the images
+   * @param glob        the glob pattern the filenames of the images match, such as {@code *.ppm}
+   * @param workers     the number of images processed at once
+   * @param maxInFlight the maximum number of images handed out to the workers at once, which is at
+   *                    least the number of workers
+   * @param ap          represents the output of the report
+   * @throws IllegalArgumentException if any of its arguments are null, if the number of workers is
+   *                                  not positive, if fewer images than workers may be in flight or
+   *                                  if the script is invalid or has placeholders other than
+   *                                  {@code {input}} and {@code {name}}
+   */
+  public BatchImageProcessingController(String script, Path directory, String glob, int workers,
+      int maxInFlight, Appendable ap) throws IllegalArgumentException {
+    if (script == null || directory == null || glob == null || ap == null) {
+      throw new IllegalArgumentException("Arguments cannot be null.");
+    }
+    if (workers <= 0 || maxInFlight < workers) {
+      throw new IllegalArgumentException("Invalid number of workers or images in flight.");
+    }
+    this.script = ScriptCompiler.compile(script);
+    for (String placeholder : this.script.getPlaceholders()) {
+      if (!placeholder.equals("input") && !placeholder.equals("name")) {
+        throw new IllegalArgumentException("Unknown placeholder {" + placeholder + "}!");
+      }
+    }
+    this.directory = directory;
+    this.glob = glob;
+    this.workers = workers;
+    this.maxInFlight = maxInFlight;
+    this.ap = ap;
+  }
+
+  /**
+   * Runs the script for every image of the directory whose filename matches the glob pattern, and
+   * reports whether it succeeded or why it failed for every image, followed by a summary.
+   *
+   * @throws IllegalStateException    if writing to the Appendable fails or if the controller is
+   *                                  interrupted while waiting for the images
+   * @throws IllegalArgumentException if the directory cannot be listed
+   */
+  @Override
+  public void processImage() throws IllegalStateException, IllegalArgumentException {
+    List<Path> inputs = this.listInputs();
+    String[] failures = new String[inputs.size()];
+    Semaphore inFlight = new Semaphore(this.maxInFlight);
+    ExecutorService pool = Executors.newFixedThreadPool(this.workers);
+
+    try {
+      for (int i = 0; i < inputs.size(); i++) {
+        int index = i;
+        inFlight.acquire();
+        pool.execute(() -> {
+          try {
+            failures[index] = this.runScript(inputs.get(index));
+          } catch (Throwable t) {
+            // such as running out of memory while decoding, which must not be reported as OK
+            failures[index] = t.toString();
+          } finally {
+            inFlight.release();
+          }
+        });
+      }
+      pool.shutdown();
+      while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+        // keep waiting for the images in flight
+      }
+    } catch (InterruptedException e) {
+      pool.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("The batch was interrupted!");
+    }
+
+    int failed = 0;
+    StringBuilder report = new StringBuilder();
+    for (int i = 0; i < inputs.size(); i++) {
+      if (failures[i] == null) {
+        report.append("OK ").append(inputs.get(i)).append("\n");
+      } else {
+        failed++;
+        report.append("FAILED ").append(inputs.get(i)).append(": ").append(failures[i])
+            .append("\n");
+      }
+    }
+    report.append("Processed ").append(inputs.size()).append(" image(s): ")
+        .append(inputs.size() - failed).append(" succeeded, ").append(failed).append(" failed.\n");
+    this.attemptAppend(report.toString());
+  }
+
+  /**
+   * Lists the files of the directory whose filenames match the glob pattern, in order.
+   *
+   * @return the sorted paths of the images
+   * @throws IllegalArgumentException if the directory cannot be listed
+   */
+  private List<Path> listInputs() throws IllegalArgumentException {
+    List<Path> inputs = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, this.glob)) {
+      for (Path path : stream) {
+        if (Files.isRegularFile(path)) {
+          inputs.add(path);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Directory " + this.directory + " could not be read!");
+    }
+    inputs.sort(null);
+    return inputs;
+  }
+
+  /**
+   * Runs the script for the given image on a new model, stopping at the first command that fails.
+   * The model keeps no undo history, and its layers are closed once the script is done.
+   *
+   * @param input the path of the image
+   * @return null if every command succeeded, or the reason the script failed
+   */
+  private String runScript(Path input) {
+    String filename = input.getFileName().toString();
+    int extension = filename.lastIndexOf('.');
+    String name = extension == -1 ? filename : filename.substring(0, extension);
+    // color transformations are fused until the image is saved or flushed
+    ILayerModel model = new LayerModel(true);
+    // nothing is ever undone, so no history is kept
+    model.setHistoryBudget(0);
+
+    Map<String, String> values = new HashMap<>();
+    values.put("input", input.toString());
+    values.put("name", name);
+    try {
+      this.script.run(model, values);
+    } catch (IllegalArgumentException e) {
+      return e.getMessage();
+    } finally {
+      model.close();
+    }
+    return null;
+  }
+
+  /**
+   * Tries to append a given string to this appendable, if possible.
+   *
+   * @param str the given string to be appended
+   * @throws IllegalStateException if writing to the Appendable throws an IOException
+   */
+  private void attemptAppend(String str) throws IllegalStateException {
+    try {
+      this.ap.append(str);
+    } catch (IOException e) {
+      throw new IllegalStateException("Writing to the Appendable object used by it fails");
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package controller;
+
+import model.layer.BlendMode;
+import model.layer.ILayerModel;
+
+/**
+ * The class representing the command to set how the current layer is blended with the layers
+ * below it when the layers are flattened.
+ */
+public class BlendCommand implements IPhotoCommands {
+
+  private final BlendMode mode;
+
+  /**
+   * Constructs the command that sets the blend mode of the current layer.
+   *
+   * @param modeName the name of the blend mode, such as {@code normal} or {@code multiply}
+   * @throws IllegalArgumentException if the name is null or not the name of a blend mode
+   */
+  public BlendCommand(String modeName) throws IllegalArgumentException {
+    this.mode = BlendMode.fromName(modeName);
+  }
+
+  @Override
+  public void runCommand(ILayerModel m) {
+    if (m == null) {
+      throw new IllegalArgumentException("Model is null.");
+    }
+    m.setCurrentBlendMode(this.mode);
+  }
+}
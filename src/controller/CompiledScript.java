@@ -0,0 +1,225 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import model.layer.ILayerModel;
+import utils.ControllerUtils;
+
+/**
+ * Represents a script compiled by {@link ScriptCompiler}: the commands of the script, in order,
+ * along with the name and line of every command. A compiled script is immutable, and its commands
+ * keep no state between runs, so it can be run any number of times against any number of models,
+ * including at the same time.
+ *
+ * <p>An argument of a script may hold placeholders such as {@code {input}}, whose values are given
+ * every time the script is run, so that one compiled script serves many runs with different
+ * arguments. A placeholder is replaced inside the argument it is written in, so a value holding
+ * whitespace stays a single argument. The commands without placeholders are created once, when the
+ * script is compiled, and the others are created from their arguments on every run.
+ */
+public final class CompiledScript {
+
+  // the command of every line without placeholders, or null where the arguments have some
+  private final List<IPhotoCommands> commands;
+  // the arguments of every command, which may hold placeholders
+  private final List<String[]> arguments;
+  private final List<String> names;
+  private final int[] lines;
+  private final Set<String> placeholders;
+
+  /**
+   * Constructs a {@code CompiledScript} object.
+   *
+   * @param commands  the commands of the script, in order, or null for a command whose arguments
+   *                  hold placeholders
+   * @param arguments the arguments of every command
+   * @param names     the name of every command
+   * @param lines     the line of every command, starting at 1
+   * @throws IllegalArgumentException if any argument is null or their sizes differ
+   */
+  CompiledScript(List<IPhotoCommands> commands, List<String[]> arguments, List<String> names,
+      int[] lines) throws IllegalArgumentException {
+    if (commands == null || arguments == null || names == null || lines == null
+        || commands.size() != arguments.size() || commands.size() != names.size()
+        || commands.size() != lines.length) {
+      throw new IllegalArgumentException("Invalid commands.");
+    }
+    this.commands = Collections.unmodifiableList(new ArrayList<>(commands));
+    List<String[]> copiedArguments = new ArrayList<>();
+    Set<String> used = new LinkedHashSet<>();
+    for (String[] args : arguments) {
+      copiedArguments.add(args.clone());
+      for (String arg : args) {
+        used.addAll(placeholdersOf(arg));
+      }
+    }
+    this.arguments = Collections.unmodifiableList(copiedArguments);
+    this.names = Collections.unmodifiableList(new ArrayList<>(names));
+    this.lines = lines.clone();
+    this.placeholders = Collections.unmodifiableSet(used);
+  }
+
+  /**
+   * Gets the number of commands of this script.
+   *
+   * @return the number of commands
+   */
+  public int size() {
+    return this.commands.size();
+  }
+
+  /**
+   * Gets the name of the command at the given index, as it was written in the script.
+   *
+   * @param index the index of the command
+   * @return the name of the command
+   * @throws IndexOutOfBoundsException if there is no command at the given index
+   */
+  public String getName(int index) throws IndexOutOfBoundsException {
+    return this.names.get(index);
+  }
+
+  /**
+   * Gets the line of the script the command at the given index starts on.
+   *
+   * @param index the index of the command
+   * @return the line of the command, starting at 1
+   * @throws IndexOutOfBoundsException if there is no command at the given index
+   */
+  public int getLine(int index) throws IndexOutOfBoundsException {
+    return this.lines[index];
+  }
+
+  /**
+   * Gets the names of the placeholders of this script, without their braces, in the order they
+   * first appear.
+   *
+   * @return an unmodifiable set of the names of the placeholders
+   */
+  public Set<String> getPlaceholders() {
+    return this.placeholders;
+  }
+
+  /**
+   * Runs every command of this script against the given model, in order, stopping at the first
+   * command that fails. The script must not have placeholders.
+   *
+   * @param model the model to run the script against
+   * @throws IllegalArgumentException if the model is null, if the script has placeholders or if a
+   *                                  command fails, with the name and line of the command that
+   *                                  failed
+   */
+  public void run(ILayerModel model) throws IllegalArgumentException {
+    this.run(model, Collections.emptyMap());
+  }
+
+  /**
+   * Runs every command of this script against the given model, in order, stopping at the first
+   * command that fails, with every placeholder replaced by its value.
+   *
+   * @param model  the model to run the script against
+   * @param values the value of every placeholder, by its name without the braces
+   * @throws IllegalArgumentException if the model or values are null, if a placeholder has no value
+   *                                  or if a command fails, with the name and line of the command
+   *                                  that failed
+   */
+  public void run(ILayerModel model, Map<String, String> values) throws IllegalArgumentException {
+    if (model == null || values == null) {
+      throw new IllegalArgumentException("Model and values cannot be null!");
+    }
+    for (String placeholder : this.placeholders) {
+      if (values.get(placeholder) == null) {
+        throw new IllegalArgumentException("No value for {" + placeholder + "}!");
+      }
+    }
+    for (int i = 0; i < this.commands.size(); i++) {
+      try {
+        IPhotoCommands command = this.commands.get(i);
+        if (command == null) {
+          String[] args = this.arguments.get(i).clone();
+          for (int j = 0; j < args.length; j++) {
+            args[j] = substitute(args[j], values);
+          }
+          command = ControllerUtils.createCommand(this.names.get(i), args);
+        }
+        command.runCommand(model);
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException(this.names.get(i) + " failed on line "
+            + this.lines[i] + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Gets the names of the placeholders of the given argument, which are the names between braces
+   * made of letters, digits, {@code -} and {@code _}.
+   *
+   * @param arg the argument
+   * @return the names of the placeholders of the argument, in order
+   */
+  static List<String> placeholdersOf(String arg) {
+    List<String> found = new ArrayList<>();
+    int open = arg.indexOf('{');
+    while (open != -1) {
+      int close = placeholderEnd(arg, open);
+      if (close == -1) {
+        open = arg.indexOf('{', open + 1);
+      } else {
+        found.add(arg.substring(open + 1, close));
+        open = arg.indexOf('{', close + 1);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Replaces every placeholder of the given argument with its value, in a single pass, so that
+   * values are never searched for placeholders themselves.
+   *
+   * @param arg    the argument
+   * @param values the value of every placeholder
+   * @return the argument with its placeholders replaced
+   */
+  private static String substitute(String arg, Map<String, String> values) {
+    StringBuilder result = new StringBuilder();
+    int start = 0;
+    int open = arg.indexOf('{');
+    while (open != -1) {
+      int close = placeholderEnd(arg, open);
+      if (close == -1) {
+        open = arg.indexOf('{', open + 1);
+      } else {
+        result.append(arg, start, open).append(values.get(arg.substring(open + 1, close)));
+        start = close + 1;
+        open = arg.indexOf('{', start);
+      }
+    }
+    return result.append(arg, start, arg.length()).toString();
+  }
+
+  /**
+   * Finds the closing brace of the placeholder opened at the given index, if it is one.
+   *
+   * @param arg  the argument
+   * @param open the index of an opening brace of the argument
+   * @return the index of the closing brace, or -1 if no placeholder starts at the given index
+   */
+  private static int placeholderEnd(String arg, int open) {
+    int i = open + 1;
+    while (i < arg.length()) {
+      char c = arg.charAt(i);
+      if (c == '}') {
+        return i == open + 1 ? -1 : i;
+      }
+      if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') {
+        return -1;
+      }
+      i++;
+    }
+    return -1;
+  }
+}
@@ -36,6 +36,6 @@ public class FlipHorizontallyCommand implements IPhotoCommands {
    */
   @Override
   public void runCommand(ILayerModel m) throws IllegalArgumentException {
-    m.getCurrentLayer().flippedImageH();
+    m.flipCurrentHorizontally();
   }
 }
@@ -36,6 +36,6 @@ public class FlipVerticallyCommand implements IPhotoCommands {
    */
   @Override
   public void runCommand(ILayerModel m) throws IllegalArgumentException {
-    m.getCurrentLayer().flippedImageV();
+    m.flipCurrentVertically();
   }
 }
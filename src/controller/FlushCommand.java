@@ -0,0 +1,18 @@
+package controller;
+
+import model.layer.ILayerModel;
+
+/**
+ * The class representing the command to apply every deferred operation of a multi-layered image,
+ * fusing the operations queued on each layer into a single pass over its image.
+ */
+public class FlushCommand implements IPhotoCommands {
+
+  @Override
+  public void runCommand(ILayerModel m) {
+    if (m == null) {
+      throw new IllegalArgumentException("Model is null.");
+    }
+    m.flush();
+  }
+}
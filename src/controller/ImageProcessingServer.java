@@ -0,0 +1,289 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import model.exports.BinaryPPMExport;
+import model.image.IImage;
+import model.layer.ILayerModel;
+import model.layer.LayerModel;
+import model.managers.InputFilenameManager;
+import utils.ControllerUtils;
+
+/**
+ * An embedded HTTP server which processes images with scripts of the same commands as the text
+ * controllers, so that a client does not start a new JVM for every image. A request is a
+ * {@code POST /process?script=...&format=ppm} whose body is the image, in the given format ({@code
+ * ppm} by default, or {@code pgm}). The image is loaded into the current layer of a new model,
+ * named {@code image}, the script is run against the model, and the response is the flattened
+ * image in the same format. Every request gets its own model, which keeps no undo history and is
+ * closed once the response is sent, and the uploaded image is decoded without going through the
+ * cache of decoded images, so requests leave nothing behind.
+ *
+ * <p>Requests are handled on a pool of platform threads rather than virtual threads, because the
+ * JDK server reads request bodies while holding a monitor, which pins a virtual thread to its
+ * carrier: as many slow uploads as there are processors would stall every other request. A fixed
+ * number of requests are processed at once, and a bounded number more wait for their turn; any
+ * request beyond those is answered with {@code 503 Service Unavailable}, so an overloaded server
+ * sheds load instead of queuing without bound. The pool has one thread for every request in
+ * flight and one more to turn requests away, so a burst of connections never starts more threads
+ * than that: the requests that find every thread busy wait for one without holding a thread. The
+ * image is streamed from the request to a scratch file and from the flattened image to the
+ * response, without holding either encoded body in memory.
+ *
+ * <p>Scripts come from the clients, so they cannot use the commands that read or write files of
+ * the server ({@code load}, {@code loadall}, {@code save} and {@code saveall}): a script with any
+ * of them is rejected with {@code 400 Bad Request} before it is run. The server is still meant to
+ * listen on a local address only.
+ */
+public class ImageProcessingServer {
+
+  // the commands a script of a request may use, which are all but the ones touching files
+  private static final Set<String> COMMANDS;
+
+  static {
+    Set<String> commands = new HashSet<>(ControllerUtils.getKnownCommands().keySet());
+    commands.remove("load");
+    commands.remove("loadall");
+    commands.remove("save");
+    commands.remove("saveall");
+    COMMANDS = Collections.unmodifiableSet(commands);
+  }
+
+  private final HttpServer server;
+  private final ThreadPoolExecutor executor;
+  private final int maxInFlight;
+  // the requests being processed or waiting to be
+  private final Semaphore admitted;
+  // the requests being processed
+  private final Semaphore processing;
+
+  /**
+   * Constructs an {@code ImageProcessingServer} object bound to the given address, which is not
+   * started yet.
+   *
+   * @param address     the address to listen on, whose port may be 0 to pick a free one
+   * @param workers     the number of requests processed at once
+   * @param maxInFlight the maximum number of requests processed or waiting at once, which is at
+   *                    least the number of workers
+   * @throws IllegalArgumentException if the address is null, if the number of workers is not
+   *                                  positive, if fewer requests than workers may be in flight or
+   *                                  if the address cannot be bound
+   */
+  public ImageProcessingServer(InetSocketAddress address, int workers, int maxInFlight)
+      throws IllegalArgumentException {
+    if (address == null) {
+      throw new IllegalArgumentException("Address cannot be null.");
+    }
+    if (workers <= 0 || maxInFlight < workers) {
+      throw new IllegalArgumentException("Invalid number of workers or requests in flight.");
+    }
+    try {
+      this.server = HttpServer.create(address, 0);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Could not listen on " + address + "!");
+    }
+    // one thread for every request in flight and one to turn the others away, which all stop
+    // once the server has been idle for a while
+    this.executor = new ThreadPoolExecutor(maxInFlight + 1, maxInFlight + 1, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), Thread.ofPlatform().daemon().name("image-server-", 0)
+        .factory());
+    this.executor.allowCoreThreadTimeOut(true);
+    this.maxInFlight = maxInFlight;
+    this.admitted = new Semaphore(maxInFlight);
+    this.processing = new Semaphore(workers);
+    this.server.setExecutor(this.executor);
+    this.server.createContext("/process", this::handle);
+  }
+
+  /**
+   * Starts accepting requests.
+   */
+  public void start() {
+    this.server.start();
+  }
+
+  /**
+   * Stops accepting requests, waits up to the given delay for the requests in progress to finish,
+   * and stops the server.
+   *
+   * @param delaySeconds the maximum number of seconds to wait for the requests in progress
+   * @throws IllegalArgumentException if the delay is negative
+   */
+  public void stop(int delaySeconds) throws IllegalArgumentException {
+    if (delaySeconds < 0) {
+      throw new IllegalArgumentException("Delay cannot be negative.");
+    }
+    this.server.stop(delaySeconds);
+    this.executor.shutdown();
+  }
+
+  /**
+   * Gets the address the server listens on, including the port picked if it was given as 0.
+   *
+   * @return the address of the server
+   */
+  public InetSocketAddress getAddress() {
+    return this.server.getAddress();
+  }
+
+  /**
+   * Gets the number of requests being processed or waiting to be, which never exceeds the maximum
+   * number of requests in flight given to the server.
+   *
+   * @return the number of requests in flight
+   */
+  public int getRequestsInFlight() {
+    return this.maxInFlight - this.admitted.availablePermits();
+  }
+
+  /**
+   * Handles a request, answering it with {@code 503} if too many requests are in flight already.
+   *
+   * @param exchange the request and its response
+   * @throws IOException if the response cannot be sent
+   */
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        sendError(exchange, 405, "Only POST is supported.");
+        return;
+      }
+      if (!this.admitted.tryAcquire()) {
+        sendError(exchange, 503, "Too many requests, try again later.");
+        return;
+      }
+      try {
+        this.processing.acquire();
+        try {
+          this.process(exchange);
+        } finally {
+          this.processing.release();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        sendError(exchange, 503, "The server is stopping.");
+      } finally {
+        this.admitted.release();
+      }
+    }
+  }
+
+  /**
+   * Processes the image of a request with its script and sends the flattened image back.
+   *
+   * @param exchange the request and its response
+   * @throws IOException if the request cannot be read or the response cannot be sent
+   */
+  private void process(HttpExchange exchange) throws IOException {
+    String script = queryParameter(exchange, "script");
+    String format = queryParameter(exchange, "format");
+    if (format == null) {
+      format = "ppm";
+    }
+    if (script == null || !(format.equals("ppm") || format.equals("pgm"))) {
+      sendError(exchange, 400, "A script and a format of ppm or pgm are required.");
+      return;
+    }
+
+    CompiledScript compiled;
+    try {
+      compiled = ScriptCompiler.compile(script, COMMANDS);
+    } catch (IllegalArgumentException e) {
+      sendError(exchange, 400, e.getMessage());
+      return;
+    }
+
+    Path input = Files.createTempFile("upload", "." + format);
+    try {
+      try (InputStream body = exchange.getRequestBody()) {
+        Files.copy(body, input, StandardCopyOption.REPLACE_EXISTING);
+      }
+      // color transformations are fused until the image is flattened
+      ILayerModel model = new LayerModel(true);
+      // nothing is ever undone, so no history is kept
+      model.setHistoryBudget(0);
+      try {
+        IImage result;
+        try {
+          model.createImageLayer("image");
+          // the upload is read once, so it is kept out of the cache of decoded images
+          model.loadLayer(InputFilenameManager.decode(input.toString()));
+          compiled.run(model);
+          result = model.flatten();
+        } catch (IllegalArgumentException e) {
+          sendError(exchange, 400, e.getMessage());
+          return;
+        }
+        exchange.getResponseHeaders().set("Content-Type",
+            format.equals("pgm") ? "image/x-portable-graymap" : "image/x-portable-pixmap");
+        // a length of 0 streams the response in chunks
+        exchange.sendResponseHeaders(200, 0);
+        new BinaryPPMExport(result, Channels.newChannel(exchange.getResponseBody()),
+            format.equals("pgm")).export();
+      } finally {
+        // the flattened image may share the pixels of the layers, which are closed once it is sent
+        model.close();
+      }
+    } finally {
+      Files.deleteIfExists(input);
+    }
+  }
+
+  /**
+   * Gets the decoded value of the given parameter of the query of a request.
+   *
+   * @param exchange the request
+   * @param name     the name of the parameter
+   * @return the value of the parameter, or null if it is not given
+   */
+  private static String queryParameter(HttpExchange exchange, String name) {
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query == null) {
+      return null;
+    }
+    for (String parameter : query.split("&")) {
+      int equals = parameter.indexOf('=');
+      String key = equals == -1 ? parameter : parameter.substring(0, equals);
+      if (URLDecoder.decode(key, StandardCharsets.UTF_8).equals(name)) {
+        return equals == -1 ? "" : URLDecoder.decode(parameter.substring(equals + 1),
+            StandardCharsets.UTF_8);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Sends an error response with the given status and message.
+   *
+   * @param exchange the request and its response
+   * @param status   the status code of the response
+   * @param message  the message of the response
+   * @throws IOException if the response cannot be sent
+   */
+  private static void sendError(HttpExchange exchange, int status, String message)
+      throws IOException {
+    byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
@@ -50,6 +50,7 @@ public class LoadSingleCommand implements IPhotoCommands {
 
     switch (fileType) {
       case "ppm":
+      case "pgm":
         return new InputFilenameManager(filename);
       default:
         throw new IllegalArgumentException("Cannot load the layer with that file type.");
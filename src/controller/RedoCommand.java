@@ -0,0 +1,18 @@
+package controller;
+
+import model.layer.ILayerModel;
+
+/**
+ * The class representing the command to redo the most recently undone change to a multi-layered
+ * image.
+ */
+public class RedoCommand implements IPhotoCommands {
+
+  @Override
+  public void runCommand(ILayerModel m) {
+    if (m == null) {
+      throw new IllegalArgumentException("Model is null.");
+    }
+    m.redo();
+  }
+}
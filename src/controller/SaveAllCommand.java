@@ -2,25 +2,58 @@ package controller;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import model.exports.BinaryPPMExportFilename;
 import model.exports.IExport;
 import model.exports.PPMExportFilename;
 import model.image.IImage;
 import model.layer.ILayer;
 import model.layer.ILayerModel;
+import model.managers.LayerIOTasks;
 
 /**
  * A class representing the command to save a multi-layered image. It will be exported with the
- * given name. A text file is constructed along with the files in the directory in which it contains
- * information needed to reload it (name of file with its path, order, and visibility)
+ * given name. A text file ({@link #MANIFEST}) is constructed along with the files in the directory
+ * in which it contains information needed to reload it (name of file with its path, order,
+ * visibility, and a checksum of the pixels of the file), which is loaded with {@link
+ * LoadAllCommand}. Every layer file and then the text file are written to a temporary file in the
+ * directory, which is then renamed over the previous one, so neither the text file nor a layer file
+ * it refers to is ever partly written, even if saving fails or is interrupted.
+ *
+ * <p>The layers are all exported at once (see {@link LayerIOTasks}), and the layers that could not
+ * be exported are all reported together. Saving into the directory of a multi-layered image that
+ * was saved before only rewrites the files of the layers whose checksum changed since.
  */
 public class SaveAllCommand implements IPhotoCommands {
 
-  private final String desiredDir;
+  /**
+   * The name of the text file describing the layers in the directory of a multi-layered image.
+   */
+  public static final String MANIFEST = "layers.txt";
+
+  // the approximate number of pixels hashed at a time
+  private static final int CHUNK_PIXELS = 1 << 16;
+
+  private final String desiredDirName;
 
   /**
    * Constructs a command that saves a multi-layered image along with a text file containing the
-   * necessary info to reload it.
+   * necessary info to reload it. If the directory already exists and does not hold a saved
+   * multi-layered image, the layers are saved into a new directory with a 1 appended to the name.
+   * The directory is only chosen and created when the command is run, so a command can be run any
+   * number of times, such as by a compiled script (see {@link ScriptCompiler}).
    *
    * @param desiredDirName the desired name of the directory to save the layers.
    * @throws IllegalArgumentException if the given filename is null.
@@ -29,12 +62,7 @@ public class SaveAllCommand implements IPhotoCommands {
     if (desiredDirName == null) {
       throw new IllegalArgumentException("Null filename");
     }
-    File f = new File(desiredDirName);
-    if (f.exists()) {
-      f = new File(desiredDirName + "1");
-    }
-    f.mkdir();
-    this.desiredDir = f.getAbsolutePath() + "/";
+    this.desiredDirName = desiredDirName;
   }
 
   @Override
@@ -42,65 +70,214 @@ public class SaveAllCommand implements IPhotoCommands {
     if (m == null) {
       throw new IllegalArgumentException("Model cannot be null");
     }
-    IExport imgExporter;
-    StringBuilder imageInfo = new StringBuilder();
+    File f = new File(this.desiredDirName);
+    if (f.exists() && !new File(f, MANIFEST).isFile()) {
+      f = new File(this.desiredDirName + "1");
+    }
+    f.mkdir();
+    String desiredDir = f.getAbsolutePath() + "/";
 
+    m.flush();
     List<ILayer> layers = m.getLayers();
+    List<String> labels = new ArrayList<>();
+    List<Callable<String>> tasks = new ArrayList<>();
 
+    Map<String, String> savedChecksums = readSavedChecksums(desiredDir);
     for (int i = 0; i < layers.size(); i++) {
-      IImage currImg = layers.get(i).getImage();
-      if (currImg != null) {
-        try {
-          imgExporter = determineCorrectExporter(currImg, layers.get(i).getName());
-          if (imgExporter != null) {
-            imgExporter.export();
-            String fileType = getFileType(currImg.getFilename());
-            if (fileType.equals("jpg")) {
-              fileType = "jpeg";
-            }
-            imageInfo.append(i).append(", ").append(desiredDir)
-                .append(layers.get(i).getName()).append(".")
-                .append(fileType).append(", ")
-                .append(layers.get(i).isVisible()).append("\n");
-          }
-        } catch (IOException e) {
-          throw new IllegalArgumentException("An error has occurred.");
+      ILayer layer = layers.get(i);
+      int index = i;
+      labels.add("layer " + (i + 1) + " (" + layer.getName() + ")");
+      tasks.add(() -> exportLayer(desiredDir, layer, index, savedChecksums));
+    }
+
+    StringBuilder imageInfo = new StringBuilder();
+    for (String line : LayerIOTasks.runAll(labels, tasks, "save")) {
+      imageInfo.append(line);
+    }
+    writeManifest(desiredDir, imageInfo.toString());
+  }
+
+  /**
+   * Reads the checksums of the layer files of the multi-layered image saved in the directory
+   * before, if any.
+   *
+   * @param desiredDir the path of the directory, ending with a separator
+   * @return the checksum of every layer file by its path, which is empty if nothing was saved
+   */
+  private static Map<String, String> readSavedChecksums(String desiredDir) {
+    Map<String, String> checksums = new HashMap<>();
+    Path manifest = Paths.get(desiredDir, MANIFEST);
+    if (!Files.isRegularFile(manifest)) {
+      return checksums;
+    }
+    try {
+      for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+        String[] tokens = line.split("\\s*,\\s*");
+        if (tokens.length == 4) {
+          checksums.put(tokens[1], tokens[3]);
         }
-      } else {
-        imageInfo.append(i).append(", ").append("noimage").append(", false").append("\n");
       }
+    } catch (IOException e) {
+      // a manifest that cannot be read only means every layer is written again
+      checksums.clear();
     }
+    return checksums;
   }
 
-
   /**
-   * Returns the correct {@link IExport} based on a given filename.
+   * Writes the text file describing the layers, by writing a temporary file in the directory and
+   * renaming it over the previous text file in one step.
    *
-   * @param image     the topmost visible image in the layers to be saved
-   * @param layerName the name of the layer
-   * @return the correct type of exported for the wanted image type
-   * @throws IllegalArgumentException if the image is null or unknown file type
+   * @param desiredDir the path of the directory, ending with a separator
+   * @param imageInfo the contents of the text file
+   * @throws IllegalArgumentException if the text file could not be written
    */
-
-  private IExport determineCorrectExporter(IImage image, String layerName)
+  private static void writeManifest(String desiredDir, String imageInfo)
       throws IllegalArgumentException {
-    if (image == null || layerName == null) {
-      throw new IllegalArgumentException("Image is null.");
+    Path temp = null;
+    try {
+      temp = Files.createTempFile(Paths.get(desiredDir), MANIFEST, ".tmp");
+      Files.write(temp, imageInfo.getBytes(StandardCharsets.UTF_8));
+      Files.move(temp, Paths.get(desiredDir, MANIFEST), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      if (temp != null) {
+        temp.toFile().delete();
+      }
+      throw new IllegalArgumentException("Could not write " + MANIFEST + "!");
+    }
+  }
+
+  /**
+   * Exports the image of the given layer into the directory, unless the file of the layer already
+   * has the same checksum. The image is exported to a temporary file first, which then replaces the
+   * file of the layer in one step.
+   *
+   * @param desiredDir     the path of the directory, ending with a separator
+   * @param layer          the layer to export
+   * @param index          the index of the layer
+   * @param savedChecksums the checksum of every layer file saved before, by its path
+   * @return the line of the layer in the text file, which is empty if its image cannot be exported
+   * @throws IllegalArgumentException if the image could not be written
+   */
+  private String exportLayer(String desiredDir, ILayer layer, int index,
+      Map<String, String> savedChecksums) throws IllegalArgumentException {
+    IImage currImg = layer.getImage();
+    if (currImg == null) {
+      return index + ", " + "noimage" + ", false" + "\n";
+    }
+    String format = determineFormat(currImg);
+    if (format == null) {
+      return "";
     }
-    String filename = getOnlyNameForFile(image.getFilename());
-    String fileType = getFileType(image.getFilename());
+    String fileType = getFileType(currImg.getFilename());
+    if (fileType.equals("jpg")) {
+      fileType = "jpeg";
+    }
+    String path = desiredDir + layer.getName() + "." + fileType;
+    String checksum = checksum(currImg, format);
 
-    if (filename != null) {
+    if (!checksum.equals(savedChecksums.get(path)) || !new File(path).isFile()) {
+      String partial = desiredDir + "." + layer.getName() + ".partial";
+      Path partialFile = Paths.get(partial + "." + fileType);
       try {
-        switch (fileType) {
-          case "ppm":
-            return new PPMExportFilename(image, desiredDir + layerName);
-        }
+        determineCorrectExporter(currImg, format, partial).export();
+        Files.move(partialFile, Paths.get(path), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
       } catch (IOException e) {
+        partialFile.toFile().delete();
         throw new IllegalArgumentException("An error has occurred.");
       }
     }
-    return null;
+    return index + ", " + path + ", " + layer.isVisible() + ", " + checksum + "\n";
+  }
+
+  /**
+   * Computes the checksum of the file the given image is exported to in the given format, which is
+   * the SHA-256 hash of the format, the dimensions and the pixels of the image. The pixels are
+   * hashed instead of the bytes of the file, so the image does not have to be encoded first.
+   *
+   * @param image  the image to be exported
+   * @param format the format the image is exported in
+   * @return the checksum, in hexadecimal
+   */
+  private static String checksum(IImage image, String format) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported!");
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    digest.update((format + " " + width + " " + height + "\n").getBytes(StandardCharsets.US_ASCII));
+
+    int rowsPerChunk = Math.max(1, CHUNK_PIXELS / width);
+    int[] rows = new int[rowsPerChunk * width];
+    byte[] bytes = new byte[rows.length * 3];
+    for (int row = 0; row < height; row += rowsPerChunk) {
+      int numRows = Math.min(rowsPerChunk, height - row);
+      image.getRows(row, numRows, rows, 0);
+      for (int i = 0; i < numRows * width; i++) {
+        bytes[3 * i] = (byte) (rows[i] >> 16);
+        bytes[3 * i + 1] = (byte) (rows[i] >> 8);
+        bytes[3 * i + 2] = (byte) rows[i];
+      }
+      digest.update(bytes, 0, 3 * numRows * width);
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+
+  /**
+   * Returns the format an image is saved in based on its filename and the format of the file it
+   * was loaded from, as recorded on the image when it was loaded.
+   *
+   * @param image the image to be saved
+   * @return the magic number of the format ({@code "P3"}, {@code "P5"} or {@code "P6"}), or null if
+   *         the image cannot be saved
+   * @throws IllegalArgumentException if the image is null
+   */
+  private String determineFormat(IImage image) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image is null.");
+    }
+    if (getOnlyNameForFile(image.getFilename()) == null) {
+      return null;
+    }
+    switch (getFileType(image.getFilename())) {
+      case "ppm":
+        return "P6".equals(image.getFormat()) ? "P6" : "P3";
+      case "pgm":
+        return "P5";
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the correct {@link IExport} for the given format.
+   *
+   * @param image     the image to be saved
+   * @param format    the format to save the image in, from {@link #determineFormat}
+   * @param path      the path of the file without the extension
+   * @return the correct type of exported for the wanted image type
+   * @throws IllegalArgumentException if the image is null or unknown file type
+   * @throws IOException              if the file cannot be opened
+   */
+  private static IExport determineCorrectExporter(IImage image, String format, String path)
+      throws IllegalArgumentException, IOException {
+    if (image == null || path == null) {
+      throw new IllegalArgumentException("Image is null.");
+    }
+    switch (format) {
+      case "P6":
+        return new BinaryPPMExportFilename(image, path, false);
+      case "P5":
+        return new BinaryPPMExportFilename(image, path, true);
+      default:
+        return new PPMExportFilename(image, path);
+    }
   }
 
   /**
@@ -1,16 +1,18 @@
 package controller;
 
 import java.io.IOException;
-import java.util.List;
+import model.exports.BinaryPPMExportFilename;
 import model.exports.IExport;
 import model.exports.PPMExportFilename;
 import model.image.IImage;
-import model.layer.ILayer;
 import model.layer.ILayerModel;
 
 /**
- * A class representing the command to save the topmost visible layer in a multi-layered image. It
- * will be exported with the given filename.
+ * A class representing the command to save a multi-layered image flattened into a single image,
+ * in which every visible layer is blended with the layers below it. It will be exported with the
+ * given filename. A {@code .ppm} file is saved in the binary (P6) format if the topmost visible
+ * image was loaded from a binary file and in the plain (P3) format otherwise, and a {@code .pgm}
+ * file is always saved in the binary (P5) format. Any alpha of the flattened image is dropped.
  */
 public class SaveSingleCommand implements IPhotoCommands {
 
@@ -25,7 +27,7 @@ public class SaveSingleCommand implements IPhotoCommands {
     if (m == null) {
       throw new IllegalArgumentException("Model is null.");
     }
-    IImage image = this.getTopmostVisibleImage(m.getLayers());
+    IImage image = m.flatten();
     IExport exporter = this.determineCorrectExporter(image);
 
     try {
@@ -35,26 +37,10 @@ public class SaveSingleCommand implements IPhotoCommands {
     }
   }
 
-  /**
-   * Finds the topmost visible image when given a list of layers in a model.
-   *
-   * @param layers the given list of layers to sort through
-   * @return the topmost visible image in a given list of layers
-   * @throws IllegalArgumentException if no topmost visible layer exists
-   */
-  private IImage getTopmostVisibleImage(List<ILayer> layers) {
-    for (int i = layers.size() - 1; i >= 0; i--) {
-      if (layers.get(i).isVisible() && layers.get(i).getImage() != null) {
-        return layers.get(i).getImage();
-      }
-    }
-    throw new IllegalArgumentException("No topmost visible layer exists!");
-  }
-
   /**
    * Returns the correct {@link IExport} based on a given filename.
    *
-   * @param image the topmost visible image in the layers to be saved
+   * @param image the flattened image to be saved
    * @return the correct type of exported for the wanted image type
    * @throws IllegalArgumentException if the image is null or unknown file type
    */
@@ -75,7 +61,12 @@ public class SaveSingleCommand implements IPhotoCommands {
     try {
       switch (fileType.toLowerCase()) {
         case "ppm":
+          if ("P6".equals(image.getFormat())) {
+            return new BinaryPPMExportFilename(image, fileName, false);
+          }
           return new PPMExportFilename(image, fileName);
+        case "pgm":
+          return new BinaryPPMExportFilename(image, fileName, true);
         default:
           throw new IllegalArgumentException("Cannot save the layer with that file type.");
       }
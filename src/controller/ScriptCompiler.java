@@ -0,0 +1,179 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import utils.ControllerUtils;
+
+/**
+ * Compiles a whole script of commands, such as the ones given to a {@link
+ * SimpleIImageProcessingController}, into a {@link CompiledScript} up front. The script is split
+ * into whitespace-separated tokens in a single pass over its characters, and every command is
+ * checked and created from its arguments once, so running the compiled script does no parsing.
+ *
+ * <p>A command may span lines, as with a {@link java.util.Scanner}, and the script ends at the
+ * first {@code q} or {@code quit}, if any. Every unknown command and missing or rejected argument
+ * of the script is reported together, each with the line it is on. Arguments may hold placeholders
+ * such as {@code {input}}, which are given their values when the script is run (see {@link
+ * CompiledScript#run(model.layer.ILayerModel, java.util.Map)}); the arguments of those commands are
+ * only checked once they have their values. A script may also be restricted to some of the known
+ * commands, so that a script from an untrusted source cannot use the others.
+ */
+public final class ScriptCompiler {
+
+  private ScriptCompiler() {
+    // static helpers only
+  }
+
+  /**
+   * Compiles the script in the given file.
+   *
+   * @param file the path of the script
+   * @return the compiled script
+   * @throws IllegalArgumentException if the file is null or cannot be read or if the script is
+   *                                  invalid, with every error of the script
+   */
+  public static CompiledScript compile(Path file) throws IllegalArgumentException {
+    if (file == null) {
+      throw new IllegalArgumentException("File cannot be null!");
+    }
+    try {
+      return compile(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Script " + file + " could not be read!");
+    }
+  }
+
+  /**
+   * Compiles the given script.
+   *
+   * @param script the text of the script
+   * @return the compiled script
+   * @throws IllegalArgumentException if the script is null or invalid, with every error of the
+   *                                  script
+   */
+  public static CompiledScript compile(CharSequence script) throws IllegalArgumentException {
+    return compile(script, ControllerUtils.getKnownCommands().keySet());
+  }
+
+  /**
+   * Compiles the given script, which may only use the given commands.
+   *
+   * @param script  the text of the script
+   * @param allowed the names of the commands the script may use
+   * @return the compiled script
+   * @throws IllegalArgumentException if the script or allowed commands are null or if the script
+   *                                  is invalid or uses a command that is not allowed, with every
+   *                                  error of the script
+   */
+  public static CompiledScript compile(CharSequence script, Set<String> allowed)
+      throws IllegalArgumentException {
+    if (script == null || allowed == null) {
+      throw new IllegalArgumentException("Script and allowed commands cannot be null!");
+    }
+    List<String> tokens = new ArrayList<>();
+    List<Integer> tokenLines = new ArrayList<>();
+    tokenize(script, tokens, tokenLines);
+
+    List<IPhotoCommands> commands = new ArrayList<>();
+    List<String[]> arguments = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    List<Integer> lines = new ArrayList<>();
+    StringBuilder errors = new StringBuilder();
+    int next = 0;
+    while (next < tokens.size()) {
+      String name = tokens.get(next);
+      int line = tokenLines.get(next);
+      next++;
+      if (name.equalsIgnoreCase("q") || name.equalsIgnoreCase("quit")) {
+        break;
+      }
+      int numArguments = ControllerUtils.getNumArguments(name);
+      if (numArguments == -1) {
+        appendError(errors, line, "Invalid input " + name + "!");
+        continue;
+      }
+      if (next + numArguments > tokens.size()) {
+        appendError(errors, line, "Missing argument for " + name + "!");
+        break;
+      }
+      String[] args = tokens.subList(next, next + numArguments).toArray(new String[0]);
+      next += numArguments;
+      if (!allowed.contains(name)) {
+        appendError(errors, line, "Command " + name + " is not allowed!");
+        continue;
+      }
+      boolean placeholders = false;
+      for (String arg : args) {
+        placeholders |= !CompiledScript.placeholdersOf(arg).isEmpty();
+      }
+      try {
+        // a command whose arguments have placeholders is created on every run instead
+        commands.add(placeholders ? null : ControllerUtils.createCommand(name, args));
+        arguments.add(args);
+        names.add(name);
+        lines.add(line);
+      } catch (IllegalArgumentException e) {
+        appendError(errors, line, name + " is invalid: " + e.getMessage());
+      }
+    }
+
+    if (errors.length() > 0) {
+      throw new IllegalArgumentException("Invalid script! " + errors);
+    }
+    int[] commandLines = new int[lines.size()];
+    for (int i = 0; i < commandLines.length; i++) {
+      commandLines[i] = lines.get(i);
+    }
+    return new CompiledScript(commands, arguments, names, commandLines);
+  }
+
+  /**
+   * Splits the given script into its whitespace-separated tokens, along with the line of every
+   * token.
+   *
+   * @param script     the text of the script
+   * @param tokens     the list to add the tokens to
+   * @param tokenLines the list to add the line of every token to, starting at 1
+   */
+  private static void tokenize(CharSequence script, List<String> tokens,
+      List<Integer> tokenLines) {
+    int line = 1;
+    int start = -1;
+    for (int i = 0; i < script.length(); i++) {
+      char c = script.charAt(i);
+      if (Character.isWhitespace(c)) {
+        if (start != -1) {
+          tokens.add(script.subSequence(start, i).toString());
+          tokenLines.add(line);
+          start = -1;
+        }
+        if (c == '\n') {
+          line++;
+        }
+      } else if (start == -1) {
+        start = i;
+      }
+    }
+    if (start != -1) {
+      tokens.add(script.subSequence(start, script.length()).toString());
+      tokenLines.add(line);
+    }
+  }
+
+  /**
+   * Appends an error of the script to the given errors.
+   *
+   * @param errors  the errors of the script so far
+   * @param line    the line of the error
+   * @param message the error
+   */
+  private static void appendError(StringBuilder errors, int line, String message) {
+    errors.append(errors.length() == 0 ? "" : "; ").append("line ").append(line).append(": ")
+        .append(message);
+  }
+}
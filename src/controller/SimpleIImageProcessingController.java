@@ -113,29 +113,10 @@ public class SimpleIImageProcessingController implements IImageProcessingControl
     IPhotoCommands command = functionCommand.apply(in);
     command.runCommand(this.model);
 
-    this.attemptAppend(createLayerState());
-  }
-
-  /**
-   * Creates the layer state based on the model state field.
-   *
-   * @return the string associated with the current layer state.
-   */
-  private String createLayerState() {
-    StringBuilder newString = new StringBuilder();
-
-    for (int i = 0; i < this.model.getLayers().size(); i++) {
-      newString.append("Layer #").append(i + 1).append(", ")
-          .append(this.model.getLayers().get(i).toString())
-          .append("\n");
-    }
-
     try {
-      return newString + "Number of valid layers created: " + this.model.getLayers().size()
-          + "\nCurrent Layer: " + this.model.getCurrentLayer().toString() + "\n";
-    } catch (IllegalArgumentException e) {
-      return newString + "Number of valid layers created: " + this.model.getLayers().size()
-          + "\nCurrent not yet set.\n";
+      this.view.renderLayers();
+    } catch (IOException e) {
+      throw new IllegalStateException("Writing to the Appendable object used by it fails");
     }
   }
 
@@ -0,0 +1,17 @@
+package controller;
+
+import model.layer.ILayerModel;
+
+/**
+ * The class representing the command to undo the most recent change to a multi-layered image.
+ */
+public class UndoCommand implements IPhotoCommands {
+
+  @Override
+  public void runCommand(ILayerModel m) {
+    if (m == null) {
+      throw new IllegalArgumentException("Model is null.");
+    }
+    m.undo();
+  }
+}
@@ -1,11 +1,27 @@
 package model;
 
+import java.util.List;
+import model.layer.LayerInfo;
 
 /**
  * This interface represents different operations that a layer model must support to return various
  * aspects of its state. This interface does not provide any operations to mutate the state of a
- * layer model.
+ * layer model, and none of its operations read the pixels of the layers.
  */
 public interface ILayerModelState {
 
+  /**
+   * Gets the metadata of every layer of the model, in order.
+   *
+   * @return an unmodifiable list of the name, image filename and size, visibility and blend mode of
+   *         every layer
+   */
+  List<LayerInfo> getLayerInfo();
+
+  /**
+   * Gets the index of the current layer of the model.
+   *
+   * @return the index of the current layer, or -1 if no current layer exists
+   */
+  int getCurrentIndex();
 }
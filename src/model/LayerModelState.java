@@ -1,6 +1,8 @@
 package model;
 
+import java.util.List;
 import model.layer.ILayerModel;
+import model.layer.LayerInfo;
 
 
 /**
@@ -25,4 +27,14 @@ public class LayerModelState implements ILayerModelState {
     this.model = model;
   }
 
+  @Override
+  public List<LayerInfo> getLayerInfo() {
+    return this.model.getLayerInfo();
+  }
+
+  @Override
+  public int getCurrentIndex() {
+    return this.model.getCurrentIndex();
+  }
+
 }
@@ -1,35 +1,96 @@
 package model.color;
 
+import java.util.Arrays;
 import model.image.IImage;
 import model.image.IPixel;
-import model.image.Image;
+import model.image.PackedRGB;
 import model.image.Pixel;
 
 /**
  * The abstract class for image color transformations which contains shared properties between
- * different color transformation.
+ * different color transformation. The transformation is run over the packed raster of an image by
+ * a {@link ColorTransformEngine}, without allocating anything per pixel. Matrices that can be
+ * compiled (into SIMD code or lookup tables, see {@link ColorMatrixCompiler}) are compiled once per
+ * transformation and the compiled matrix is used instead of multiplying the matrix for every
+ * pixel.
  */
-public abstract class AColorTransformation implements IColorTransformation {
+public abstract class AColorTransformation implements IColorTransformation, IRasterKernel {
 
   // The matrix representing the necessary color transformation
   // INVARIANT: The matrix must be a 3x3.
   protected double[][] colorTransformation;
+  // The engine that runs this transformation over the pixels of an image
+  private ColorTransformEngine engine = ColorTransformEngine.getDefault();
+  // The matrix that the cached kernel was compiled from, and the cached kernel itself
+  private double[][] compiledFrom;
+  private IRasterKernel compiled;
+
+  /**
+   * Sets the engine that runs this transformation over the pixels of an image, for example to
+   * change the parallelism level it is run with.
+   *
+   * @param engine the engine to run this transformation with
+   * @throws IllegalArgumentException if the engine is null
+   */
+  public void setEngine(ColorTransformEngine engine) throws IllegalArgumentException {
+    if (engine == null) {
+      throw new IllegalArgumentException("Engine cannot be null!");
+    }
+    this.engine = engine;
+  }
 
   @Override
   public IImage apply(IImage image) throws IllegalArgumentException {
     if (image == null || colorTransformation == null) {
       throw new IllegalArgumentException("Argument(s) not be null!");
     }
-    IPixel[][] imageGrid = image.getImage();
+    return this.engine.transform(image, this.getCompiledKernel());
+  }
 
-    for (int i = 0; i < imageGrid.length; i++) {
-      for (int j = 0; j < imageGrid[i].length; j++) {
-        imageGrid[i][j] = applyToEachPixel(new Pixel(imageGrid[i][j].getX(), imageGrid[i][j].getY(),
-                imageGrid[i][j].getRed(), imageGrid[i][j].getGreen(), imageGrid[i][j].getBlue()));
-      }
+  /**
+   * Gets the kernel that applies the matrix of this transformation, compiling the matrix the
+   * first time it is needed. The matrix is treated as constant once it is set.
+   *
+   * @return the compiled matrix if it can be compiled, or this transformation otherwise
+   */
+  @Override
+  public IRasterKernel getCompiledKernel() {
+    double[][] matrix = this.colorTransformation;
+    if (this.compiled == null || this.compiledFrom != matrix) {
+      this.compiled = ColorMatrixCompiler.compile(matrix, this);
+      this.compiledFrom = matrix;
     }
+    return this.compiled;
+  }
 
-    return new Image(imageGrid, image.getFilename());
+  @Override
+  public void applyToRange(int[] raster, int from, int to) {
+    double[][] m = this.colorTransformation;
+    double m00 = m[0][0];
+    double m01 = m[0][1];
+    double m02 = m[0][2];
+    double m10 = m[1][0];
+    double m11 = m[1][1];
+    double m12 = m[1][2];
+    double m20 = m[2][0];
+    double m21 = m[2][1];
+    double m22 = m[2][2];
+
+    for (int i = from; i < to; i++) {
+      int rgb = raster[i];
+      int red = PackedRGB.red(rgb);
+      int green = PackedRGB.green(rgb);
+      int blue = PackedRGB.blue(rgb);
+      raster[i] = PackedRGB.pack(this.combine(m00, m01, m02, red, green, blue),
+          this.combine(m10, m11, m12, red, green, blue),
+          this.combine(m20, m21, m22, red, green, blue));
+    }
+  }
+
+  @Override
+  public boolean isGrayOutput() {
+    double[][] m = this.colorTransformation;
+    return Arrays.equals(m[0], m[1]) && Arrays.equals(m[0], m[2]);
   }
 
   /**
@@ -45,17 +106,30 @@ public abstract class AColorTransformation implements IColorTransformation {
     if (pix == null) {
       throw new IllegalArgumentException("Cannot have a null pixel.");
     }
-    int[] rgb = {pix.getRed(), pix.getGreen(), pix.getBlue()};
-    int[] result = new int[3];
+    int[] raster = {PackedRGB.pack(pix)};
+    this.applyToRange(raster, 0, 1);
 
-    for (int i = 0; i < colorTransformation.length; i++) {
-      for (int j = 0; j < rgb.length; j++) {
-        result[i] += colorTransformation[i][j] * rgb[j];
-      }
-      result[i] = this.clampValues(result[i]);
-    }
+    return new Pixel(pix.getX(), pix.getY(), PackedRGB.red(raster[0]),
+        PackedRGB.green(raster[0]), PackedRGB.blue(raster[0]));
+  }
 
-    return new Pixel(pix.getX(), pix.getY(), result[0], result[1], result[2]);
+  /**
+   * Combines the red, green, and blue values of a pixel with one row of the matrix into a single
+   * clamped value. The sum is truncated after every term, like the sum of an integer accumulator.
+   *
+   * @param m0    the weight of the red value
+   * @param m1    the weight of the green value
+   * @param m2    the weight of the blue value
+   * @param red   the red value of the pixel
+   * @param green the green value of the pixel
+   * @param blue  the blue value of the pixel
+   * @return the clamped combination of the values
+   */
+  private int combine(double m0, double m1, double m2, int red, int green, int blue) {
+    int result = (int) (m0 * red);
+    result = (int) (result + m1 * green);
+    result = (int) (result + m2 * blue);
+    return this.clampValues(result);
   }
 
   /**
@@ -71,4 +145,4 @@ public abstract class AColorTransformation implements IColorTransformation {
       return Math.max(result, 0);
     }
   }
-}
\ No newline at end of file
+}
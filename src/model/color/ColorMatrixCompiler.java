@@ -0,0 +1,135 @@
+package model.color;
+
+/**
+ * This class contains static methods to compile a 3x3 color matrix into the fastest {@link
+ * IRasterKernel} available that gives exactly the same results as the scalar path. The SIMD
+ * backend ({@link VectorColorMatrix}) is used when the {@code jdk.incubator.vector} module is
+ * present, and the lookup tables ({@link CompiledColorMatrix}) are used otherwise.
+ */
+public final class ColorMatrixCompiler {
+
+  /**
+   * The number of fraction bits of the fixed-point weights of the SIMD backend. The product of a
+   * weight below 2 with a channel value still fits in an {@code int}.
+   */
+  public static final int FIXED_POINT_BITS = 22;
+
+  private static final boolean VECTOR_AVAILABLE = ModuleLayer.boot()
+      .findModule("jdk.incubator.vector").isPresent();
+
+  private ColorMatrixCompiler() {
+    // static helpers only
+  }
+
+  /**
+   * Determines whether the SIMD backend can be used in this virtual machine.
+   *
+   * @return true if the {@code jdk.incubator.vector} module is present
+   */
+  public static boolean isVectorAvailable() {
+    return VECTOR_AVAILABLE;
+  }
+
+  /**
+   * Compiles the given matrix into the fastest kernel that gives the same results as the scalar
+   * path, or returns the given scalar kernel if the matrix cannot be compiled.
+   *
+   * @param matrix the 3x3 matrix to be compiled
+   * @param scalar the scalar kernel of the matrix
+   * @return the compiled kernel of the matrix
+   * @throws IllegalArgumentException if the scalar kernel is null
+   */
+  public static IRasterKernel compile(double[][] matrix, IRasterKernel scalar)
+      throws IllegalArgumentException {
+    if (scalar == null) {
+      throw new IllegalArgumentException("Scalar kernel cannot be null.");
+    }
+    if (!CompiledColorMatrix.canCompile(matrix)) {
+      return scalar;
+    }
+    int[] weights = fixedPointWeights(matrix);
+    if (VECTOR_AVAILABLE && weights != null) {
+      try {
+        return (IRasterKernel) Class.forName("model.color.VectorColorMatrix")
+            .getConstructor(int[].class).newInstance((Object) weights);
+      } catch (ReflectiveOperationException | LinkageError e) {
+        // fall back to the lookup tables
+      }
+    }
+    return new CompiledColorMatrix(matrix);
+  }
+
+  /**
+   * Finds fixed-point weights for the given matrix such that {@code (weight * value) >>> }{@link
+   * #FIXED_POINT_BITS} equals {@code (int) (entry * value)} for every channel value, which makes the
+   * SIMD backend exact.
+   *
+   * @param matrix the 3x3 matrix of non-negative entries
+   * @return the nine weights, row after row, or null if no exact weights exist for some entry
+   */
+  public static int[] fixedPointWeights(double[][] matrix) {
+    if (!CompiledColorMatrix.canCompile(matrix)) {
+      return null;
+    }
+    int[] weights = new int[9];
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        double entry = matrix[i][j];
+        if (entry >= 2) {
+          return null;
+        }
+        double scaled = entry * (1 << FIXED_POINT_BITS);
+        long floor = (long) Math.floor(scaled);
+        if (isExactWeight(entry, floor)) {
+          weights[i * 3 + j] = (int) floor;
+        } else if (isExactWeight(entry, floor + 1)) {
+          weights[i * 3 + j] = (int) (floor + 1);
+        } else {
+          return null;
+        }
+      }
+    }
+    return weights;
+  }
+
+  /**
+   * Determines whether the given fixed-point weight gives the same product as the given entry for
+   * every channel value.
+   *
+   * @param entry  the entry of the matrix
+   * @param weight the candidate fixed-point weight
+   * @return true if the weight is exact for all 256 channel values
+   */
+  private static boolean isExactWeight(double entry, long weight) {
+    if (weight < 0 || weight * 255 > Integer.MAX_VALUE) {
+      return false;
+    }
+    for (int value = 0; value < 256; value++) {
+      if ((int) ((weight * value) >>> FIXED_POINT_BITS) != (int) (entry * value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Applies the given fixed-point weights to a single packed pixel.
+   *
+   * @param weights the nine fixed-point weights, row after row
+   * @param rgb     the packed pixel
+   * @return the transformed packed pixel
+   */
+  static int applyFixedPoint(int[] weights, int rgb) {
+    int red = (rgb >> 16) & 0xFF;
+    int green = (rgb >> 8) & 0xFF;
+    int blue = rgb & 0xFF;
+    int result = 0;
+    for (int i = 0; i < 3; i++) {
+      int value = ((red * weights[i * 3]) >>> FIXED_POINT_BITS)
+          + ((green * weights[i * 3 + 1]) >>> FIXED_POINT_BITS)
+          + ((blue * weights[i * 3 + 2]) >>> FIXED_POINT_BITS);
+      result = (result << 8) | Math.min(255, value);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,153 @@
+package model.color;
+
+import model.image.IImage;
+import model.image.IImageView;
+import model.image.IMappableImage;
+import utils.TileRunner;
+
+/**
+ * Represents an engine which runs an {@link IRasterKernel} over every pixel of an image. The image
+ * is split into tiles of whole rows which are copied into the output raster and transformed in
+ * place, in parallel on the pool of a {@link TileRunner}. Images that are too small to be worth
+ * splitting are transformed serially on the calling thread. Images that store their own pixels out
+ * of the heap (see {@link IMappableImage}) are streamed through the kernel block by block instead,
+ * so they are never copied into a raster on the heap.
+ *
+ * <p>An engine created with its own parallelism level owns its pool, whose threads are stopped
+ * once the engine is closed. The default engine runs on the common pool, which it never stops.
+ */
+public class ColorTransformEngine implements AutoCloseable {
+
+  // the approximate number of pixels in a tile, small enough for a tile to stay in cache
+  private static final int TILE_PIXELS = 1 << 16;
+
+  private static final ColorTransformEngine DEFAULT =
+      new ColorTransformEngine(TileRunner.getDefault());
+
+  private final TileRunner runner;
+
+  /**
+   * Constructs a {@code ColorTransformEngine} object which runs on its own pool with the given
+   * parallelism level.
+   *
+   * @param parallelism     the number of threads to transform images with
+   * @param serialThreshold the minimum number of pixels for an image to be transformed in parallel
+   * @throws IllegalArgumentException if the parallelism is not positive or the threshold is
+   *                                  negative
+   */
+  public ColorTransformEngine(int parallelism, int serialThreshold)
+      throws IllegalArgumentException {
+    this(new TileRunner(parallelism, serialThreshold));
+  }
+
+  /**
+   * Constructs a {@code ColorTransformEngine} object which runs on the given runner.
+   *
+   * @param runner the runner to transform images with
+   */
+  private ColorTransformEngine(TileRunner runner) {
+    this.runner = runner;
+  }
+
+  /**
+   * Gets the default engine, which runs on the common pool.
+   *
+   * @return the default engine
+   */
+  public static ColorTransformEngine getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Gets the parallelism level of this engine.
+   *
+   * @return the number of threads this engine transforms images with
+   */
+  public int getParallelism() {
+    return this.runner.getParallelism();
+  }
+
+  /**
+   * Stops the threads of the pool of this engine once the images being transformed are done, if
+   * the engine owns its pool. The engine cannot transform images afterwards. Closing the default
+   * engine does nothing.
+   */
+  @Override
+  public void close() {
+    this.runner.close();
+  }
+
+  /**
+   * Checks that this engine is not closed.
+   *
+   * @throws IllegalStateException if this engine is closed
+   */
+  private void checkOpen() throws IllegalStateException {
+    if (this.runner.isClosed()) {
+      throw new IllegalStateException("The engine is closed.");
+    }
+  }
+
+  /**
+   * Runs the given kernel over every pixel of the given image. The image itself is not changed.
+   *
+   * @param image  the image to be transformed
+   * @param kernel the kernel to apply to every pixel
+   * @return a new packed raster of the transformed pixels, row after row
+   * @throws IllegalArgumentException if any argument is null
+   * @throws IllegalStateException    if this engine is closed
+   */
+  public int[] run(IImageView image, IRasterKernel kernel)
+      throws IllegalArgumentException, IllegalStateException {
+    if (image == null || kernel == null) {
+      throw new IllegalArgumentException("Argument(s) not be null!");
+    }
+    this.checkOpen();
+    int width = image.getWidth();
+    int[] raster = new int[width * image.getHeight()];
+    this.runner.forEachTile(0, image.getHeight(), width, Math.max(1, TILE_PIXELS / width),
+        (fromRow, toRow) -> transformTile(image, kernel, raster, fromRow, toRow));
+    return raster;
+  }
+
+  /**
+   * Creates the image whose pixels are the pixels of the given image after the given kernel is run
+   * over them. The image itself is not changed. An {@link IMappableImage} is transformed block by
+   * block, in its stored orientation, into a new image of the same kind.
+   *
+   * @param image  the image to be transformed
+   * @param kernel the kernel to apply to every pixel
+   * @return the transformed image, with the same name and alpha channel as the given image
+   * @throws IllegalArgumentException if any argument is null
+   * @throws IllegalStateException    if this engine is closed
+   */
+  public IImage transform(IImage image, IRasterKernel kernel)
+      throws IllegalArgumentException, IllegalStateException {
+    if (image == null || kernel == null) {
+      throw new IllegalArgumentException("Argument(s) not be null!");
+    }
+    this.checkOpen();
+    if (image instanceof IMappableImage) {
+      IMappableImage mappable = (IMappableImage) image;
+      return this.runner.invoke(() -> mappable.mapTiles(
+          (pixels, count) -> kernel.applyToRange(pixels, 0, count)));
+    }
+    return image.withColors(this.run(image, kernel));
+  }
+
+  /**
+   * Copies the given rows of the image into the raster and applies the kernel to them.
+   *
+   * @param image   the image to be transformed
+   * @param kernel  the kernel to apply to every pixel
+   * @param raster  the raster of the transformed image
+   * @param fromRow the first row of the tile (inclusive)
+   * @param toRow   the last row of the tile (exclusive)
+   */
+  private static void transformTile(IImageView image, IRasterKernel kernel, int[] raster,
+      int fromRow, int toRow) {
+    int width = image.getWidth();
+    image.getRows(fromRow, toRow - fromRow, raster, fromRow * width);
+    kernel.applyToRange(raster, fromRow * width, toRow * width);
+  }
+}
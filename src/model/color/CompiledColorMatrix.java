@@ -0,0 +1,98 @@
+package model.color;
+
+import java.util.Arrays;
+
+/**
+ * Represents a 3x3 color matrix compiled into lookup tables. Since every channel of a pixel is an
+ * 8-bit value, the product of every entry of the matrix with every possible channel value is
+ * computed once, so transforming a pixel only takes nine table lookups and a few additions.
+ *
+ * <p>The tables produce exactly the same results as {@link AColorTransformation#applyToRange},
+ * which truncates the sum after every term, as long as no entry of the matrix is negative (the
+ * truncation of a sum of non-negative terms is the sum of their truncations).
+ */
+public class CompiledColorMatrix implements IRasterKernel {
+
+  // the products of the matrix, where the table of entry (i, j) starts at (i * 3 + j) * 256
+  private final int[] tables;
+  // true if all rows of the matrix are the same, so only one channel needs to be computed
+  private final boolean equalRows;
+
+  /**
+   * Constructs a {@code CompiledColorMatrix} object by tabulating the products of the given
+   * matrix.
+   *
+   * @param matrix the 3x3 matrix to be compiled
+   * @throws IllegalArgumentException if the matrix cannot be compiled
+   */
+  public CompiledColorMatrix(double[][] matrix) throws IllegalArgumentException {
+    if (!canCompile(matrix)) {
+      throw new IllegalArgumentException("Matrix must be a 3x3 of non-negative entries.");
+    }
+    this.tables = new int[9 * 256];
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        int start = (i * 3 + j) * 256;
+        for (int value = 0; value < 256; value++) {
+          this.tables[start + value] = (int) (matrix[i][j] * value);
+        }
+      }
+    }
+    this.equalRows = Arrays.equals(matrix[0], matrix[1])
+        && Arrays.equals(matrix[0], matrix[2]);
+  }
+
+  /**
+   * Determines whether the given matrix can be compiled into lookup tables.
+   *
+   * @param matrix the given matrix
+   * @return true if the matrix is a 3x3 of finite, non-negative entries
+   */
+  public static boolean canCompile(double[][] matrix) {
+    if (matrix == null || matrix.length != 3) {
+      return false;
+    }
+    for (double[] row : matrix) {
+      if (row == null || row.length != 3) {
+        return false;
+      }
+      for (double entry : row) {
+        if (!(entry >= 0) || Double.isInfinite(entry)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void applyToRange(int[] raster, int from, int to) {
+    int[] t = this.tables;
+
+    if (this.equalRows) {
+      for (int i = from; i < to; i++) {
+        int rgb = raster[i];
+        int gray = Math.min(255, t[(rgb >> 16) & 0xFF] + t[256 + ((rgb >> 8) & 0xFF)]
+            + t[512 + (rgb & 0xFF)]);
+        raster[i] = (gray << 16) | (gray << 8) | gray;
+      }
+      return;
+    }
+
+    for (int i = from; i < to; i++) {
+      int rgb = raster[i];
+      int red = (rgb >> 16) & 0xFF;
+      int green = 256 + ((rgb >> 8) & 0xFF);
+      int blue = 512 + (rgb & 0xFF);
+      int newRed = Math.min(255, t[red] + t[green] + t[blue]);
+      int newGreen = Math.min(255, t[768 + red] + t[768 + green] + t[768 + blue]);
+      int newBlue = Math.min(255, t[1536 + red] + t[1536 + green] + t[1536 + blue]);
+      raster[i] = (newRed << 16) | (newGreen << 8) | newBlue;
+    }
+  }
+
+  @Override
+  public boolean isGrayOutput() {
+    return this.equalRows;
+  }
+}
@@ -17,4 +17,13 @@ public interface IColorTransformation {
    * @throws IllegalArgumentException if any argument is null.
    */
   IImage apply(IImage image) throws IllegalArgumentException;
+
+  /**
+   * Gets the kernel that applies this {@link IColorTransformation} in place to a packed raster,
+   * which lets several transformations be fused into a single pass over an image (see {@link
+   * KernelPipeline}).
+   *
+   * @return the kernel of this transformation
+   */
+  IRasterKernel getCompiledKernel();
 }
\ No newline at end of file
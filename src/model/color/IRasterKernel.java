@@ -0,0 +1,31 @@
+package model.color;
+
+/**
+ * Represents an operation that is applied in place to a range of pixels of a packed raster, where
+ * every pixel is packed as {@code 0xRRGGBB}. The result for a pixel must only depend on that
+ * pixel, and implementations must be safe to run on disjoint ranges of the same raster at the same
+ * time.
+ */
+public interface IRasterKernel {
+
+  /**
+   * Applies this operation in place to the pixels of the given raster from the given start index
+   * (inclusive) to the given end index (exclusive).
+   *
+   * @param raster the packed raster to be transformed
+   * @param from   the index of the first pixel to transform
+   * @param to     the index after the last pixel to transform
+   */
+  void applyToRange(int[] raster, int from, int to);
+
+  /**
+   * Determines whether this operation always produces gray pixels (with equal red, green, and blue
+   * values), which lets a {@link KernelPipeline} fold the operations that follow it into a single
+   * table of 256 entries.
+   *
+   * @return true if every pixel produced by this operation is gray
+   */
+  default boolean isGrayOutput() {
+    return false;
+  }
+}
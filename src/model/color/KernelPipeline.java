@@ -0,0 +1,177 @@
+package model.color;
+
+import java.util.Arrays;
+
+/**
+ * Represents a chain of {@link IRasterKernel}s fused into a single kernel, so that a chain of any
+ * length only costs a single pass over the memory of an image. The range given to the pipeline is
+ * walked once, in blocks small enough to stay in the first level cache, and every kernel of the
+ * chain is applied to a block before moving on to the next one.
+ *
+ * <p>The matrices of the color transformations cannot be multiplied into one matrix without
+ * changing the results, since every term of a product is truncated and every channel is clamped.
+ * Instead, every kernel that follows a kernel with a gray output (such as all of the grayscale
+ * transformations) only ever sees 256 different pixels, so it is folded into a table of 256
+ * entries, which gives exactly the same results.
+ *
+ * <p>Pipelines are immutable, so they can be shared between copies of a layer.
+ */
+public final class KernelPipeline implements IRasterKernel {
+
+  // the number of pixels every kernel of the chain is applied to at a time
+  private static final int BLOCK_PIXELS = 1 << 12;
+
+  private static final KernelPipeline EMPTY = new KernelPipeline(new IRasterKernel[0]);
+
+  // INVARIANT: no kernel with a gray output is followed by another kernel
+  private final IRasterKernel[] kernels;
+
+  /**
+   * Constructs a {@code KernelPipeline} object with the given chain of kernels.
+   *
+   * @param kernels the kernels to apply, in order
+   */
+  private KernelPipeline(IRasterKernel[] kernels) {
+    this.kernels = kernels;
+  }
+
+  /**
+   * Gets the pipeline without any kernels, which leaves every pixel unchanged.
+   *
+   * @return the empty pipeline
+   */
+  public static KernelPipeline empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Creates the pipeline which applies the kernels of this pipeline followed by the given kernel.
+   * This pipeline is not changed.
+   *
+   * @param kernel the kernel to apply after the kernels of this pipeline
+   * @return the new pipeline
+   * @throws IllegalArgumentException if the kernel is null
+   */
+  public KernelPipeline then(IRasterKernel kernel) throws IllegalArgumentException {
+    if (kernel == null) {
+      throw new IllegalArgumentException("Kernel cannot be null!");
+    }
+    if (kernel instanceof KernelPipeline) {
+      KernelPipeline result = this;
+      for (IRasterKernel other : ((KernelPipeline) kernel).kernels) {
+        result = result.then(other);
+      }
+      return result;
+    }
+
+    int last = this.kernels.length - 1;
+    if (last >= 0 && this.kernels[last].isGrayOutput()) {
+      IRasterKernel[] fused = this.kernels.clone();
+      fused[last] = GrayLookup.fold(this.kernels[last], kernel);
+      return new KernelPipeline(fused);
+    }
+    IRasterKernel[] appended = Arrays.copyOf(this.kernels, this.kernels.length + 1);
+    appended[last + 1] = kernel;
+    return new KernelPipeline(appended);
+  }
+
+  /**
+   * Determines whether this pipeline has no kernels.
+   *
+   * @return true if this pipeline leaves every pixel unchanged
+   */
+  public boolean isEmpty() {
+    return this.kernels.length == 0;
+  }
+
+  /**
+   * Gets the number of passes this pipeline makes over a block of pixels, after fusing.
+   *
+   * @return the number of kernels of this pipeline
+   */
+  public int size() {
+    return this.kernels.length;
+  }
+
+  @Override
+  public void applyToRange(int[] raster, int from, int to) {
+    if (this.kernels.length == 1) {
+      this.kernels[0].applyToRange(raster, from, to);
+      return;
+    }
+    for (int start = from; start < to; start += BLOCK_PIXELS) {
+      int end = Math.min(to, start + BLOCK_PIXELS);
+      for (IRasterKernel kernel : this.kernels) {
+        kernel.applyToRange(raster, start, end);
+      }
+    }
+  }
+
+  @Override
+  public boolean isGrayOutput() {
+    return this.kernels.length > 0 && this.kernels[this.kernels.length - 1].isGrayOutput();
+  }
+
+  /**
+   * Represents a kernel with a gray output followed by a table of what the kernels after it turn
+   * each of the 256 gray pixels into.
+   */
+  private static final class GrayLookup implements IRasterKernel {
+
+    private final IRasterKernel gray;
+    private final int[] table;
+    private final boolean grayTable;
+
+    /**
+     * Constructs a {@code GrayLookup} object.
+     *
+     * @param gray  the kernel with a gray output
+     * @param table the packed pixel that every gray value is turned into
+     */
+    private GrayLookup(IRasterKernel gray, int[] table) {
+      this.gray = gray;
+      this.table = table;
+      boolean allGray = true;
+      for (int rgb : table) {
+        allGray &= ((rgb >> 16) & 0xFF) == (rgb & 0xFF) && ((rgb >> 8) & 0xFF) == (rgb & 0xFF);
+      }
+      this.grayTable = allGray;
+    }
+
+    /**
+     * Folds the given kernel into the table of the given kernel with a gray output.
+     *
+     * @param gray the kernel with a gray output, which may already be a {@code GrayLookup}
+     * @param next the kernel to apply after it
+     * @return the fused kernel
+     */
+    static GrayLookup fold(IRasterKernel gray, IRasterKernel next) {
+      int[] table = new int[256];
+      IRasterKernel base = gray;
+      if (gray instanceof GrayLookup) {
+        base = ((GrayLookup) gray).gray;
+        System.arraycopy(((GrayLookup) gray).table, 0, table, 0, 256);
+      } else {
+        for (int value = 0; value < 256; value++) {
+          table[value] = (value << 16) | (value << 8) | value;
+        }
+      }
+      next.applyToRange(table, 0, 256);
+      return new GrayLookup(base, table);
+    }
+
+    @Override
+    public void applyToRange(int[] raster, int from, int to) {
+      this.gray.applyToRange(raster, from, to);
+      int[] t = this.table;
+      for (int i = from; i < to; i++) {
+        raster[i] = t[raster[i] & 0xFF];
+      }
+    }
+
+    @Override
+    public boolean isGrayOutput() {
+      return this.grayTable;
+    }
+  }
+}
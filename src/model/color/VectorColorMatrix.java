@@ -0,0 +1,93 @@
+package model.color;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Represents a 3x3 color matrix applied with the SIMD instructions of the CPU through the JDK
+ * Vector API. Every vector of packed pixels is split into red, green, and blue planes in
+ * registers, every plane is multiplied by fixed-point weights, and the planes are packed back
+ * together. The fixed-point weights are chosen by {@link ColorMatrixCompiler} so that the results
+ * are exactly the same as those of the scalar path.
+ *
+ * <p>This class needs the {@code jdk.incubator.vector} module, so it must only be loaded through
+ * {@link ColorMatrixCompiler}, which checks that the module is present first.
+ */
+public class VectorColorMatrix implements IRasterKernel {
+
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+  // the fixed-point weights of the matrix, row after row
+  private final int[] weights;
+
+  /**
+   * Constructs a {@code VectorColorMatrix} object with the given fixed-point weights.
+   *
+   * @param weights the nine weights of the matrix, row after row, each scaled by {@code 2^}{@link
+   *                ColorMatrixCompiler#FIXED_POINT_BITS}
+   * @throws IllegalArgumentException if the weights are null or there are not nine of them
+   */
+  public VectorColorMatrix(int[] weights) throws IllegalArgumentException {
+    if (weights == null || weights.length != 9) {
+      throw new IllegalArgumentException("There must be nine weights.");
+    }
+    this.weights = weights.clone();
+  }
+
+  @Override
+  public void applyToRange(int[] raster, int from, int to) {
+    int[] w = this.weights;
+    int bits = ColorMatrixCompiler.FIXED_POINT_BITS;
+    int i = from;
+    int upper = from + SPECIES.loopBound(to - from);
+
+    for (; i < upper; i += SPECIES.length()) {
+      IntVector pixels = IntVector.fromArray(SPECIES, raster, i);
+      IntVector red = pixels.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+      IntVector green = pixels.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+      IntVector blue = pixels.and(0xFF);
+
+      IntVector newRed = combine(red, green, blue, w[0], w[1], w[2], bits);
+      IntVector newGreen = combine(red, green, blue, w[3], w[4], w[5], bits);
+      IntVector newBlue = combine(red, green, blue, w[6], w[7], w[8], bits);
+      newRed.lanewise(VectorOperators.LSHL, 16)
+          .or(newGreen.lanewise(VectorOperators.LSHL, 8))
+          .or(newBlue)
+          .intoArray(raster, i);
+    }
+
+    // the pixels that do not fill a whole vector
+    for (; i < to; i++) {
+      raster[i] = ColorMatrixCompiler.applyFixedPoint(w, raster[i]);
+    }
+  }
+
+  @Override
+  public boolean isGrayOutput() {
+    int[] w = this.weights;
+    return w[0] == w[3] && w[0] == w[6] && w[1] == w[4] && w[1] == w[7] && w[2] == w[5]
+        && w[2] == w[8];
+  }
+
+  /**
+   * Combines the red, green, and blue planes with one row of fixed-point weights into a single
+   * clamped plane.
+   *
+   * @param red   the red plane
+   * @param green the green plane
+   * @param blue  the blue plane
+   * @param w0    the weight of the red plane
+   * @param w1    the weight of the green plane
+   * @param w2    the weight of the blue plane
+   * @param bits  the number of fraction bits of the weights
+   * @return the clamped combination of the planes
+   */
+  private static IntVector combine(IntVector red, IntVector green, IntVector blue, int w0, int w1,
+      int w2, int bits) {
+    return red.mul(w0).lanewise(VectorOperators.LSHR, bits)
+        .add(green.mul(w1).lanewise(VectorOperators.LSHR, bits))
+        .add(blue.mul(w2).lanewise(VectorOperators.LSHR, bits))
+        .min(255);
+  }
+}
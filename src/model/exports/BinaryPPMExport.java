@@ -0,0 +1,104 @@
+package model.exports;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import model.image.IImageView;
+import model.image.PackedRGB;
+
+/**
+ * Represents a class which manages a given {@code IImageView} and exports the image to the given
+ * channel in the binary PPM (P6) format, or in the binary PGM (P5) format for grayscale exports.
+ * The pixels are encoded a chunk of rows at a time into a reusable buffer which is written to the
+ * channel in bulk.
+ */
+public class BinaryPPMExport implements IExport {
+
+  // the approximate number of bytes encoded before they are written to the channel
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  private final IImageView image;
+  private final WritableByteChannel channel;
+  private final boolean grayscale;
+
+  /**
+   * Constructs a {@code BinaryPPMExport} object with a given channel.
+   *
+   * @param image     the given image to be converted into a file
+   * @param channel   the channel to write the file to, which is closed after exporting
+   * @param grayscale true to export a PGM (P5) image of the luma of every pixel, false to export a
+   *                  PPM (P6) image
+   * @throws IllegalArgumentException if any argument is null
+   */
+  public BinaryPPMExport(IImageView image, WritableByteChannel channel, boolean grayscale) {
+    if (image == null || channel == null) {
+      throw new IllegalArgumentException("Cannot have any null arguments.");
+    }
+    this.image = image;
+    this.channel = channel;
+    this.grayscale = grayscale;
+  }
+
+  @Override
+  public void export() throws IOException {
+    int height = this.image.getHeight();
+    int width = this.image.getWidth();
+    int bytesPerPixel = this.grayscale ? 1 : 3;
+    int rowsPerChunk = Math.max(1, Math.min(height, CHUNK_SIZE / (width * bytesPerPixel)));
+
+    try {
+      // write the header
+      String header = String.format("%s\n%d %d\n%d\n", this.grayscale ? "P5" : "P6", width,
+          height, 255);
+      this.writeFully(ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)));
+
+      int[] rows = new int[rowsPerChunk * width];
+      ByteBuffer bytes = ByteBuffer.allocateDirect(rowsPerChunk * width * bytesPerPixel);
+      for (int row = 0; row < height; row += rowsPerChunk) {
+        int numRows = Math.min(rowsPerChunk, height - row);
+        int numPixels = numRows * width;
+        this.image.getRows(row, numRows, rows, 0);
+
+        bytes.clear();
+        for (int i = 0; i < numPixels; i++) {
+          int rgb = rows[i];
+          if (this.grayscale) {
+            bytes.put((byte) luma(rgb));
+          } else {
+            bytes.put((byte) PackedRGB.red(rgb));
+            bytes.put((byte) PackedRGB.green(rgb));
+            bytes.put((byte) PackedRGB.blue(rgb));
+          }
+        }
+        bytes.flip();
+        this.writeFully(bytes);
+      }
+    } finally {
+      this.channel.close();
+    }
+  }
+
+  /**
+   * Computes the Rec. 709 luma of a packed color, which is exact for colors that are already gray.
+   *
+   * @param rgb the packed color
+   * @return the luma of the color, between 0 and 255 inclusive
+   */
+  private static int luma(int rgb) {
+    return (2126 * PackedRGB.red(rgb) + 7152 * PackedRGB.green(rgb)
+        + 722 * PackedRGB.blue(rgb) + 5000) / 10000;
+  }
+
+  /**
+   * Writes all of the remaining bytes of the given buffer to the channel.
+   *
+   * @param bytes the bytes to be written
+   * @throws IOException if writing to the channel fails
+   */
+  private void writeFully(ByteBuffer bytes) throws IOException {
+    while (bytes.hasRemaining()) {
+      this.channel.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package model.exports;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import model.image.IImageView;
+
+/**
+ * Represents an object that can export images to the binary PPM (P6) or PGM (P5) format and name
+ * them based on a given file name.
+ */
+public class BinaryPPMExportFilename extends BinaryPPMExport implements IExport {
+
+  /**
+   * Constructs a {@code BinaryPPMExportFilename} object with a file channel for writing a file.
+   * The {@code .pgm} extension is added to the name of grayscale exports and the {@code .ppm}
+   * extension to all others.
+   *
+   * @param image     the given image to be converted into a file
+   * @param filename  the desired filename for exporting file, without its extension
+   * @param grayscale true to export a PGM (P5) image, false to export a PPM (P6) image
+   * @throws IllegalArgumentException if the given image or filename is null
+   * @throws IOException              if an I/O error occurs
+   */
+  public BinaryPPMExportFilename(IImageView image, String filename, boolean grayscale)
+      throws IllegalArgumentException, IOException {
+    super(checkNullImage(image), FileChannel.open(
+        Paths.get(checkNullDesiredName(filename) + (grayscale ? ".pgm" : ".ppm")),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING), grayscale);
+  }
+
+  /**
+   * Checks if the given image from the constructor is null before calling super on it.
+   *
+   * @param image the image to be checked.
+   * @return the image if it was not null.
+   * @throws IllegalArgumentException if the image is null.
+   */
+  private static IImageView checkNullImage(IImageView image) {
+    if (image == null) {
+      throw new IllegalArgumentException("Image is null.");
+    }
+    return image;
+  }
+
+  /**
+   * Checks if the given name from the constructor is null before calling super on it.
+   *
+   * @param desiredName the name to be checked.
+   * @return the name if it was not null.
+   * @throws IllegalArgumentException if the name is null.
+   */
+  private static String checkNullDesiredName(String desiredName) {
+    if (desiredName == null) {
+      throw new IllegalArgumentException("Name is null.");
+    }
+    return desiredName;
+  }
+}
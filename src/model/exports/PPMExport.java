@@ -1,31 +1,40 @@
 package model.exports;
 
 import java.io.IOException;
-import java.io.Writer;
-import model.image.IImage;
-import model.image.IPixel;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import model.image.IImageView;
 
 /**
- * Represents a class which manages a given {@code IImage} and exports the Image based on this
- * object's {@link Writer} to PPM format.
+ * Represents a class which manages a given {@code IImageView} and exports the Image based on this
+ * object's {@link OutputStream} to PPM format. The samples are encoded as ASCII digits directly
+ * into a reusable buffer which is written to the stream in large chunks, and lines are wrapped so
+ * that none is longer than 70 characters.
  */
 public class PPMExport implements IExport {
 
-  private final IImage image;
-  private final Writer wr;
+  // the size of the buffer the samples are encoded into before they are written to the stream
+  private static final int BUFFER_SIZE = 1 << 16;
+  // the maximum length of a line of a plain PPM file
+  private static final int MAX_LINE_LENGTH = 70;
+
+  private final IImageView image;
+  private final OutputStream out;
 
   /**
-   * Constructs a {@code PPMOutputFileManager} object with a given Writer.
+   * Constructs a {@code PPMOutputFileManager} object with a given stream. The export does its own
+   * buffering, so the stream does not need to be buffered.
    *
    * @param image the given image to be converted into a file
+   * @param out   the stream to write the file to, which is closed after exporting
    * @throws IllegalArgumentException if any argument is null
    */
-  public PPMExport(IImage image, Writer wr) {
-    if (image == null || wr == null) {
+  public PPMExport(IImageView image, OutputStream out) {
+    if (image == null || out == null) {
       throw new IllegalArgumentException("Cannot have any null arguments.");
     }
     this.image = image;
-    this.wr = wr;
+    this.out = out;
   }
 
   @Override
@@ -33,17 +42,74 @@ public class PPMExport implements IExport {
     int height = image.getHeight();
     int width = image.getWidth();
 
-    // write the header
-    this.wr.write(String.format("P3 %d %d %d\n", width, height, 255));
+    try {
+      // write the header
+      this.out.write(("P3\n" + width + " " + height + "\n" + 255 + "\n")
+          .getBytes(StandardCharsets.US_ASCII));
+
+      int[] row = new int[width];
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int position = 0;
+      int lineLength = 0;
 
-    IPixel[][] imageGrid = image.getImage();
+      for (int i = 0; i < height; i++) {
+        this.image.getRows(i, 1, row, 0);
+        for (int j = 0; j < width; j++) {
+          int rgb = row[j];
+          for (int shift = 16; shift >= 0; shift -= 8) {
+            // a separator and at most three digits are written for every sample
+            if (position + 4 > buffer.length) {
+              this.out.write(buffer, 0, position);
+              position = 0;
+            }
+            int sample = (rgb >> shift) & 0xFF;
+            int digits = sample >= 100 ? 3 : sample >= 10 ? 2 : 1;
 
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        this.wr.write(imageGrid[i][j].toString() + " ");
+            if (lineLength > 0) {
+              if (lineLength + 1 + digits > MAX_LINE_LENGTH) {
+                buffer[position++] = '\n';
+                lineLength = 0;
+              } else {
+                buffer[position++] = ' ';
+                lineLength++;
+              }
+            }
+            position = writeDigits(buffer, position, sample, digits);
+            lineLength += digits;
+          }
+        }
       }
+
+      // the last sample may have filled the buffer
+      if (position == buffer.length) {
+        this.out.write(buffer, 0, position);
+        position = 0;
+      }
+      buffer[position++] = '\n';
+      this.out.write(buffer, 0, position);
+      this.out.flush();
+    } finally {
+      this.out.close();
     }
+  }
 
-    this.wr.close();
+  /**
+   * Writes the decimal digits of a sample into the given buffer.
+   *
+   * @param buffer   the buffer to write into
+   * @param position the index in the buffer to write the first digit at
+   * @param sample   the sample, between 0 and 255 inclusive
+   * @param digits   the number of digits of the sample
+   * @return the index in the buffer after the last digit
+   */
+  private static int writeDigits(byte[] buffer, int position, int sample, int digits) {
+    if (digits == 3) {
+      buffer[position++] = (byte) ('0' + sample / 100);
+    }
+    if (digits >= 2) {
+      buffer[position++] = (byte) ('0' + (sample / 10) % 10);
+    }
+    buffer[position++] = (byte) ('0' + sample % 10);
+    return position;
   }
-}
\ No newline at end of file
+}
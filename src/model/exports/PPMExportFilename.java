@@ -1,8 +1,8 @@
 package model.exports;
 
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import model.image.IImage;
+import model.image.IImageView;
 
 /**
  * Represents an object that can export images to the PPM format and name them based on a given file
@@ -11,16 +11,16 @@ import model.image.IImage;
 public class PPMExportFilename extends PPMExport implements IExport {
 
   /**
-   * Constructs a {@code PPMExportFilename} object with a default Writer for writing a file.
+   * Constructs a {@code PPMExportFilename} object with a file stream for writing a file.
    *
    * @param image    the given image to be converted into a file
    * @param filename the desired filename for exporting file
    * @throws IllegalArgumentException if the given image is null
    * @throws IOException              if an I/O error occurs
    */
-  public PPMExportFilename(IImage image, String filename)
+  public PPMExportFilename(IImageView image, String filename)
       throws IllegalArgumentException, IOException {
-    super(checkNullImage(image), new FileWriter(checkNullDesiredName(filename) + ".ppm"));
+    super(checkNullImage(image), new FileOutputStream(checkNullDesiredName(filename) + ".ppm"));
 
   }
 
@@ -31,7 +31,7 @@ public class PPMExportFilename extends PPMExport implements IExport {
    * @return the image if it was not null.
    * @throws IllegalArgumentException if the image is null.
    */
-  private static IImage checkNullImage(IImage image) {
+  private static IImageView checkNullImage(IImageView image) {
     if (image == null) {
       throw new IllegalArgumentException("Image is null.");
     }
@@ -3,35 +3,64 @@ package model.image;
 /**
  * This interface represents the different operations that images can perform.
  */
-public interface IImage {
+public interface IImage extends IImageView {
 
   /**
-   * Gets a deep copy of a 2D array of pixels that represent an image.
+   * Gets a deep copy of a 2D array of pixels that represent an image. This materialises a new
+   * pixel object for every position of the image, so callers that only need the color values
+   * should prefer {@link #view()}.
    *
    * @return a 2D array of pixels that represent an image
    */
   IPixel[][] getImage();
 
   /**
-   * Gets the filename of this image.
+   * Gets a read-only view of this image. The view shares the pixels of this image without copying
+   * them, so it reflects any later changes made to this image.
    *
-   * @return the filename of this image
+   * @return a read-only view of this image
    */
-  String getFilename();
+  IImageView view();
 
   /**
-   * Gets the height of this image.
+   * Gets a copy of this image that is independent from this image. The pixels are shared between
+   * the two images until either of them is mutated, at which point the mutated image makes its own
+   * copy of the pixels.
    *
-   * @return the height of this image.
+   * @return a copy of this image
    */
-  int getHeight();
+  IImage copy();
 
   /**
-   * Gets the width of this image.
+   * Creates an image with the same dimensions, filename and alpha channel as this image but with
+   * the given colors, such as the colors of this image after a color transformation. The new image
+   * takes ownership of the given raster.
    *
-   * @return the width of this image.
+   * @param raster the packed {@code 0xRRGGBB} colors of the new image, row after row
+   * @return the new image
+   * @throws IllegalArgumentException if the raster is null or does not match the dimensions of
+   *                                  this image
    */
-  int getWidth();
+  IImage withColors(int[] raster) throws IllegalArgumentException;
 
+  /**
+   * Flips this image horizontally (mirrors every row).
+   */
+  void flipImageH();
+
+  /**
+   * Flips this image vertically (reverses the order of the rows).
+   */
+  void flipImageV();
+
+  /**
+   * Rotates this image a quarter turn clockwise, which swaps its width and height.
+   */
+  void rotateImageClockwise();
+
+  /**
+   * Rotates this image a quarter turn counterclockwise, which swaps its width and height.
+   */
+  void rotateImageCounterclockwise();
 
 }
@@ -0,0 +1,94 @@
+package model.image;
+
+/**
+ * This interface represents a read-only accessor to the pixels of an image. It does not provide
+ * any operations to mutate the image, and reading through it never copies the pixels of the image.
+ */
+public interface IImageView {
+
+  /**
+   * Gets the color of the pixel at the given position packed as {@code 0xRRGGBB}.
+   *
+   * @param row the row of the pixel
+   * @param col the column of the pixel
+   * @return the packed color of the pixel
+   * @throws IllegalArgumentException if the position is outside of this image
+   */
+  int getRGB(int row, int col) throws IllegalArgumentException;
+
+  /**
+   * Copies the packed {@code 0xRRGGBB} colors of the given rows of this image into the given
+   * array, row after row, starting at the given offset.
+   *
+   * @param startRow the first row to copy
+   * @param numRows  the number of rows to copy
+   * @param dest     the array to copy the colors into
+   * @param offset   the index in the array to start copying into
+   * @throws IllegalArgumentException if the array is null or too small, or if the rows are outside
+   *                                  of this image
+   */
+  void getRows(int startRow, int numRows, int[] dest, int offset)
+      throws IllegalArgumentException;
+
+  /**
+   * Determines whether this image has an alpha channel. An image without one is fully opaque.
+   *
+   * @return true if this image has an alpha channel
+   */
+  boolean hasAlpha();
+
+  /**
+   * Gets the alpha of the pixel at the given position, from 0 (fully transparent) to 255 (fully
+   * opaque).
+   *
+   * @param row the row of the pixel
+   * @param col the column of the pixel
+   * @return the alpha of the pixel, which is 255 if this image has no alpha channel
+   * @throws IllegalArgumentException if the position is outside of this image
+   */
+  int getAlpha(int row, int col) throws IllegalArgumentException;
+
+  /**
+   * Copies the alpha of the given rows of this image into the given array as unsigned bytes, row
+   * after row, starting at the given offset. Every value is 255 if this image has no alpha
+   * channel.
+   *
+   * @param startRow the first row to copy
+   * @param numRows  the number of rows to copy
+   * @param dest     the array to copy the alpha values into
+   * @param offset   the index in the array to start copying into
+   * @throws IllegalArgumentException if the array is null or too small, or if the rows are outside
+   *                                  of this image
+   */
+  void getAlphaRows(int startRow, int numRows, byte[] dest, int offset)
+      throws IllegalArgumentException;
+
+  /**
+   * Gets the filename of this image.
+   *
+   * @return the filename of this image
+   */
+  String getFilename();
+
+  /**
+   * Gets the format of the file this image was loaded from, so that it can be saved the same way.
+   *
+   * @return the magic number of the PPM or PGM file this image was loaded from ({@code "P3"},
+   *         {@code "P5"} or {@code "P6"}), or null if it was not loaded from one
+   */
+  String getFormat();
+
+  /**
+   * Gets the height of this image.
+   *
+   * @return the height of this image.
+   */
+  int getHeight();
+
+  /**
+   * Gets the width of this image.
+   *
+   * @return the width of this image.
+   */
+  int getWidth();
+}
@@ -0,0 +1,27 @@
+package model.image;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Represents an image whose stored pixels can be transformed block by block, straight out of its
+ * own storage, without first copying the whole image into a raster. Only operations that change
+ * every pixel according to its own color (such as color transformations) can be applied this way,
+ * since the blocks are given in the stored orientation of the image rather than the one it is read
+ * in.
+ */
+public interface IMappableImage extends IImage {
+
+  /**
+   * Creates the image whose stored pixels are the stored pixels of this image transformed by the
+   * given operation, with the same orientation, alpha channel and name as this image. The
+   * operation is given a copy of every block of stored pixels along with its number of pixels, and
+   * changes it in place. Blocks are transformed in parallel, on the pool of the calling thread if
+   * it runs on a {@link java.util.concurrent.ForkJoinPool}, so the operation must be safe to run on
+   * several blocks at once. This image is not changed.
+   *
+   * @param operation the operation to apply to every block of pixels
+   * @return the transformed image
+   * @throws IllegalArgumentException if the operation is null
+   */
+  IMappableImage mapTiles(ObjIntConsumer<int[]> operation) throws IllegalArgumentException;
+}
@@ -1,20 +1,52 @@
 package model.image;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.util.Arrays;
 import java.util.Objects;
-import utils.ImageUtil;
+import model.managers.PPMReader;
 
 /**
  * Represents an image that is of the PPM/JPEG/PNG format (a simple, text-based file format to store
  * images) that has a list of pixels. A PPM Image is made up of pixels that have red, green, and
  * blue values of each pixel, row-wise.
+ *
+ * <p>The pixels are stored in a single packed raster (one {@code 0xRRGGBB} integer per pixel,
+ * row-major) rather than as a grid of pixel objects. {@link #getImage()} only materialises pixel
+ * objects for callers that ask for them.
+ *
+ * <p>Flips and rotations only record a pending {@link Orientation} in constant time. Rows copied
+ * out with {@link #getRows} are read through the pending orientation, and the orientation is
+ * applied to the raster itself the first time the pixels are read in any other way, so any chain
+ * of flips and rotations costs at most a single pass over the pixels. Reading an image from several
+ * threads at once is safe, but mutating it is not.
+ *
+ * <p>An image may also have an alpha channel, which is stored as a separate plane of one byte per
+ * pixel (0 is fully transparent and 255 fully opaque) so that the packed colors are the same
+ * whether or not an image has one. Images without an alpha channel are fully opaque.
  */
 public class Image implements IImage {
 
-  private final IPixel[][] image;
+  // the side of the square blocks a transposed raster is copied in, to stay within the cache
+  private static final int TRANSPOSE_BLOCK = 64;
+
+  // INVARIANT: raster.length == width * height and every entry only uses the bits of 0xFFFFFF
+  private int[] raster;
+  // true if the raster may be shared with a copy of this image, so it must be copied before writing
+  private boolean shared;
+  // the alpha of every pixel, stored like the raster, or null if the image is fully opaque
+  // INVARIANT: never written once set, so it may be shared between images
+  private byte[] alpha;
+  // the flips and rotations that have not been applied to the raster yet
+  private volatile Orientation orientation;
+  // INVARIANT: width and height are positive, and are those of the image after its orientation
+  private int width;
+  private int height;
   private final String filename;
+  // the magic number of the file the image was loaded from, or null
+  private final String format;
 
   /**
    * Constructs a {@code Image} object based on a given file for the purpose of loading an image.
@@ -27,12 +59,14 @@ public class Image implements IImage {
     if (filename == null) {
       throw new IllegalArgumentException("The filename cannot be null.");
     }
-    this.filename = filename;
-    this.image = ImageUtil.readPPM(this.filename);
+    Image image = PPMReader.readFile(filename);
 
-    if (this.image == null) {
-      throw new IllegalArgumentException("The file doesn't exist.");
-    }
+    this.filename = filename;
+    this.height = image.height;
+    this.width = image.width;
+    this.raster = image.raster;
+    this.orientation = image.orientation;
+    this.format = image.format;
   }
 
   /**
@@ -50,8 +84,107 @@ public class Image implements IImage {
       throw new IllegalArgumentException("Cannot have a null/empty image or filename.");
     }
 
-    this.image = image;
+    this.height = image.length;
+    this.width = image[0].length;
+    this.raster = packGrid(image);
+    this.orientation = Orientation.IDENTITY;
+    this.filename = filename;
+    this.format = null;
+  }
+
+  /**
+   * Constructs a {@code Image} object with the given name based on a packed raster of {@code
+   * 0xRRGGBB} colors stored row after row. The image takes ownership of the given raster, which
+   * must not be modified by the caller afterwards.
+   *
+   * @param width    the width of the image
+   * @param height   the height of the image
+   * @param raster   the packed colors of the image
+   * @param filename the name of the image
+   * @throws IllegalArgumentException if any argument is null, if the dimensions are not positive,
+   *                                  if the raster does not match the dimensions or if any color is
+   *                                  not a valid packed color
+   */
+  public Image(int width, int height, int[] raster, String filename) {
+    this(width, height, raster, null, filename);
+  }
+
+  /**
+   * Constructs a {@code Image} object with the given name based on a packed raster of {@code
+   * 0xRRGGBB} colors and a plane of alpha values, both stored row after row. The image takes
+   * ownership of the given arrays, which must not be modified by the caller afterwards.
+   *
+   * @param width    the width of the image
+   * @param height   the height of the image
+   * @param raster   the packed colors of the image
+   * @param alpha    the alpha of every pixel (from 0 for transparent to 255 for opaque, as an
+   *                 unsigned byte), or null if the image is fully opaque
+   * @param filename the name of the image
+   * @throws IllegalArgumentException if the raster or filename is null, if the dimensions are not
+   *                                  positive, if the raster or alpha plane does not match the
+   *                                  dimensions or if any color is not a valid packed color
+   */
+  public Image(int width, int height, int[] raster, byte[] alpha, String filename) {
+    this(width, height, raster, alpha, filename, null);
+  }
+
+  /**
+   * Constructs a {@code Image} object with the given name and format based on a packed raster of
+   * {@code 0xRRGGBB} colors and a plane of alpha values, both stored row after row. The image takes
+   * ownership of the given arrays, which must not be modified by the caller afterwards.
+   *
+   * @param width    the width of the image
+   * @param height   the height of the image
+   * @param raster   the packed colors of the image
+   * @param alpha    the alpha of every pixel (from 0 for transparent to 255 for opaque, as an
+   *                 unsigned byte), or null if the image is fully opaque
+   * @param filename the name of the image
+   * @param format   the magic number of the file the image was loaded from, or null if none
+   * @throws IllegalArgumentException if the raster or filename is null, if the dimensions are not
+   *                                  positive, if the raster or alpha plane does not match the
+   *                                  dimensions or if any color is not a valid packed color
+   */
+  public Image(int width, int height, int[] raster, byte[] alpha, String filename,
+      String format) {
+    if (raster == null || filename == null) {
+      throw new IllegalArgumentException("Cannot have a null image or filename.");
+    }
+    if (width <= 0 || height <= 0 || (long) width * height != raster.length) {
+      throw new IllegalArgumentException("The raster does not match the dimensions.");
+    }
+    if (alpha != null && alpha.length != raster.length) {
+      throw new IllegalArgumentException("The alpha plane does not match the dimensions.");
+    }
+    for (int rgb : raster) {
+      if ((rgb & ~PackedRGB.MASK) != 0) {
+        throw new IllegalArgumentException("The raster contains an invalid color.");
+      }
+    }
+
+    this.width = width;
+    this.height = height;
+    this.raster = raster;
+    this.alpha = alpha;
+    this.orientation = Orientation.IDENTITY;
     this.filename = filename;
+    this.format = format;
+  }
+
+  /**
+   * Constructs a {@code Image} object which shares the raster of the given image until either of
+   * them is mutated.
+   *
+   * @param other the image to share the raster of
+   */
+  private Image(Image other) {
+    this.width = other.width;
+    this.height = other.height;
+    this.raster = other.raster;
+    this.alpha = other.alpha;
+    this.orientation = other.orientation;
+    this.filename = other.filename;
+    this.format = other.format;
+    this.shared = true;
   }
 
   /**
@@ -63,6 +196,9 @@ public class Image implements IImage {
    */
   private boolean checkImageGrid(IPixel[][] imageGrid) throws IllegalArgumentException {
     for (IPixel[] iPixels : imageGrid) {
+      if (iPixels == null || iPixels.length != imageGrid[0].length) {
+        return true;
+      }
       for (IPixel iPixel : iPixels) {
         if (iPixel == null) {
           return true;
@@ -73,50 +209,389 @@ public class Image implements IImage {
     return false;
   }
 
+  /**
+   * Packs a rectangular grid of pixels into a row-major raster of {@code 0xRRGGBB} colors.
+   *
+   * @param imageGrid the given grid of pixels
+   * @return the packed raster of the grid
+   */
+  private static int[] packGrid(IPixel[][] imageGrid) {
+    int width = imageGrid[0].length;
+    int[] packed = new int[imageGrid.length * width];
+
+    for (int i = 0; i < imageGrid.length; i++) {
+      for (int j = 0; j < width; j++) {
+        packed[i * width + j] = PackedRGB.pack(imageGrid[i][j]);
+      }
+    }
+
+    return packed;
+  }
+
   @Override
   public IPixel[][] getImage() {
-    IPixel[][] imageGrid = new IPixel[this.getHeight()][this.getWidth()];
+    this.materialise();
+    IPixel[][] imageGrid = new IPixel[this.height][this.width];
 
-    for (int i = 0; i < this.getHeight(); i++) {
-      for (int j = 0; j < this.getWidth(); j++) {
-        IPixel currPixel = this.image[i][j];
-        imageGrid[i][j] = new Pixel(i, j, currPixel.getRed(), currPixel.getGreen(),
-            currPixel.getBlue());
+    for (int i = 0; i < this.height; i++) {
+      for (int j = 0; j < this.width; j++) {
+        int rgb = this.raster[i * this.width + j];
+        imageGrid[i][j] = new Pixel(i, j, PackedRGB.red(rgb), PackedRGB.green(rgb),
+            PackedRGB.blue(rgb));
       }
     }
 
     return imageGrid;
   }
 
+  @Override
+  public IImageView view() {
+    return new ImageView(this);
+  }
+
+  @Override
+  public IImage copy() {
+    this.shared = true;
+    return new Image(this);
+  }
+
+  @Override
+  public IImage withColors(int[] raster) throws IllegalArgumentException {
+    byte[] orientedAlpha = this.alpha;
+    if (orientedAlpha != null && this.orientation != Orientation.IDENTITY) {
+      synchronized (this) {
+        orientedAlpha = new byte[this.alpha.length];
+        this.readOrientedAlpha(this.orientation, 0, this.height, orientedAlpha, 0);
+      }
+    }
+    return new Image(this.width, this.height, raster, orientedAlpha, this.filename, this.format);
+  }
+
+  /**
+   * Applies the pending orientation of this image to its raster, so that the raster is stored in
+   * the orientation the image is read in. Flips of a raster that is not shared with a copy are done
+   * in place, and anything else is copied into a new raster.
+   */
+  private void materialise() {
+    if (this.orientation == Orientation.IDENTITY) {
+      return;
+    }
+    synchronized (this) {
+      Orientation pending = this.orientation;
+      if (pending == Orientation.IDENTITY) {
+        return;
+      }
+      if (!pending.isTransposed() && !this.shared) {
+        if (pending.mirrorsRows()) {
+          this.mirrorRowsInPlace();
+        }
+        if (pending.mirrorsColumns()) {
+          this.mirrorColumnsInPlace();
+        }
+      } else {
+        int[] oriented = new int[this.raster.length];
+        this.readOriented(pending, 0, this.height, oriented, 0);
+        this.raster = oriented;
+        this.shared = false;
+      }
+      if (this.alpha != null) {
+        byte[] orientedAlpha = new byte[this.alpha.length];
+        this.readOrientedAlpha(pending, 0, this.height, orientedAlpha, 0);
+        this.alpha = orientedAlpha;
+      }
+      this.orientation = Orientation.IDENTITY;
+    }
+  }
+
+  /**
+   * Copies the given rows of this image, as they are read in the given orientation, out of the
+   * stored raster. Rows are copied in bulk (or with a reversed index when they are mirrored), and
+   * the rows of a transposed raster are gathered in square blocks so that the strided reads stay
+   * within the cache.
+   *
+   * @param pending  the orientation to read the stored raster in
+   * @param startRow the first row to copy
+   * @param numRows  the number of rows to copy
+   * @param dest     the array to copy the rows into
+   * @param offset   the index in the array of the first pixel of the first row
+   */
+  private void readOriented(Orientation pending, int startRow, int numRows, int[] dest,
+      int offset) {
+    boolean mirrorRows = pending.mirrorsRows();
+    boolean mirrorColumns = pending.mirrorsColumns();
+    int endRow = startRow + numRows;
+
+    if (!pending.isTransposed()) {
+      for (int i = startRow; i < endRow; i++) {
+        int src = (mirrorRows ? this.height - 1 - i : i) * this.width;
+        int dst = offset + (i - startRow) * this.width;
+        if (mirrorColumns) {
+          for (int j = 0, k = src + this.width - 1; j < this.width; j++, k--) {
+            dest[dst + j] = this.raster[k];
+          }
+        } else {
+          System.arraycopy(this.raster, src, dest, dst, this.width);
+        }
+      }
+      return;
+    }
+
+    // the stored raster is this.width rows of this.height pixels
+    for (int i0 = startRow; i0 < endRow; i0 += TRANSPOSE_BLOCK) {
+      for (int j0 = 0; j0 < this.width; j0 += TRANSPOSE_BLOCK) {
+        int iEnd = Math.min(endRow, i0 + TRANSPOSE_BLOCK);
+        int jEnd = Math.min(this.width, j0 + TRANSPOSE_BLOCK);
+        for (int i = i0; i < iEnd; i++) {
+          int storedCol = mirrorRows ? this.height - 1 - i : i;
+          int dst = offset + (i - startRow) * this.width;
+          for (int j = j0; j < jEnd; j++) {
+            int storedRow = mirrorColumns ? this.width - 1 - j : j;
+            dest[dst + j] = this.raster[storedRow * this.height + storedCol];
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies the alpha of the given rows of this image, as they are read in the given orientation,
+   * out of the stored alpha plane.
+   *
+   * @param pending  the orientation to read the stored alpha plane in
+   * @param startRow the first row to copy
+   * @param numRows  the number of rows to copy
+   * @param dest     the array to copy the alpha values into
+   * @param offset   the index in the array of the first pixel of the first row
+   */
+  private void readOrientedAlpha(Orientation pending, int startRow, int numRows, byte[] dest,
+      int offset) {
+    for (int i = startRow; i < startRow + numRows; i++) {
+      int storedRow = pending.mirrorsRows() ? this.height - 1 - i : i;
+      int dst = offset + (i - startRow) * this.width;
+      for (int j = 0; j < this.width; j++) {
+        int storedCol = pending.mirrorsColumns() ? this.width - 1 - j : j;
+        dest[dst + j] = pending.isTransposed() ? this.alpha[storedCol * this.height + storedRow]
+            : this.alpha[storedRow * this.width + storedCol];
+      }
+    }
+  }
+
+  /**
+   * Reverses every row of the raster in place.
+   */
+  private void mirrorColumnsInPlace() {
+    for (int row = 0; row < this.height; row++) { // Each row is reversed in place
+      int start = row * this.width; // Index of the first column of this row
+      int end = start + this.width - 1; // Index of the last column of this row
+      while (start < end) { // Only walk half of the row, swapping with the 'opposite position'
+        int temp = this.raster[end];
+        this.raster[end--] = this.raster[start];
+        this.raster[start++] = temp;
+      }
+    }
+  }
+
+  /**
+   * Reverses the order of the rows of the raster in place.
+   */
+  private void mirrorRowsInPlace() {
+    int[] temp = new int[this.width]; // Holds one row while it is swapped with the 'other side'
+    for (int row = 0; row < this.height / 2; row++) { // Only do half the image!!!
+      int top = row * this.width;
+      int bottom = (this.height - row - 1) * this.width;
+      System.arraycopy(this.raster, bottom, temp, 0, this.width);
+      System.arraycopy(this.raster, top, this.raster, bottom, this.width);
+      System.arraycopy(temp, 0, this.raster, top, this.width);
+    }
+  }
+
+  @Override
+  public int getRGB(int row, int col) throws IllegalArgumentException {
+    if (row < 0 || row >= this.height || col < 0 || col >= this.width) {
+      throw new IllegalArgumentException("Position is outside of the image.");
+    }
+    this.materialise();
+    return this.raster[row * this.width + col];
+  }
+
+  @Override
+  public void getRows(int startRow, int numRows, int[] dest, int offset)
+      throws IllegalArgumentException {
+    if (dest == null) {
+      throw new IllegalArgumentException("Destination cannot be null.");
+    }
+    if (startRow < 0 || numRows < 0 || startRow + numRows > this.height || offset < 0
+        || (long) offset + (long) numRows * this.width > dest.length) {
+      throw new IllegalArgumentException("Rows are outside of the image or destination.");
+    }
+    if (this.orientation == Orientation.IDENTITY) {
+      System.arraycopy(this.raster, startRow * this.width, dest, offset, numRows * this.width);
+      return;
+    }
+    // rows are read through the pending orientation without applying it, so an image that is
+    // only read row by row (by a ColorTransformEngine, for example) is never copied twice
+    synchronized (this) {
+      this.readOriented(this.orientation, startRow, numRows, dest, offset);
+    }
+  }
+
+  @Override
+  public boolean hasAlpha() {
+    return this.alpha != null;
+  }
+
+  @Override
+  public int getAlpha(int row, int col) throws IllegalArgumentException {
+    if (row < 0 || row >= this.height || col < 0 || col >= this.width) {
+      throw new IllegalArgumentException("Position is outside of the image.");
+    }
+    if (this.alpha == null) {
+      return 255;
+    }
+    this.materialise();
+    return this.alpha[row * this.width + col] & 0xFF;
+  }
+
+  @Override
+  public void getAlphaRows(int startRow, int numRows, byte[] dest, int offset)
+      throws IllegalArgumentException {
+    if (dest == null) {
+      throw new IllegalArgumentException("Destination cannot be null.");
+    }
+    if (startRow < 0 || numRows < 0 || startRow + numRows > this.height || offset < 0
+        || (long) offset + (long) numRows * this.width > dest.length) {
+      throw new IllegalArgumentException("Rows are outside of the image or destination.");
+    }
+    if (this.alpha == null) {
+      Arrays.fill(dest, offset, offset + numRows * this.width, (byte) 255);
+    } else if (this.orientation == Orientation.IDENTITY) {
+      System.arraycopy(this.alpha, startRow * this.width, dest, offset, numRows * this.width);
+    } else {
+      synchronized (this) {
+        this.readOrientedAlpha(this.orientation, startRow, numRows, dest, offset);
+      }
+    }
+  }
+
+  /**
+   * Converts this image into a {@link BufferedImage} of type {@link BufferedImage#TYPE_INT_RGB},
+   * or of type {@link BufferedImage#TYPE_INT_ARGB} if this image has an alpha channel. The packed
+   * colors of this image are copied straight into the data buffer of the new image.
+   *
+   * @return a new buffered image with the same pixels as this image
+   */
   public BufferedImage getBufferedImage() {
-    int width = this.getWidth();
-    int height = this.getHeight();
-    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-    for (int y = 0; y < this.getImage().length; y += 1) {
-      for (int x = 0; x < this.getImage()[0].length; x += 1) {
-        IPixel pixel = this.getImage()[y][x];
-        Color color = new Color(pixel.getRed(), pixel.getGreen(), pixel.getBlue());
-        image.setRGB(x, y, color.getRGB());
+    this.materialise();
+    BufferedImage image = new BufferedImage(this.width, this.height,
+        this.alpha == null ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+    int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    System.arraycopy(this.raster, 0, data, 0, this.raster.length);
+    if (this.alpha != null) {
+      for (int i = 0; i < data.length; i++) {
+        data[i] |= (this.alpha[i] & 0xFF) << 24;
       }
     }
     return image;
   }
 
+  /**
+   * Constructs a {@code Image} object with the given name from the pixels of a given {@link
+   * BufferedImage}. The alpha channel of the buffered image is kept, unless every pixel of it is
+   * opaque.
+   *
+   * @param image    the buffered image to be imported
+   * @param filename the name of the image
+   * @return a new image with the same pixels as the buffered image
+   * @throws IllegalArgumentException if any argument is null
+   */
+  public static Image fromBufferedImage(BufferedImage image, String filename)
+      throws IllegalArgumentException {
+    if (image == null || filename == null) {
+      throw new IllegalArgumentException("Cannot have a null image or filename.");
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] packed = new int[width * height];
+
+    if (isPackedIntRaster(image)) {
+      // the data buffer already holds one (A)RGB int per pixel, row after row
+      int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+      System.arraycopy(data, 0, packed, 0, packed.length);
+    } else {
+      // let AWT convert any other color model to ARGB in one bulk call
+      image.getRGB(0, 0, width, height, packed, 0, width);
+    }
+    byte[] alpha = null;
+    if (image.getColorModel().hasAlpha()) {
+      alpha = new byte[packed.length];
+      boolean opaque = true;
+      for (int i = 0; i < packed.length; i++) {
+        alpha[i] = (byte) (packed[i] >>> 24);
+        opaque &= alpha[i] == (byte) 255;
+      }
+      if (opaque) {
+        alpha = null;
+      }
+    }
+    for (int i = 0; i < packed.length; i++) {
+      packed[i] &= PackedRGB.MASK;
+    }
+
+    return new Image(width, height, packed, alpha, filename);
+  }
+
+  /**
+   * Determines whether the data buffer of the given image stores exactly one {@code 0x(AA)RRGGBB}
+   * int per pixel with no padding or offsets, so it can be copied in bulk.
+   *
+   * @param image the given buffered image
+   * @return true if the data buffer of the image can be copied directly
+   */
+  private static boolean isPackedIntRaster(BufferedImage image) {
+    if (image.getType() != BufferedImage.TYPE_INT_RGB
+        && image.getType() != BufferedImage.TYPE_INT_ARGB) {
+      return false;
+    }
+    WritableRaster raster = image.getRaster();
+    return raster.getDataBuffer() instanceof DataBufferInt
+        && raster.getDataBuffer().getOffset() == 0
+        && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+        && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+        && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride()
+        == image.getWidth();
+  }
+
 
   @Override
   public void flipImageH() {
+    this.orientation = this.orientation.flipH();
+  }
 
-    for (int row = 0; row<this.image.length; row++){ // Each column is accessed through each row
-      for(int col = 0; col<this.image[0].length/2; col++){ // Access each column for half of the image
-        IPixel temp = this.image[row][(this.image[0].length) - col - 1]; // Holds the opposite value to swap
-        this.image[row][this.image[0].length - col - 1] = this.image[row][col]; // Puts current entry into 'opposite position'
-        this.image[row][col] = temp; // Sets the current entry to that of the 'opposite position'
-      }
-    }
+  @Override
+  public void flipImageV() {
+    this.orientation = this.orientation.flipV();
   }
 
+  @Override
+  public void rotateImageClockwise() {
+    this.orientation = this.orientation.rotateClockwise();
+    this.swapDimensions();
+  }
 
+  @Override
+  public void rotateImageCounterclockwise() {
+    this.orientation = this.orientation.rotateCounterclockwise();
+    this.swapDimensions();
+  }
 
+  /**
+   * Swaps the width and height of this image after it is rotated a quarter turn.
+   */
+  private void swapDimensions() {
+    int temp = this.width;
+    this.width = this.height;
+    this.height = temp;
+  }
 
   @Override
   public String getFilename() {
@@ -124,23 +599,18 @@ public class Image implements IImage {
   }
 
   @Override
-  public int getHeight() {
-    return this.image.length;
+  public String getFormat() {
+    return this.format;
   }
 
   @Override
-  public int getWidth() {
-    return this.image[0].length;
+  public int getHeight() {
+    return this.height;
   }
 
   @Override
-  public void flipImageV() {
-
-    for (int row = 0; row<this.image.length/2; row++){ // Working one row at a time and only do half the image!!!
-      IPixel[] temp = this.image[(this.image.length) - row - 1]; // Collect the temp row from the 'other side' of the array
-      this.image[this.image.length - row - 1] = this.image[row]; // Put the current row in the row on the 'other side' of the array
-      this.image[row] = temp; // Now put the row from the other side in the current row
-    }
+  public int getWidth() {
+    return this.width;
   }
 
   @Override
@@ -152,14 +622,19 @@ public class Image implements IImage {
       return false;
     }
     Image ppmImage = (Image) o;
-    return Arrays.deepEquals(image, ppmImage.image) && Objects
-        .equals(filename, ppmImage.filename);
+    this.materialise();
+    ppmImage.materialise();
+    return width == ppmImage.width && height == ppmImage.height
+        && Arrays.equals(raster, ppmImage.raster) && Arrays.equals(alpha, ppmImage.alpha)
+        && Objects.equals(filename, ppmImage.filename);
   }
 
   @Override
   public int hashCode() {
-    int result = Objects.hash(filename);
-    result = 31 * result + Arrays.deepHashCode(image);
+    this.materialise();
+    int result = Objects.hash(filename, width, height);
+    result = 31 * result + Arrays.hashCode(raster);
+    result = 31 * result + Arrays.hashCode(alpha);
     return result;
   }
 }
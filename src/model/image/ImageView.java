@@ -0,0 +1,70 @@
+package model.image;
+
+/**
+ * Represents a read-only view of an {@link IImage} which forwards every read to the image without
+ * exposing any of its mutators.
+ */
+class ImageView implements IImageView {
+
+  private final IImage image;
+
+  /**
+   * Constructs a {@code ImageView} object over the given image.
+   *
+   * @param image the image to be viewed
+   * @throws IllegalArgumentException if the given image is null
+   */
+  ImageView(IImage image) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image cannot be null.");
+    }
+    this.image = image;
+  }
+
+  @Override
+  public int getRGB(int row, int col) throws IllegalArgumentException {
+    return this.image.getRGB(row, col);
+  }
+
+  @Override
+  public void getRows(int startRow, int numRows, int[] dest, int offset)
+      throws IllegalArgumentException {
+    this.image.getRows(startRow, numRows, dest, offset);
+  }
+
+  @Override
+  public boolean hasAlpha() {
+    return this.image.hasAlpha();
+  }
+
+  @Override
+  public int getAlpha(int row, int col) throws IllegalArgumentException {
+    return this.image.getAlpha(row, col);
+  }
+
+  @Override
+  public void getAlphaRows(int startRow, int numRows, byte[] dest, int offset)
+      throws IllegalArgumentException {
+    this.image.getAlphaRows(startRow, numRows, dest, offset);
+  }
+
+  @Override
+  public String getFilename() {
+    return this.image.getFilename();
+  }
+
+  @Override
+  public String getFormat() {
+    return this.image.getFormat();
+  }
+
+  @Override
+  public int getHeight() {
+    return this.image.getHeight();
+  }
+
+  @Override
+  public int getWidth() {
+    return this.image.getWidth();
+  }
+}
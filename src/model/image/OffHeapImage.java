@@ -0,0 +1,425 @@
+package model.image;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Represents an image whose pixels are stored outside of the heap, in a direct buffer of packed
+ * {@code 0xRRGGBB} colors (and a direct buffer of alpha values, if the image has an alpha channel),
+ * so that large images do not add to the work of the garbage collector. Only the small buffer
+ * objects live in the heap.
+ *
+ * <p>The stored pixels are never written once the image is created, so copies of an image share
+ * its buffers. Like {@link Image}, flips and rotations only record a pending {@link Orientation},
+ * which every read goes through. Color transformations read and write the buffers directly, a
+ * block at a time, with {@link #mapTiles}.
+ *
+ * <p>An image is closed by its owner once it is no longer used, after which it cannot be read
+ * anymore. Closing an image only drops its references to the buffers: their off-heap memory is
+ * returned once the garbage collector finds that no image or copy refers to them anymore, so a
+ * read that races a close never sees freed memory.
+ */
+public final class OffHeapImage implements IMappableImage, AutoCloseable {
+
+  // the number of pixels transformed at a time by mapTiles
+  private static final int BLOCK_PIXELS = 1 << 16;
+  // the side of the square blocks a transposed image is read in, to stay within the cache
+  private static final int TRANSPOSE_BLOCK = 64;
+
+  // the stored colors, which are null once the image is closed
+  // INVARIANT: pixels.capacity() == width * height and every entry only uses the bits of 0xFFFFFF
+  private IntBuffer pixels;
+  // the stored alpha values, or null if the image is fully opaque
+  private ByteBuffer alpha;
+  // the flips and rotations of the stored pixels
+  private volatile Orientation orientation;
+  // INVARIANT: width and height are positive, and are those of the image after its orientation
+  private int width;
+  private int height;
+  private final String filename;
+  // the magic number of the file the image was loaded from, or null
+  private final String format;
+
+  /**
+   * Constructs a {@code OffHeapImage} object with the pixels, alpha channel, name and format of the
+   * given image, which are copied out of the heap.
+   *
+   * @param image the image to copy
+   * @throws IllegalArgumentException if the image is null or has too many pixels for a buffer
+   */
+  public OffHeapImage(IImageView image) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image cannot be null.");
+    }
+    long numPixels = (long) image.getWidth() * image.getHeight();
+    if (numPixels > Integer.MAX_VALUE / 4) {
+      throw new IllegalArgumentException("The image is too large to be stored in a buffer.");
+    }
+    this.width = image.getWidth();
+    this.height = image.getHeight();
+    this.filename = image.getFilename();
+    this.format = image.getFormat();
+    this.orientation = Orientation.IDENTITY;
+    this.pixels = allocate((int) numPixels);
+
+    int rowsPerBlock = Math.max(1, BLOCK_PIXELS / this.width);
+    int[] rows = new int[rowsPerBlock * this.width];
+    byte[] alphaRows = image.hasAlpha() ? new byte[rows.length] : null;
+    if (alphaRows != null) {
+      this.alpha = ByteBuffer.allocateDirect((int) numPixels);
+    }
+    for (int row = 0; row < this.height; row += rowsPerBlock) {
+      int numRows = Math.min(rowsPerBlock, this.height - row);
+      image.getRows(row, numRows, rows, 0);
+      this.pixels.put(row * this.width, rows, 0, numRows * this.width);
+      if (alphaRows != null) {
+        image.getAlphaRows(row, numRows, alphaRows, 0);
+        this.alpha.put(row * this.width, alphaRows, 0, numRows * this.width);
+      }
+    }
+  }
+
+  /**
+   * Constructs a {@code OffHeapImage} object with the orientation, size, alpha channel, name and
+   * format of the given image, whose colors are stored in the given buffer.
+   *
+   * @param other  the image to take the orientation, size, alpha channel, name and format of
+   * @param pixels the stored colors of the new image
+   */
+  private OffHeapImage(OffHeapImage other, IntBuffer pixels) {
+    this.pixels = pixels;
+    this.alpha = other.alpha;
+    this.orientation = other.orientation;
+    this.width = other.width;
+    this.height = other.height;
+    this.filename = other.filename;
+    this.format = other.format;
+  }
+
+  /**
+   * Allocates a direct buffer of the given number of packed colors, in the native byte order.
+   *
+   * @param numPixels the number of pixels of the buffer
+   * @return the new buffer, filled with black
+   */
+  private static IntBuffer allocate(int numPixels) {
+    return ByteBuffer.allocateDirect(numPixels * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+  }
+
+  /**
+   * Gets the stored colors of this image.
+   *
+   * @return the buffer of the stored colors
+   * @throws IllegalStateException if this image is closed
+   */
+  private IntBuffer pixels() throws IllegalStateException {
+    IntBuffer stored = this.pixels;
+    if (stored == null) {
+      throw new IllegalStateException("The image is closed.");
+    }
+    return stored;
+  }
+
+  /**
+   * Closes this image, which releases its reference to the off-heap memory of its pixels. Copies
+   * of this image can still be read. Closing an image twice has no effect.
+   */
+  @Override
+  public void close() {
+    this.pixels = null;
+    this.alpha = null;
+  }
+
+  /**
+   * Determines whether this image is closed.
+   *
+   * @return true if this image can no longer be read
+   */
+  public boolean isClosed() {
+    return this.pixels == null;
+  }
+
+  /**
+   * {@inheritDoc} The blocks are contiguous ranges of the stored colors, which are written to a new
+   * direct buffer. The blocks are split between as many tasks as the pool has workers, and every
+   * task copies its blocks through one array of its own rather than a new array per block.
+   */
+  @Override
+  public OffHeapImage mapTiles(ObjIntConsumer<int[]> operation)
+      throws IllegalArgumentException, IllegalStateException {
+    if (operation == null) {
+      throw new IllegalArgumentException("Operation cannot be null.");
+    }
+    IntBuffer source = this.pixels();
+    IntBuffer result = allocate(source.capacity());
+    int numBlocks = (source.capacity() + BLOCK_PIXELS - 1) / BLOCK_PIXELS;
+    ForkJoinPool pool =
+        ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+    int numTasks = Math.min(numBlocks, pool.getParallelism());
+    IntStream.range(0, numTasks).parallel().forEach(task -> {
+      int[] colors = new int[Math.min(BLOCK_PIXELS, source.capacity())];
+      // every task takes every numTasks-th block, so the tasks stay balanced
+      for (int block = task; block < numBlocks; block += numTasks) {
+        int from = block * BLOCK_PIXELS;
+        int count = Math.min(BLOCK_PIXELS, source.capacity() - from);
+        source.get(from, colors, 0, count);
+        operation.accept(colors, count);
+        result.put(from, colors, 0, count);
+      }
+    });
+    return new OffHeapImage(this, result);
+  }
+
+  @Override
+  public IPixel[][] getImage() throws IllegalStateException {
+    IPixel[][] imageGrid = new IPixel[this.height][this.width];
+    int[] row = new int[this.width];
+    for (int i = 0; i < this.height; i++) {
+      this.getRows(i, 1, row, 0);
+      for (int j = 0; j < this.width; j++) {
+        imageGrid[i][j] = new Pixel(i, j, PackedRGB.red(row[j]), PackedRGB.green(row[j]),
+            PackedRGB.blue(row[j]));
+      }
+    }
+    return imageGrid;
+  }
+
+  @Override
+  public IImageView view() {
+    return new ImageView(this);
+  }
+
+  @Override
+  public IImage copy() throws IllegalStateException {
+    return new OffHeapImage(this, this.pixels());
+  }
+
+  @Override
+  public IImage withColors(int[] raster) throws IllegalArgumentException, IllegalStateException {
+    if (raster == null || (long) this.width * this.height != raster.length) {
+      throw new IllegalArgumentException("The raster does not match the dimensions.");
+    }
+    for (int rgb : raster) {
+      if ((rgb & ~PackedRGB.MASK) != 0) {
+        throw new IllegalArgumentException("The raster contains an invalid color.");
+      }
+    }
+    this.pixels();
+    IntBuffer colors = allocate(raster.length);
+    colors.put(0, raster);
+    OffHeapImage result = new OffHeapImage(this, colors);
+    // the raster is in the orientation this image is read in, so the alpha must be as well
+    result.orientation = Orientation.IDENTITY;
+    if (this.alpha != null && this.orientation != Orientation.IDENTITY) {
+      byte[] oriented = new byte[raster.length];
+      this.getAlphaRows(0, this.height, oriented, 0);
+      result.alpha = ByteBuffer.allocateDirect(raster.length).put(0, oriented);
+    }
+    return result;
+  }
+
+  /**
+   * Gets the index in the stored buffers of the pixel at the given position of this image.
+   *
+   * @param pending the orientation to read the stored buffers in
+   * @param row     the row of the pixel
+   * @param col     the column of the pixel
+   * @return the index of the stored pixel
+   */
+  private int storedIndex(Orientation pending, int row, int col) {
+    int mirroredRow = pending.mirrorsRows() ? this.height - 1 - row : row;
+    int mirroredCol = pending.mirrorsColumns() ? this.width - 1 - col : col;
+    // a transposed image stores this.width rows of this.height pixels
+    return pending.isTransposed() ? mirroredCol * this.height + mirroredRow
+        : mirroredRow * this.width + mirroredCol;
+  }
+
+  @Override
+  public int getRGB(int row, int col) throws IllegalArgumentException, IllegalStateException {
+    if (row < 0 || row >= this.height || col < 0 || col >= this.width) {
+      throw new IllegalArgumentException("Position is outside of the image.");
+    }
+    return this.pixels().get(this.storedIndex(this.orientation, row, col));
+  }
+
+  @Override
+  public void getRows(int startRow, int numRows, int[] dest, int offset)
+      throws IllegalArgumentException, IllegalStateException {
+    if (dest == null) {
+      throw new IllegalArgumentException("Destination cannot be null.");
+    }
+    if (startRow < 0 || numRows < 0 || startRow + numRows > this.height || offset < 0
+        || (long) offset + (long) numRows * this.width > dest.length) {
+      throw new IllegalArgumentException("Rows are outside of the image or destination.");
+    }
+    IntBuffer stored = this.pixels();
+    Orientation pending = this.orientation;
+    if (pending == Orientation.IDENTITY) {
+      stored.get(startRow * this.width, dest, offset, numRows * this.width);
+      return;
+    }
+    if (!pending.isTransposed()) {
+      for (int i = startRow; i < startRow + numRows; i++) {
+        int dst = offset + (i - startRow) * this.width;
+        if (pending.mirrorsColumns()) {
+          for (int j = 0; j < this.width; j++) {
+            dest[dst + j] = stored.get(this.storedIndex(pending, i, j));
+          }
+        } else {
+          int src = (pending.mirrorsRows() ? this.height - 1 - i : i) * this.width;
+          stored.get(src, dest, dst, this.width);
+        }
+      }
+      return;
+    }
+
+    // the strided reads of a transposed image are done in square blocks to stay within the cache
+    int endRow = startRow + numRows;
+    for (int i0 = startRow; i0 < endRow; i0 += TRANSPOSE_BLOCK) {
+      for (int j0 = 0; j0 < this.width; j0 += TRANSPOSE_BLOCK) {
+        int iEnd = Math.min(endRow, i0 + TRANSPOSE_BLOCK);
+        int jEnd = Math.min(this.width, j0 + TRANSPOSE_BLOCK);
+        for (int i = i0; i < iEnd; i++) {
+          int dst = offset + (i - startRow) * this.width;
+          for (int j = j0; j < jEnd; j++) {
+            dest[dst + j] = stored.get(this.storedIndex(pending, i, j));
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean hasAlpha() {
+    return this.alpha != null;
+  }
+
+  @Override
+  public int getAlpha(int row, int col) throws IllegalArgumentException, IllegalStateException {
+    if (row < 0 || row >= this.height || col < 0 || col >= this.width) {
+      throw new IllegalArgumentException("Position is outside of the image.");
+    }
+    this.pixels();
+    if (this.alpha == null) {
+      return 255;
+    }
+    return this.alpha.get(this.storedIndex(this.orientation, row, col)) & 0xFF;
+  }
+
+  @Override
+  public void getAlphaRows(int startRow, int numRows, byte[] dest, int offset)
+      throws IllegalArgumentException, IllegalStateException {
+    if (dest == null) {
+      throw new IllegalArgumentException("Destination cannot be null.");
+    }
+    if (startRow < 0 || numRows < 0 || startRow + numRows > this.height || offset < 0
+        || (long) offset + (long) numRows * this.width > dest.length) {
+      throw new IllegalArgumentException("Rows are outside of the image or destination.");
+    }
+    this.pixels();
+    if (this.alpha == null) {
+      Arrays.fill(dest, offset, offset + numRows * this.width, (byte) 255);
+      return;
+    }
+    Orientation pending = this.orientation;
+    for (int i = startRow; i < startRow + numRows; i++) {
+      int dst = offset + (i - startRow) * this.width;
+      for (int j = 0; j < this.width; j++) {
+        dest[dst + j] = this.alpha.get(this.storedIndex(pending, i, j));
+      }
+    }
+  }
+
+  @Override
+  public void flipImageH() {
+    this.orientation = this.orientation.flipH();
+  }
+
+  @Override
+  public void flipImageV() {
+    this.orientation = this.orientation.flipV();
+  }
+
+  @Override
+  public void rotateImageClockwise() {
+    this.orientation = this.orientation.rotateClockwise();
+    this.swapDimensions();
+  }
+
+  @Override
+  public void rotateImageCounterclockwise() {
+    this.orientation = this.orientation.rotateCounterclockwise();
+    this.swapDimensions();
+  }
+
+  /**
+   * Swaps the width and height of this image after it is rotated a quarter turn.
+   */
+  private void swapDimensions() {
+    int temp = this.width;
+    this.width = this.height;
+    this.height = temp;
+  }
+
+  @Override
+  public String getFilename() {
+    return this.filename;
+  }
+
+  @Override
+  public String getFormat() {
+    return this.format;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    OffHeapImage other = (OffHeapImage) o;
+    if (this.width != other.width || this.height != other.height
+        || this.hasAlpha() != other.hasAlpha() || !Objects.equals(this.filename, other.filename)) {
+      return false;
+    }
+    int[] row = new int[this.width];
+    int[] otherRow = new int[this.width];
+    byte[] alphaRow = new byte[this.width];
+    byte[] otherAlphaRow = new byte[this.width];
+    for (int i = 0; i < this.height; i++) {
+      this.getRows(i, 1, row, 0);
+      other.getRows(i, 1, otherRow, 0);
+      this.getAlphaRows(i, 1, alphaRow, 0);
+      other.getAlphaRows(i, 1, otherAlphaRow, 0);
+      if (!Arrays.equals(row, otherRow) || !Arrays.equals(alphaRow, otherAlphaRow)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    // the pixels are left out, so that hashing never reads the whole image
+    return Objects.hash(this.filename, this.width, this.height);
+  }
+}
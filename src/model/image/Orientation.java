@@ -0,0 +1,128 @@
+package model.image;
+
+/**
+ * Represents one of the eight orientations of an image that can be reached by flipping it and
+ * rotating it by quarter turns (the dihedral group D4). An orientation maps a position of the
+ * oriented image to a position of the stored pixels: the row and the column are first mirrored,
+ * if needed, and the two are then swapped if the orientation is transposed.
+ *
+ * <p>Orientations are immutable, and composing one with a flip or a rotation takes constant time,
+ * which lets an image record any number of flips and rotations without touching its pixels.
+ */
+public final class Orientation {
+
+  /**
+   * The orientation of an image that has not been flipped or rotated.
+   */
+  public static final Orientation IDENTITY = new Orientation(false, false, false);
+
+  private static final Orientation[] ALL = new Orientation[8];
+
+  static {
+    for (int i = 0; i < ALL.length; i++) {
+      ALL[i] = i == 0 ? IDENTITY
+          : new Orientation((i & 4) != 0, (i & 2) != 0, (i & 1) != 0);
+    }
+  }
+
+  private final boolean transposed;
+  private final boolean mirrorRows;
+  private final boolean mirrorColumns;
+
+  /**
+   * Constructs a {@code Orientation} object.
+   *
+   * @param transposed    true if the row and column are swapped after mirroring
+   * @param mirrorRows    true if the row is mirrored (a vertical flip)
+   * @param mirrorColumns true if the column is mirrored (a horizontal flip)
+   */
+  private Orientation(boolean transposed, boolean mirrorRows, boolean mirrorColumns) {
+    this.transposed = transposed;
+    this.mirrorRows = mirrorRows;
+    this.mirrorColumns = mirrorColumns;
+  }
+
+  /**
+   * Gets the shared instance of the orientation with the given properties.
+   *
+   * @param transposed    true if the row and column are swapped after mirroring
+   * @param mirrorRows    true if the row is mirrored
+   * @param mirrorColumns true if the column is mirrored
+   * @return the orientation with the given properties
+   */
+  private static Orientation of(boolean transposed, boolean mirrorRows, boolean mirrorColumns) {
+    return ALL[(transposed ? 4 : 0) | (mirrorRows ? 2 : 0) | (mirrorColumns ? 1 : 0)];
+  }
+
+  /**
+   * Gets the orientation of an image in this orientation after it is flipped horizontally.
+   *
+   * @return the composed orientation
+   */
+  public Orientation flipH() {
+    return of(this.transposed, this.mirrorRows, !this.mirrorColumns);
+  }
+
+  /**
+   * Gets the orientation of an image in this orientation after it is flipped vertically.
+   *
+   * @return the composed orientation
+   */
+  public Orientation flipV() {
+    return of(this.transposed, !this.mirrorRows, this.mirrorColumns);
+  }
+
+  /**
+   * Gets the orientation of an image in this orientation after it is rotated a quarter turn
+   * clockwise.
+   *
+   * @return the composed orientation
+   */
+  public Orientation rotateClockwise() {
+    return of(!this.transposed, this.mirrorColumns, !this.mirrorRows);
+  }
+
+  /**
+   * Gets the orientation of an image in this orientation after it is rotated a quarter turn
+   * counterclockwise.
+   *
+   * @return the composed orientation
+   */
+  public Orientation rotateCounterclockwise() {
+    return of(!this.transposed, !this.mirrorColumns, this.mirrorRows);
+  }
+
+  /**
+   * Determines whether this orientation swaps the rows and columns of the stored pixels, in which
+   * case the width and height of the oriented image are the height and width of the stored pixels.
+   *
+   * @return true if this orientation is transposed
+   */
+  public boolean isTransposed() {
+    return this.transposed;
+  }
+
+  /**
+   * Determines whether this orientation mirrors the row of a position.
+   *
+   * @return true if the row of a position is mirrored
+   */
+  public boolean mirrorsRows() {
+    return this.mirrorRows;
+  }
+
+  /**
+   * Determines whether this orientation mirrors the column of a position.
+   *
+   * @return true if the column of a position is mirrored
+   */
+  public boolean mirrorsColumns() {
+    return this.mirrorColumns;
+  }
+
+  @Override
+  public String toString() {
+    return "Orientation{transposed=" + this.transposed + ", mirrorRows=" + this.mirrorRows
+        + ", mirrorColumns=" + this.mirrorColumns + "}";
+  }
+}
@@ -0,0 +1,73 @@
+package model.image;
+
+/**
+ * This class contains static helpers for working with pixels that are packed into a single
+ * {@code int} as {@code 0xRRGGBB}, which is how the rasters of images are stored in memory.
+ */
+public final class PackedRGB {
+
+  /**
+   * The mask of the bits that are allowed to be set in a packed pixel.
+   */
+  public static final int MASK = 0xFFFFFF;
+
+  private PackedRGB() {
+    // static helpers only
+  }
+
+  /**
+   * Packs the given red, green, and blue values into a single integer.
+   *
+   * @param red   the red value, between 0 and 255 inclusive
+   * @param green the green value, between 0 and 255 inclusive
+   * @param blue  the blue value, between 0 and 255 inclusive
+   * @return the packed pixel
+   */
+  public static int pack(int red, int green, int blue) {
+    return (red << 16) | (green << 8) | blue;
+  }
+
+  /**
+   * Packs the red, green, and blue values of the given pixel into a single integer.
+   *
+   * @param pixel the given pixel
+   * @return the packed pixel
+   * @throws IllegalArgumentException if the given pixel is null
+   */
+  public static int pack(IPixel pixel) throws IllegalArgumentException {
+    if (pixel == null) {
+      throw new IllegalArgumentException("Cannot have a null pixel.");
+    }
+    return pack(pixel.getRed(), pixel.getGreen(), pixel.getBlue());
+  }
+
+  /**
+   * Gets the red value of a packed pixel.
+   *
+   * @param rgb the packed pixel
+   * @return the red value of the packed pixel
+   */
+  public static int red(int rgb) {
+    return (rgb >> 16) & 0xFF;
+  }
+
+  /**
+   * Gets the green value of a packed pixel.
+   *
+   * @param rgb the packed pixel
+   * @return the green value of the packed pixel
+   */
+  public static int green(int rgb) {
+    return (rgb >> 8) & 0xFF;
+  }
+
+  /**
+   * Gets the blue value of a packed pixel.
+   *
+   * @param rgb the packed pixel
+   * @return the blue value of the packed pixel
+   */
+  public static int blue(int rgb) {
+    return rgb & 0xFF;
+  }
+}
@@ -0,0 +1,432 @@
+package model.image;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Represents a cache of the tiles of {@link TiledImage}s in memory, which is shared by every image
+ * created with it. The least recently used tiles are evicted once the tiles in the cache take more
+ * bytes than the budget of the cache, and tiles that were written while in the cache are written
+ * back to the scratch file of their image when they are evicted. The most recently used tile is
+ * never evicted, so a cache makes progress whatever its budget.
+ *
+ * <p>Tiles are read from and written back to their scratch files without holding the cache, so a
+ * thread waiting on the disk only holds up the threads that need the same tile. The cache does not
+ * keep the images of its tiles reachable: the tiles of an image that is no longer used are dropped
+ * rather than written back, and its scratch file is deleted. The tiles of an image that is known
+ * to be unused can also be dropped straight away (see {@link #drop}).
+ *
+ * <p>Streaming an image row by row touches a whole row of tiles at a time, so the budget should
+ * hold at least two rows of tiles of the widest image for every thread reading images at once.
+ */
+public final class TileCache {
+
+  // the number of bytes of a tile in the cache
+  private static final long TILE_BYTES = 4L * TileStore.TILE_PIXELS;
+
+  private static final TileCache DEFAULT = new TileCache(Runtime.getRuntime().maxMemory() / 4);
+
+  private final long budget;
+  // the tiles in the cache, from the least to the most recently used
+  private final LinkedHashMap<Key, Tile> tiles;
+  // the stores with tiles in the cache or on their way back, by their identifiers
+  private final Map<Long, StoreReference> stores;
+  // the stores that are no longer reachable, whose tiles are dropped
+  private final ReferenceQueue<TileStore> deadStores;
+  // the evicted tiles that are being written back to their stores
+  private final Map<Key, WriteBack> writingBack;
+  private long bytes;
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructs an empty {@code TileCache} object with the given memory budget.
+   *
+   * @param budget the maximum number of bytes of tiles to keep in memory
+   * @throws IllegalArgumentException if the budget is negative
+   */
+  public TileCache(long budget) throws IllegalArgumentException {
+    if (budget < 0) {
+      throw new IllegalArgumentException("Budget cannot be negative!");
+    }
+    this.budget = budget;
+    this.tiles = new LinkedHashMap<>(16, 0.75f, true);
+    this.stores = new HashMap<>();
+    this.deadStores = new ReferenceQueue<>();
+    this.writingBack = new HashMap<>();
+  }
+
+  /**
+   * Gets the default cache, whose budget is a quarter of the maximum heap size.
+   *
+   * @return the default cache
+   */
+  public static TileCache getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Gets the maximum number of bytes of tiles this cache keeps in memory.
+   *
+   * @return the budget of this cache
+   */
+  public long getBudget() {
+    return this.budget;
+  }
+
+  /**
+   * Gets the number of bytes of the tiles in this cache.
+   *
+   * @return the number of bytes of the cached tiles
+   */
+  public synchronized long getBytes() {
+    return this.bytes;
+  }
+
+  /**
+   * Gets the number of reads of a tile that found it in this cache.
+   *
+   * @return the number of cache hits
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Gets the number of reads of a tile that had to read it from its scratch file.
+   *
+   * @return the number of cache misses
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Drops every tile of the given image from this cache without writing it back, as is done once
+   * the image and its copies are no longer used, and stops the tiles of the image on their way back
+   * to its scratch file. The image and its copies must not be used afterwards.
+   *
+   * @param image the image whose tiles are dropped
+   * @throws IllegalArgumentException if the image is null
+   */
+  public void drop(TiledImage image) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image cannot be null!");
+    }
+    synchronized (this) {
+      this.dropStore(image.getStore().getId());
+    }
+  }
+
+  /**
+   * Gets the pixels of the given tile, reading them from the store if the tile is not cached. The
+   * returned array is the cached tile itself, so it must not be modified. The tile is read from
+   * the store without holding the cache, and other reads of the same tile wait for it.
+   *
+   * @param store the store of the tile
+   * @param tile  the index of the tile in the store
+   * @return the {@link TileStore#TILE_PIXELS} pixels of the tile
+   * @throws IllegalStateException if the tile cannot be read from the store
+   */
+  int[] read(TileStore store, int tile) throws IllegalStateException {
+    Key key = new Key(store.getId(), tile);
+    Tile cached;
+    boolean load = false;
+    List<WriteBack> evicted = null;
+    synchronized (this) {
+      this.purge();
+      cached = this.tiles.get(key);
+      if (cached != null) {
+        this.hits++;
+      } else {
+        WriteBack pending = this.writingBack.get(key);
+        if (pending != null) {
+          // the tile has not reached the store yet, so it is taken back as it is
+          this.hits++;
+          cached = new Tile(CompletableFuture.completedFuture(pending.pixels), true);
+        } else {
+          this.misses++;
+          cached = new Tile(new CompletableFuture<>(), false);
+          load = true;
+        }
+        evicted = this.insert(store, key, cached);
+      }
+    }
+    this.writeBack(evicted);
+    if (!load) {
+      return await(cached);
+    }
+
+    int[] pixels = new int[TileStore.TILE_PIXELS];
+    try {
+      store.readTile(tile, pixels);
+    } catch (RuntimeException e) {
+      cached.pixels.completeExceptionally(e);
+      synchronized (this) {
+        if (this.tiles.remove(key, cached)) {
+          this.bytes -= TILE_BYTES;
+        }
+      }
+      throw e;
+    }
+    cached.pixels.complete(pixels);
+    return pixels;
+  }
+
+  /**
+   * Replaces the pixels of the given tile, which are written back to the store when the tile is
+   * evicted. The cache takes ownership of the given array.
+   *
+   * @param store  the store of the tile
+   * @param tile   the index of the tile in the store
+   * @param pixels the {@link TileStore#TILE_PIXELS} new pixels of the tile
+   * @throws IllegalStateException if a tile evicted to make room cannot be written back
+   */
+  void write(TileStore store, int tile, int[] pixels) throws IllegalStateException {
+    List<WriteBack> evicted;
+    synchronized (this) {
+      this.purge();
+      evicted = this.insert(store, new Key(store.getId(), tile),
+          new Tile(CompletableFuture.completedFuture(pixels), true));
+    }
+    this.writeBack(evicted);
+  }
+
+  /**
+   * Inserts a tile as the most recently used one, and evicts the least recently used tiles until
+   * the cache is within its budget. The evicted tiles that were written are handed to a write back,
+   * or added to the one already under way for the same tile.
+   *
+   * @param store the store of the tile
+   * @param key   the key of the tile
+   * @param tile  the tile to insert
+   * @return the write backs started for the evicted tiles, which the caller runs once it no longer
+   *         holds the cache
+   */
+  private List<WriteBack> insert(TileStore store, Key key, Tile tile) {
+    this.stores.computeIfAbsent(key.store, id -> new StoreReference(store, this.deadStores));
+    if (this.tiles.put(key, tile) == null) {
+      this.bytes += TILE_BYTES;
+    }
+    List<WriteBack> started = new ArrayList<>();
+    Iterator<Map.Entry<Key, Tile>> eldest = this.tiles.entrySet().iterator();
+    while (this.bytes > this.budget && this.tiles.size() > 1) {
+      Map.Entry<Key, Tile> entry = eldest.next();
+      eldest.remove();
+      this.bytes -= TILE_BYTES;
+      if (entry.getValue().dirty) {
+        // a written tile is always loaded
+        int[] pixels = entry.getValue().pixels.join();
+        WriteBack pending = this.writingBack.get(entry.getKey());
+        if (pending != null) {
+          // the thread writing back the tile writes these pixels once it is done
+          pending.pixels = pixels;
+        } else {
+          WriteBack writeBack =
+              new WriteBack(entry.getKey(), this.stores.get(entry.getKey().store), pixels);
+          this.writingBack.put(entry.getKey(), writeBack);
+          started.add(writeBack);
+        }
+      }
+    }
+    return started;
+  }
+
+  /**
+   * Writes the given evicted tiles back to their stores without holding the cache, along with any
+   * newer pixels of the same tiles evicted in the meantime. The tiles of a store that is no longer
+   * reachable are dropped, since they can never be read again.
+   *
+   * @param started the write backs to run, or null if there are none
+   * @throws IllegalStateException if a tile cannot be written back
+   */
+  private void writeBack(List<WriteBack> started) throws IllegalStateException {
+    if (started == null) {
+      return;
+    }
+    for (WriteBack writeBack : started) {
+      int[] pixels;
+      synchronized (this) {
+        pixels = writeBack.pixels;
+      }
+      try {
+        while (true) {
+          TileStore store = writeBack.store.get();
+          if (store != null) {
+            store.writeTile(writeBack.key.tile, pixels);
+          }
+          synchronized (this) {
+            if (writeBack.pixels == pixels) {
+              break;
+            }
+            pixels = writeBack.pixels;
+          }
+        }
+      } finally {
+        synchronized (this) {
+          this.writingBack.remove(writeBack.key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops every tile of the stores that are no longer reachable, without writing them back.
+   */
+  private void purge() {
+    Reference<? extends TileStore> dead;
+    while ((dead = this.deadStores.poll()) != null) {
+      this.dropStore(((StoreReference) dead).id);
+    }
+  }
+
+  /**
+   * Drops every tile of the store with the given identifier, without writing them back. The tiles
+   * of the store that are being written back are not written once the store is dropped.
+   *
+   * @param id the identifier of the store
+   */
+  private void dropStore(long id) {
+    StoreReference store = this.stores.remove(id);
+    if (store != null) {
+      store.clear();
+    }
+    Iterator<Key> keys = this.tiles.keySet().iterator();
+    while (keys.hasNext()) {
+      if (keys.next().store == id) {
+        keys.remove();
+        this.bytes -= TILE_BYTES;
+      }
+    }
+  }
+
+  /**
+   * Gets the pixels of a cached tile, waiting for them if the tile is being read from its store.
+   *
+   * @param tile the cached tile
+   * @return the pixels of the tile
+   * @throws IllegalStateException if the tile could not be read from its store
+   */
+  private static int[] await(Tile tile) throws IllegalStateException {
+    try {
+      return tile.pixels.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Could not read the tile.");
+    }
+  }
+
+  /**
+   * Represents the pixels of a cached tile, which may still be being read from the store, along
+   * with whether they still have to be written back to the store.
+   */
+  private static final class Tile {
+
+    private final CompletableFuture<int[]> pixels;
+    private final boolean dirty;
+
+    /**
+     * Constructs a {@code Tile} object.
+     *
+     * @param pixels the pixels of the tile, once they are read
+     * @param dirty  true if the pixels differ from the ones in the store
+     */
+    Tile(CompletableFuture<int[]> pixels, boolean dirty) {
+      this.pixels = pixels;
+      this.dirty = dirty;
+    }
+  }
+
+  /**
+   * Represents an evicted tile on its way back to its store, which holds the newest pixels of the
+   * tile evicted so far.
+   */
+  private static final class WriteBack {
+
+    private final Key key;
+    private final StoreReference store;
+    // guarded by the cache
+    private int[] pixels;
+
+    /**
+     * Constructs a {@code WriteBack} object.
+     *
+     * @param key    the key of the tile
+     * @param store  the store of the tile
+     * @param pixels the pixels to write back
+     */
+    WriteBack(Key key, StoreReference store, int[] pixels) {
+      this.key = key;
+      this.store = store;
+      this.pixels = pixels;
+    }
+  }
+
+  /**
+   * Represents a store with tiles in the cache, which does not keep the store reachable, so that
+   * its scratch file is deleted and its tiles are dropped once its images are no longer used.
+   */
+  private static final class StoreReference extends WeakReference<TileStore> {
+
+    private final long id;
+
+    /**
+     * Constructs a {@code StoreReference} object.
+     *
+     * @param store the store
+     * @param queue the queue to add the reference to once the store is no longer reachable
+     */
+    StoreReference(TileStore store, ReferenceQueue<TileStore> queue) {
+      super(store, queue);
+      this.id = store.getId();
+    }
+  }
+
+  /**
+   * Represents the key of a cached tile, which is the identifier of its store and its index.
+   */
+  private static final class Key {
+
+    private final long store;
+    private final int tile;
+
+    /**
+     * Constructs a {@code Key} object.
+     *
+     * @param store the identifier of the store of the tile
+     * @param tile  the index of the tile in the store
+     */
+    Key(long store, int tile) {
+      this.store = store;
+      this.tile = tile;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return this.store == other.store && this.tile == other.tile;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Long.hashCode(this.store) + this.tile;
+    }
+  }
+}
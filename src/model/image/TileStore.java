@@ -0,0 +1,219 @@
+package model.image;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Represents the pixels of a {@link TiledImage}, stored in a memory-mapped scratch file as square
+ * tiles of {@link #TILE_SIZE} by {@link #TILE_SIZE} packed colors, row after row of tiles. The
+ * tiles on the right and bottom edges are padded to the full size. The file is mapped in segments
+ * of many tiles as they are first used, and it is deleted once the store is no longer reachable.
+ *
+ * <p>Tiles may be read and written from several threads at once, as long as no tile is written by
+ * two threads at once.
+ */
+final class TileStore {
+
+  /**
+   * The number of rows and columns of pixels in a tile.
+   */
+  static final int TILE_SIZE = 256;
+
+  /**
+   * The number of pixels in a tile.
+   */
+  static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+
+  // the number of tiles in a mapped segment of the file (1 GiB, well under the 2 GiB map limit)
+  private static final int TILES_PER_SEGMENT = 1 << 12;
+
+  private static final Cleaner CLEANER = Cleaner.create();
+  private static final AtomicLong NEXT_ID = new AtomicLong();
+
+  private final long id;
+  private final int width;
+  private final int height;
+  private final int tileColumns;
+  private final int tileRows;
+  private final ScratchFile file;
+  // the mapped segments of the file, which are published to every thread once mapped
+  private final AtomicReferenceArray<IntBuffer> segments;
+
+  /**
+   * Constructs a {@code TileStore} object for a raster of the given size, backed by a new scratch
+   * file in the default temporary directory. Every pixel is black until it is written.
+   *
+   * @param width  the number of columns of pixels to store
+   * @param height the number of rows of pixels to store
+   * @throws IllegalArgumentException if the dimensions are not positive or too large
+   * @throws IllegalStateException    if the scratch file cannot be created
+   */
+  TileStore(int width, int height) throws IllegalArgumentException, IllegalStateException {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("The dimensions must be positive.");
+    }
+    this.id = NEXT_ID.getAndIncrement();
+    this.width = width;
+    this.height = height;
+    this.tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+    this.tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+    long numTiles = (long) this.tileColumns * this.tileRows;
+    if (numTiles > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The dimensions are too large.");
+    }
+    this.segments = new AtomicReferenceArray<>(
+        (int) ((numTiles + TILES_PER_SEGMENT - 1) / TILES_PER_SEGMENT));
+    this.file = new ScratchFile();
+    CLEANER.register(this, this.file);
+  }
+
+  /**
+   * Gets the identifier of this store, which no other store of the process has.
+   *
+   * @return the identifier of this store
+   */
+  long getId() {
+    return this.id;
+  }
+
+  /**
+   * Gets the number of columns of pixels stored.
+   *
+   * @return the width of the stored raster
+   */
+  int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Gets the number of rows of pixels stored.
+   *
+   * @return the height of the stored raster
+   */
+  int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Gets the number of tiles in a row of tiles.
+   *
+   * @return the number of columns of tiles
+   */
+  int getTileColumns() {
+    return this.tileColumns;
+  }
+
+  /**
+   * Gets the number of tiles stored.
+   *
+   * @return the number of tiles
+   */
+  int getNumTiles() {
+    return this.tileColumns * this.tileRows;
+  }
+
+  /**
+   * Copies the pixels of the given tile out of the file.
+   *
+   * @param tile the index of the tile, row after row of tiles
+   * @param dest the array of {@link #TILE_PIXELS} pixels to copy the tile into
+   */
+  void readTile(int tile, int[] dest) {
+    this.segment(tile).get((tile % TILES_PER_SEGMENT) * TILE_PIXELS, dest, 0, TILE_PIXELS);
+  }
+
+  /**
+   * Copies the pixels of the given tile into the file.
+   *
+   * @param tile   the index of the tile, row after row of tiles
+   * @param source the array of {@link #TILE_PIXELS} pixels of the tile
+   */
+  void writeTile(int tile, int[] source) {
+    this.segment(tile).put((tile % TILES_PER_SEGMENT) * TILE_PIXELS, source, 0, TILE_PIXELS);
+  }
+
+  /**
+   * Gets the mapped segment of the file that holds the given tile, mapping it if needed.
+   *
+   * @param tile the index of the tile
+   * @return the mapped segment, which is only accessed at absolute positions
+   * @throws IllegalStateException if the segment cannot be mapped
+   */
+  private IntBuffer segment(int tile) throws IllegalStateException {
+    int index = tile / TILES_PER_SEGMENT;
+    IntBuffer segment = this.segments.get(index);
+    if (segment == null) {
+      synchronized (this) {
+        segment = this.segments.get(index);
+        if (segment == null) {
+          long first = (long) index * TILES_PER_SEGMENT;
+          long tiles = Math.min(TILES_PER_SEGMENT, this.getNumTiles() - first);
+          segment = this.file.map(first * TILE_PIXELS * 4, tiles * TILE_PIXELS * 4);
+          this.segments.set(index, segment);
+        }
+      }
+    }
+    return segment;
+  }
+
+  /**
+   * Represents the scratch file of a store, which is closed and deleted by the cleaner once the
+   * store is no longer reachable. It must not refer to the store itself.
+   */
+  private static final class ScratchFile implements Runnable {
+
+    private final Path path;
+    private final FileChannel channel;
+
+    /**
+     * Constructs a {@code ScratchFile} object by creating a new empty file.
+     *
+     * @throws IllegalStateException if the file cannot be created
+     */
+    ScratchFile() throws IllegalStateException {
+      try {
+        this.path = Files.createTempFile("ime-tiles", ".bin");
+        this.channel = FileChannel.open(this.path, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not create a scratch file for the tiles.");
+      }
+    }
+
+    /**
+     * Maps the given region of the file, which grows the file if needed.
+     *
+     * @param position the position of the region in bytes
+     * @param size     the size of the region in bytes
+     * @return the mapped region, in the native byte order
+     * @throws IllegalStateException if the region cannot be mapped
+     */
+    IntBuffer map(long position, long size) throws IllegalStateException {
+      try {
+        return this.channel.map(MapMode.READ_WRITE, position, size)
+            .order(ByteOrder.nativeOrder()).asIntBuffer();
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not map the scratch file of the tiles.");
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        this.channel.close();
+        Files.deleteIfExists(this.path);
+      } catch (IOException e) {
+        // the file is deleted on close, so there is nothing left to clean up
+      }
+    }
+  }
+}
@@ -0,0 +1,408 @@
+package model.image;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Represents an image too large to be held in memory, whose pixels are stored out of core in the
+ * memory-mapped scratch file of a {@link TileStore} as square tiles of packed {@code 0xRRGGBB}
+ * colors. Only the tiles in use are kept in memory, in a {@link TileCache} with a fixed memory
+ * budget, so images of several gigapixels can be processed with a small heap.
+ *
+ * <p>Like {@link Image}, flips and rotations only record a pending {@link Orientation}, which rows
+ * are always read through, so they never touch the tiles. The pixels of an image are set once,
+ * while it is new, and copies of an image share its tiles. Color transformations are streamed tile
+ * by tile into a new image with {@link #mapTiles}, and exporters stream the rows of an image out of
+ * the tiles with {@link #getRows}. Tiled images are always fully opaque.
+ */
+public final class TiledImage implements IMappableImage {
+
+  private static final int TILE_SIZE = TileStore.TILE_SIZE;
+
+  private final TileStore store;
+  private final TileCache cache;
+  // true once the tiles may be shared with a copy of this image, so they cannot be set anymore
+  private boolean shared;
+  // the flips and rotations of the stored tiles
+  private volatile Orientation orientation;
+  // INVARIANT: width and height are those of the image after its orientation
+  private int width;
+  private int height;
+  private final String filename;
+  // the magic number of the file the image was loaded from, or null
+  private final String format;
+
+  /**
+   * Constructs a black {@code TiledImage} object of the given size, whose tiles are cached in the
+   * given cache. Its pixels are then set with {@link #setRows}.
+   *
+   * @param width    the width of the image
+   * @param height   the height of the image
+   * @param filename the name of the image
+   * @param cache    the cache to keep the tiles of the image in
+   * @throws IllegalArgumentException if the filename or cache is null, or if the dimensions are not
+   *                                  positive or too large
+   * @throws IllegalStateException    if the scratch file of the image cannot be created
+   */
+  public TiledImage(int width, int height, String filename, TileCache cache)
+      throws IllegalArgumentException, IllegalStateException {
+    this(width, height, filename, null, cache);
+  }
+
+  /**
+   * Constructs a black {@code TiledImage} object of the given size and format, whose tiles are
+   * cached in the given cache. Its pixels are then set with {@link #setRows}.
+   *
+   * @param width    the width of the image
+   * @param height   the height of the image
+   * @param filename the name of the image
+   * @param format   the magic number of the file the image is loaded from, or null if none
+   * @param cache    the cache to keep the tiles of the image in
+   * @throws IllegalArgumentException if the filename or cache is null, or if the dimensions are not
+   *                                  positive or too large
+   * @throws IllegalStateException    if the scratch file of the image cannot be created
+   */
+  public TiledImage(int width, int height, String filename, String format, TileCache cache)
+      throws IllegalArgumentException, IllegalStateException {
+    if (filename == null || cache == null) {
+      throw new IllegalArgumentException("Cannot have a null filename or cache.");
+    }
+    this.store = new TileStore(width, height);
+    this.cache = cache;
+    this.orientation = Orientation.IDENTITY;
+    this.width = width;
+    this.height = height;
+    this.filename = filename;
+    this.format = format;
+  }
+
+  /**
+   * Constructs a {@code TiledImage} object with the orientation, size and name of the given image,
+   * whose pixels are stored in the given store.
+   *
+   * @param other  the image to take the orientation, size and name of
+   * @param store  the store of the pixels of the new image
+   * @param shared true if the store is shared with another image
+   */
+  private TiledImage(TiledImage other, TileStore store, boolean shared) {
+    this.store = store;
+    this.cache = other.cache;
+    this.shared = shared;
+    this.orientation = other.orientation;
+    this.width = other.width;
+    this.height = other.height;
+    this.filename = other.filename;
+    this.format = other.format;
+  }
+
+  /**
+   * Gets the store of the pixels of this image, which its copies share.
+   *
+   * @return the store of this image
+   */
+  TileStore getStore() {
+    return this.store;
+  }
+
+  /**
+   * Sets the pixels of the given rows of this image. Only the pixels of a new image can be set,
+   * before it is flipped, rotated or copied.
+   *
+   * @param startRow the first row to set
+   * @param numRows  the number of rows to set
+   * @param source   the packed colors of the rows, row after row
+   * @param offset   the index in the array of the first pixel of the first row
+   * @throws IllegalArgumentException if the array is null, if the rows are outside of the image or
+   *                                  array, if any color is not a valid packed color or if this
+   *                                  image is not new
+   */
+  public void setRows(int startRow, int numRows, int[] source, int offset)
+      throws IllegalArgumentException {
+    if (source == null) {
+      throw new IllegalArgumentException("Source cannot be null.");
+    }
+    if (startRow < 0 || numRows < 0 || startRow + numRows > this.height || offset < 0
+        || (long) offset + (long) numRows * this.width > source.length) {
+      throw new IllegalArgumentException("Rows are outside of the image or source.");
+    }
+    if (this.shared || this.orientation != Orientation.IDENTITY) {
+      throw new IllegalArgumentException("Only the pixels of a new image can be set.");
+    }
+    for (int i = offset; i < offset + numRows * this.width; i++) {
+      if ((source[i] & ~PackedRGB.MASK) != 0) {
+        throw new IllegalArgumentException("The rows contain an invalid color.");
+      }
+    }
+
+    int endRow = startRow + numRows;
+    int columns = this.store.getTileColumns();
+    for (int row0 = startRow; row0 < endRow; row0 = (row0 / TILE_SIZE + 1) * TILE_SIZE) {
+      int row1 = Math.min(endRow, (row0 / TILE_SIZE + 1) * TILE_SIZE);
+      for (int tileColumn = 0; tileColumn < columns; tileColumn++) {
+        int tile = row0 / TILE_SIZE * columns + tileColumn;
+        int col0 = tileColumn * TILE_SIZE;
+        int count = Math.min(TILE_SIZE, this.width - col0);
+        int[] pixels = this.cache.read(this.store, tile).clone();
+        for (int row = row0; row < row1; row++) {
+          System.arraycopy(source, offset + (row - startRow) * this.width + col0, pixels,
+              (row % TILE_SIZE) * TILE_SIZE, count);
+        }
+        this.cache.write(this.store, tile, pixels);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc} The blocks are the tiles of this image, including the padding of the tiles on
+   * the edges, and the transformed tiles are written to a new scratch file.
+   */
+  @Override
+  public TiledImage mapTiles(ObjIntConsumer<int[]> operation) throws IllegalArgumentException {
+    if (operation == null) {
+      throw new IllegalArgumentException("Operation cannot be null.");
+    }
+    TiledImage result = new TiledImage(this,
+        new TileStore(this.store.getWidth(), this.store.getHeight()), false);
+    IntStream.range(0, this.store.getNumTiles()).parallel().forEach(tile -> {
+      int[] pixels = this.cache.read(this.store, tile).clone();
+      operation.accept(pixels, pixels.length);
+      result.cache.write(result.store, tile, pixels);
+    });
+    return result;
+  }
+
+  @Override
+  public IPixel[][] getImage() {
+    IPixel[][] imageGrid = new IPixel[this.height][this.width];
+    int[] row = new int[this.width];
+    for (int i = 0; i < this.height; i++) {
+      this.getRows(i, 1, row, 0);
+      for (int j = 0; j < this.width; j++) {
+        imageGrid[i][j] = new Pixel(i, j, PackedRGB.red(row[j]), PackedRGB.green(row[j]),
+            PackedRGB.blue(row[j]));
+      }
+    }
+    return imageGrid;
+  }
+
+  @Override
+  public IImageView view() {
+    return new ImageView(this);
+  }
+
+  @Override
+  public IImage copy() {
+    this.shared = true;
+    return new TiledImage(this, this.store, true);
+  }
+
+  @Override
+  public IImage withColors(int[] raster) throws IllegalArgumentException {
+    if (raster == null || (long) this.width * this.height != raster.length) {
+      throw new IllegalArgumentException("The raster does not match the dimensions.");
+    }
+    TiledImage result =
+        new TiledImage(this.width, this.height, this.filename, this.format, this.cache);
+    result.setRows(0, this.height, raster, 0);
+    return result;
+  }
+
+  @Override
+  public int getRGB(int row, int col) throws IllegalArgumentException {
+    if (row < 0 || row >= this.height || col < 0 || col >= this.width) {
+      throw new IllegalArgumentException("Position is outside of the image.");
+    }
+    Orientation pending = this.orientation;
+    int mirroredRow = pending.mirrorsRows() ? this.height - 1 - row : row;
+    int mirroredCol = pending.mirrorsColumns() ? this.width - 1 - col : col;
+    int storedRow = pending.isTransposed() ? mirroredCol : mirroredRow;
+    int storedCol = pending.isTransposed() ? mirroredRow : mirroredCol;
+    int[] tile = this.cache.read(this.store,
+        storedRow / TILE_SIZE * this.store.getTileColumns() + storedCol / TILE_SIZE);
+    return tile[(storedRow % TILE_SIZE) * TILE_SIZE + storedCol % TILE_SIZE];
+  }
+
+  @Override
+  public void getRows(int startRow, int numRows, int[] dest, int offset)
+      throws IllegalArgumentException {
+    if (dest == null) {
+      throw new IllegalArgumentException("Destination cannot be null.");
+    }
+    if (startRow < 0 || numRows < 0 || startRow + numRows > this.height || offset < 0
+        || (long) offset + (long) numRows * this.width > dest.length) {
+      throw new IllegalArgumentException("Rows are outside of the image or destination.");
+    }
+    Orientation pending = this.orientation;
+    for (int i = startRow; i < startRow + numRows; i++) {
+      int dst = offset + (i - startRow) * this.width;
+      if (pending.isTransposed()) {
+        this.readTransposedRow(pending, i, dest, dst);
+      } else {
+        this.readRow(pending, i, dest, dst);
+      }
+    }
+  }
+
+  /**
+   * Copies a row of this image, read in an orientation that is not transposed, out of the tiles
+   * of the stored row it comes from.
+   *
+   * @param pending the orientation to read the tiles in
+   * @param row     the row to copy
+   * @param dest    the array to copy the row into
+   * @param offset  the index in the array of the first pixel of the row
+   */
+  private void readRow(Orientation pending, int row, int[] dest, int offset) {
+    int storedRow = pending.mirrorsRows() ? this.height - 1 - row : row;
+    int columns = this.store.getTileColumns();
+    int first = storedRow / TILE_SIZE * columns;
+    int inTile = (storedRow % TILE_SIZE) * TILE_SIZE;
+    for (int tileColumn = 0; tileColumn < columns; tileColumn++) {
+      int[] tile = this.cache.read(this.store, first + tileColumn);
+      int col0 = tileColumn * TILE_SIZE;
+      int count = Math.min(TILE_SIZE, this.width - col0);
+      if (pending.mirrorsColumns()) {
+        for (int k = 0, j = offset + this.width - 1 - col0; k < count; k++, j--) {
+          dest[j] = tile[inTile + k];
+        }
+      } else {
+        System.arraycopy(tile, inTile, dest, offset + col0, count);
+      }
+    }
+  }
+
+  /**
+   * Copies a row of this image, read in a transposed orientation, out of the tiles of the stored
+   * column it comes from.
+   *
+   * @param pending the orientation to read the tiles in
+   * @param row     the row to copy
+   * @param dest    the array to copy the row into
+   * @param offset  the index in the array of the first pixel of the row
+   */
+  private void readTransposedRow(Orientation pending, int row, int[] dest, int offset) {
+    // the stored tiles are this.width rows of this.height pixels
+    int storedCol = pending.mirrorsRows() ? this.height - 1 - row : row;
+    int columns = this.store.getTileColumns();
+    int inTile = storedCol % TILE_SIZE;
+    for (int row0 = 0; row0 < this.width; row0 += TILE_SIZE) {
+      int[] tile = this.cache.read(this.store, row0 / TILE_SIZE * columns + storedCol / TILE_SIZE);
+      int count = Math.min(TILE_SIZE, this.width - row0);
+      for (int k = 0; k < count; k++) {
+        int storedRow = row0 + k;
+        int col = pending.mirrorsColumns() ? this.width - 1 - storedRow : storedRow;
+        dest[offset + col] = tile[k * TILE_SIZE + inTile];
+      }
+    }
+  }
+
+  @Override
+  public boolean hasAlpha() {
+    return false;
+  }
+
+  @Override
+  public int getAlpha(int row, int col) throws IllegalArgumentException {
+    if (row < 0 || row >= this.height || col < 0 || col >= this.width) {
+      throw new IllegalArgumentException("Position is outside of the image.");
+    }
+    return 255;
+  }
+
+  @Override
+  public void getAlphaRows(int startRow, int numRows, byte[] dest, int offset)
+      throws IllegalArgumentException {
+    if (dest == null) {
+      throw new IllegalArgumentException("Destination cannot be null.");
+    }
+    if (startRow < 0 || numRows < 0 || startRow + numRows > this.height || offset < 0
+        || (long) offset + (long) numRows * this.width > dest.length) {
+      throw new IllegalArgumentException("Rows are outside of the image or destination.");
+    }
+    Arrays.fill(dest, offset, offset + numRows * this.width, (byte) 255);
+  }
+
+  @Override
+  public void flipImageH() {
+    this.orientation = this.orientation.flipH();
+  }
+
+  @Override
+  public void flipImageV() {
+    this.orientation = this.orientation.flipV();
+  }
+
+  @Override
+  public void rotateImageClockwise() {
+    this.orientation = this.orientation.rotateClockwise();
+    this.swapDimensions();
+  }
+
+  @Override
+  public void rotateImageCounterclockwise() {
+    this.orientation = this.orientation.rotateCounterclockwise();
+    this.swapDimensions();
+  }
+
+  /**
+   * Swaps the width and height of this image after it is rotated a quarter turn.
+   */
+  private void swapDimensions() {
+    int temp = this.width;
+    this.width = this.height;
+    this.height = temp;
+  }
+
+  @Override
+  public String getFilename() {
+    return this.filename;
+  }
+
+  @Override
+  public String getFormat() {
+    return this.format;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    TiledImage other = (TiledImage) o;
+    if (this.width != other.width || this.height != other.height
+        || !Objects.equals(this.filename, other.filename)) {
+      return false;
+    }
+    int[] row = new int[this.width];
+    int[] otherRow = new int[this.width];
+    for (int i = 0; i < this.height; i++) {
+      this.getRows(i, 1, row, 0);
+      other.getRows(i, 1, otherRow, 0);
+      if (!Arrays.equals(row, otherRow)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    // the pixels are left out, so that hashing never streams the whole image
+    return Objects.hash(this.filename, this.width, this.height);
+  }
+}
@@ -0,0 +1,66 @@
+package model.layer;
+
+/**
+ * Represents the ways the colors of a layer can be combined with the colors of the layers below it
+ * when a multi-layered image is flattened. Every mode is composited with the Porter-Duff source
+ * over operator, so the alpha of a layer controls how much of its blended color covers what is
+ * below it.
+ */
+public enum BlendMode {
+
+  /**
+   * The colors of the layer replace the colors below it.
+   */
+  NORMAL("normal"),
+
+  /**
+   * The colors of the layer are multiplied with the colors below it, which darkens them.
+   */
+  MULTIPLY("multiply"),
+
+  /**
+   * The inverses of the colors of the layer are multiplied with the inverses of the colors below
+   * it, which lightens them.
+   */
+  SCREEN("screen"),
+
+  /**
+   * The colors of the layer are added to the colors below it and clamped.
+   */
+  ADD("add");
+
+  private final String name;
+
+  /**
+   * Constructs a {@code BlendMode} with the name it is given in scripts.
+   *
+   * @param name the name of the mode
+   */
+  BlendMode(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Gets the blend mode with the given name, ignoring case.
+   *
+   * @param name the name of the mode, such as {@code "multiply"}
+   * @return the blend mode with the given name
+   * @throws IllegalArgumentException if the name is null or no mode has that name
+   */
+  public static BlendMode fromName(String name) throws IllegalArgumentException {
+    if (name == null) {
+      throw new IllegalArgumentException("Blend mode cannot be null!");
+    }
+    for (BlendMode mode : values()) {
+      if (mode.name.equalsIgnoreCase(name)) {
+        return mode;
+      }
+    }
+    throw new IllegalArgumentException("Unknown blend mode: " + name);
+  }
+
+  @Override
+  public String toString() {
+    return this.name;
+  }
+}
@@ -0,0 +1,127 @@
+package model.layer;
+
+import java.util.List;
+import model.image.IImage;
+import model.image.IImageView;
+
+/**
+ * Represents the flattened image of a stack of layers that is kept between saves and brought up to
+ * date incrementally. The cache remembers which layers showed in the flattened image along with
+ * their versions and blend modes. When the same layers show again, only the tiles covering the rows
+ * that changed in those layers since (see {@link ILayer#getChangedRows}) are flattened again, and
+ * nothing is flattened at all if no row changed, such as when a hidden layer or a layer covered by
+ * an opaque layer is toggled or edited. Any other change to the shown layers (a layer being shown
+ * or hidden, or layers being reordered) flattens every tile again.
+ */
+final class FlattenCache {
+
+  private final LayerCompositor compositor;
+  // the layers that showed in the cached image, from bottom to top, with their versions and modes
+  private List<ILayer> shown;
+  private long[] versions;
+  private BlendMode[] modes;
+  // the cached flattened pixels, which are never written once they back the cached image
+  private int[] raster;
+  private byte[] alpha;
+  private IImage image;
+
+  /**
+   * Constructs an empty {@code FlattenCache} object which flattens with the given compositor.
+   *
+   * @param compositor the compositor to flatten the layers with
+   * @throws IllegalArgumentException if the compositor is null
+   */
+  FlattenCache(LayerCompositor compositor) throws IllegalArgumentException {
+    if (compositor == null) {
+      throw new IllegalArgumentException("Compositor cannot be null!");
+    }
+    this.compositor = compositor;
+  }
+
+  /**
+   * Flattens the given layers like {@link LayerCompositor#flatten}, reusing the tiles of the
+   * previous flattened image that did not change.
+   *
+   * @param layers the layers to flatten, from bottom to top
+   * @return the flattened image
+   * @throws IllegalArgumentException if the list is null, if no layer is visible with an image or
+   *                                  if the visible images do not have the same dimensions
+   */
+  IImage flatten(List<ILayer> layers) throws IllegalArgumentException {
+    List<ILayer> stack = LayerCompositor.shownLayers(layers);
+    ILayer top = stack.get(stack.size() - 1);
+    if (stack.size() == 1 && top.getBlendMode() == BlendMode.NORMAL) {
+      return top.getImage();
+    }
+
+    IImageView[] images = new IImageView[stack.size()];
+    BlendMode[] stackModes = new BlendMode[stack.size()];
+    long[] stackVersions = new long[stack.size()];
+    for (int i = 0; i < stack.size(); i++) {
+      images[i] = stack.get(i).getImageView();
+      stackModes[i] = stack.get(i).getBlendMode();
+      stackVersions[i] = stack.get(i).getVersion();
+    }
+    int width = images[0].getWidth();
+    int height = images[0].getHeight();
+
+    int[] changed = this.changedRows(stack, stackModes, width * height);
+    if (changed != null && changed[0] == changed[1]) {
+      return this.image.copy();
+    }
+
+    int fromRow = 0;
+    int toRow = height;
+    if (changed == null) {
+      this.raster = new int[width * height];
+      this.alpha = new byte[width * height];
+    } else {
+      // the previous image keeps the old pixels, and only whole tiles are flattened again
+      int tileRows = LayerCompositor.getTileRows(width);
+      fromRow = changed[0] / tileRows * tileRows;
+      toRow = Math.min(height, (changed[1] + tileRows - 1) / tileRows * tileRows);
+      this.raster = this.raster.clone();
+      this.alpha = this.alpha.clone();
+    }
+    this.compositor.flattenRows(images, stackModes, this.raster, this.alpha, fromRow, toRow);
+
+    this.shown = stack;
+    this.versions = stackVersions;
+    this.modes = stackModes;
+    this.image = LayerCompositor.toImage(width, height, this.raster, this.alpha,
+        images[images.length - 1]);
+    return this.image.copy();
+  }
+
+  /**
+   * Finds the rows of the cached image that changed, given the layers that show now.
+   *
+   * @param stack     the layers that show now, from bottom to top
+   * @param modes     the blend modes of the layers that show now
+   * @param numPixels the number of pixels of the images of the layers
+   * @return the first (inclusive) and last (exclusive) changed rows, or null if every row must be
+   *         flattened again
+   */
+  private int[] changedRows(List<ILayer> stack, BlendMode[] modes, int numPixels) {
+    if (this.shown == null || this.shown.size() != stack.size()
+        || this.raster.length != numPixels) {
+      return null;
+    }
+    int fromRow = Integer.MAX_VALUE;
+    int toRow = 0;
+    for (int i = 0; i < stack.size(); i++) {
+      if (this.shown.get(i) != stack.get(i) || this.modes[i] != modes[i]) {
+        return null;
+      }
+      int[] rows = stack.get(i).getChangedRows(this.versions[i]);
+      if (rows == null) {
+        return null;
+      }
+      if (rows[0] < rows[1]) {
+        fromRow = Math.min(fromRow, rows[0]);
+        toRow = Math.max(toRow, rows[1]);
+      }
+    }
+    return fromRow < toRow ? new int[]{fromRow, toRow} : new int[]{0, 0};
+  }
+}
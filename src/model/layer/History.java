@@ -0,0 +1,389 @@
+package model.layer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import model.image.IImage;
+import model.image.IImageView;
+import model.image.IMappableImage;
+
+/**
+ * Represents the undo and redo history of a {@link LayerModel}. Operations are recorded as compact
+ * deltas instead of copies of the layers: invertible operations such as flips only store what was
+ * done, and lossy operations such as color transformations only store the tiles of the image that
+ * they changed. The pixels kept by the history are bounded by a memory budget, and the oldest
+ * entries are evicted to stay within it.
+ */
+final class History {
+
+  // the approximate number of pixels in a tile of a delta
+  private static final int TILE_PIXELS = 1 << 12;
+
+  private final Deque<IHistoryEntry> undo;
+  private final Deque<IHistoryEntry> redo;
+  private long budget;
+  private long bytes;
+
+  /**
+   * Constructs an empty {@code History} object with the given memory budget.
+   *
+   * @param budget the maximum number of bytes of pixels to keep
+   * @throws IllegalArgumentException if the budget is negative
+   */
+  History(long budget) throws IllegalArgumentException {
+    this.undo = new ArrayDeque<>();
+    this.redo = new ArrayDeque<>();
+    this.setBudget(budget);
+  }
+
+  /**
+   * Sets the maximum number of bytes of pixels to keep, evicting the oldest entries if needed.
+   *
+   * @param budget the maximum number of bytes of pixels to keep
+   * @throws IllegalArgumentException if the budget is negative
+   */
+  void setBudget(long budget) throws IllegalArgumentException {
+    if (budget < 0) {
+      throw new IllegalArgumentException("Budget cannot be negative!");
+    }
+    this.budget = budget;
+    this.evict();
+  }
+
+  /**
+   * Records an operation that was just applied, which cannot be redone past anymore.
+   *
+   * @param entry the delta of the operation
+   */
+  void record(IHistoryEntry entry) {
+    while (!this.redo.isEmpty()) {
+      this.bytes -= this.redo.pop().getBytes();
+    }
+    this.undo.push(entry);
+    this.bytes += entry.getBytes();
+    this.evict();
+  }
+
+  /**
+   * Undoes the most recent operation that has not been undone.
+   *
+   * @param model the model the operations were applied to
+   * @throws IllegalArgumentException if there is nothing to undo
+   */
+  void undo(LayerModel model) throws IllegalArgumentException {
+    if (this.undo.isEmpty()) {
+      throw new IllegalArgumentException("Nothing to undo!");
+    }
+    IHistoryEntry entry = this.undo.pop();
+    entry.undo(model);
+    this.redo.push(entry);
+  }
+
+  /**
+   * Redoes the most recent operation that was undone.
+   *
+   * @param model the model the operations were applied to
+   * @throws IllegalArgumentException if there is nothing to redo
+   */
+  void redo(LayerModel model) throws IllegalArgumentException {
+    if (this.redo.isEmpty()) {
+      throw new IllegalArgumentException("Nothing to redo!");
+    }
+    IHistoryEntry entry = this.redo.pop();
+    entry.redo(model);
+    this.undo.push(entry);
+  }
+
+  /**
+   * Forgets every recorded operation.
+   */
+  void clear() {
+    this.undo.clear();
+    this.redo.clear();
+    this.bytes = 0;
+  }
+
+  /**
+   * Evicts the oldest entries until the history is within its budget. Entries that can be redone
+   * are evicted first, since they are only kept for a redo.
+   */
+  private void evict() {
+    while (this.bytes > this.budget && !this.redo.isEmpty()) {
+      this.bytes -= this.redo.removeLast().getBytes();
+    }
+    while (this.bytes > this.budget && !this.undo.isEmpty()) {
+      this.bytes -= this.undo.removeLast().getBytes();
+    }
+  }
+
+  /**
+   * Creates the entry of a color transformation of the given layer, which stores only the tiles
+   * of the image that the transformation changed. When most of the tiles changed, the previous
+   * image is kept as it is instead, which costs the same memory without copying anything.
+   *
+   * @param layer    the layer that was transformed
+   * @param snapshot a copy of the layer from before the transformation
+   * @return the entry of the transformation
+   */
+  static IHistoryEntry colorTransform(ILayer layer, ILayer snapshot) {
+    IImage before = snapshot.getImage();
+    if (before instanceof IMappableImage) {
+      // the pixels of the previous image are already out of the heap, and shared with the snapshot
+      return new SnapshotEntry(layer, snapshot);
+    }
+    IImage after = layer.getImage();
+    int width = before.getWidth();
+    int height = before.getHeight();
+    int tileRows = Math.max(1, TILE_PIXELS / width);
+    int numTiles = (height + tileRows - 1) / tileRows;
+    int[] oldTile = new int[tileRows * width];
+    int[] newTile = new int[tileRows * width];
+
+    int[] tiles = new int[numTiles];
+    int[][] pixels = new int[numTiles][];
+    int changed = 0;
+    for (int tile = 0; tile < numTiles && changed * 2 <= numTiles; tile++) {
+      int fromRow = tile * tileRows;
+      int rows = Math.min(tileRows, height - fromRow);
+      before.getRows(fromRow, rows, oldTile, 0);
+      after.getRows(fromRow, rows, newTile, 0);
+      if (!Arrays.equals(oldTile, 0, rows * width, newTile, 0, rows * width)) {
+        tiles[changed] = tile;
+        pixels[changed] = Arrays.copyOf(oldTile, rows * width);
+        changed++;
+      }
+    }
+    if (changed * 2 > numTiles) {
+      return new SnapshotEntry(layer, snapshot);
+    }
+    return new TileDeltaEntry(layer, tileRows, Arrays.copyOf(tiles, changed),
+        Arrays.copyOf(pixels, changed));
+  }
+
+  /**
+   * Gets the approximate number of bytes of pixels of the image of the given layer, without
+   * applying its deferred operations.
+   *
+   * @param layer the given layer
+   * @return the number of bytes of the pixels of the layer, or 0 if it has no image
+   */
+  static long imageBytes(ILayer layer) {
+    if (layer instanceof Layer) {
+      return ((Layer) layer).getImageBytes();
+    }
+    IImageView view = layer.getImageView();
+    if (view == null) {
+      return 0;
+    }
+    return (long) view.getWidth() * view.getHeight() * (view.hasAlpha() ? 5 : 4);
+  }
+
+  /**
+   * Represents a flip of a layer, which is undone by flipping it again.
+   */
+  static final class FlipEntry implements IHistoryEntry {
+
+    private final ILayer layer;
+    private final boolean horizontal;
+
+    /**
+     * Constructs a {@code FlipEntry} object.
+     *
+     * @param layer      the layer that was flipped
+     * @param horizontal true if the layer was flipped horizontally, false if vertically
+     */
+    FlipEntry(ILayer layer, boolean horizontal) {
+      this.layer = layer;
+      this.horizontal = horizontal;
+    }
+
+    @Override
+    public void undo(LayerModel model) {
+      this.redo(model);
+    }
+
+    @Override
+    public void redo(LayerModel model) {
+      if (this.horizontal) {
+        this.layer.flippedImageH();
+      } else {
+        this.layer.flippedImageV();
+      }
+    }
+
+    @Override
+    public long getBytes() {
+      return 0;
+    }
+  }
+
+  /**
+   * Represents a change of the blend mode of a layer.
+   */
+  static final class BlendEntry implements IHistoryEntry {
+
+    private final ILayer layer;
+    private final BlendMode before;
+    private final BlendMode after;
+
+    /**
+     * Constructs a {@code BlendEntry} object.
+     *
+     * @param layer  the layer whose blend mode changed
+     * @param before the blend mode before the change
+     * @param after  the blend mode after the change
+     */
+    BlendEntry(ILayer layer, BlendMode before, BlendMode after) {
+      this.layer = layer;
+      this.before = before;
+      this.after = after;
+    }
+
+    @Override
+    public void undo(LayerModel model) {
+      this.layer.setBlendMode(this.before);
+    }
+
+    @Override
+    public void redo(LayerModel model) {
+      this.layer.setBlendMode(this.after);
+    }
+
+    @Override
+    public long getBytes() {
+      return 0;
+    }
+  }
+
+  /**
+   * Represents the creation of a layer, which is undone by removing the layer.
+   */
+  static final class CreateEntry implements IHistoryEntry {
+
+    private final ILayer layer;
+    private final int index;
+
+    /**
+     * Constructs a {@code CreateEntry} object.
+     *
+     * @param layer the layer that was created
+     * @param index the index of the layer in the model
+     */
+    CreateEntry(ILayer layer, int index) {
+      this.layer = layer;
+      this.index = index;
+    }
+
+    @Override
+    public void undo(LayerModel model) {
+      model.removeLayer(this.index);
+    }
+
+    @Override
+    public void redo(LayerModel model) {
+      model.insertLayer(this.index, this.layer);
+    }
+
+    @Override
+    public long getBytes() {
+      return 0;
+    }
+  }
+
+  /**
+   * Represents an operation that is undone by swapping the image, deferred operations and blend
+   * mode of a layer with a copy of them, such as loading a new image into the layer. The copy
+   * shares its pixels with the images it was taken from.
+   */
+  static final class SnapshotEntry implements IHistoryEntry {
+
+    private final ILayer layer;
+    private final long bytes;
+    private ILayer snapshot;
+
+    /**
+     * Constructs a {@code SnapshotEntry} object.
+     *
+     * @param layer    the layer that was changed
+     * @param snapshot a copy of the layer from before the change
+     */
+    SnapshotEntry(ILayer layer, ILayer snapshot) {
+      this.layer = layer;
+      this.snapshot = snapshot;
+      this.bytes = Math.max(imageBytes(snapshot), imageBytes(layer));
+    }
+
+    @Override
+    public void undo(LayerModel model) {
+      ILayer current = this.layer.copy();
+      this.layer.restore(this.snapshot);
+      this.snapshot = current;
+    }
+
+    @Override
+    public void redo(LayerModel model) {
+      this.undo(model);
+    }
+
+    @Override
+    public long getBytes() {
+      return this.bytes;
+    }
+  }
+
+  /**
+   * Represents a lossy change to the colors of a layer, which stores the tiles of the image that
+   * changed as they were on the other side of the change.
+   */
+  static final class TileDeltaEntry implements IHistoryEntry {
+
+    private final ILayer layer;
+    private final int tileRows;
+    private final int[] tiles;
+    private final int[][] pixels;
+
+    /**
+     * Constructs a {@code TileDeltaEntry} object.
+     *
+     * @param layer    the layer that was changed
+     * @param tileRows the number of rows of a tile
+     * @param tiles    the indices of the tiles that changed
+     * @param pixels   the packed colors of every changed tile from before the change
+     */
+    TileDeltaEntry(ILayer layer, int tileRows, int[] tiles, int[][] pixels) {
+      this.layer = layer;
+      this.tileRows = tileRows;
+      this.tiles = tiles;
+      this.pixels = pixels;
+    }
+
+    @Override
+    public void undo(LayerModel model) {
+      IImage current = this.layer.getImage();
+      int width = current.getWidth();
+      int[] raster = new int[width * current.getHeight()];
+      current.getRows(0, current.getHeight(), raster, 0);
+      for (int i = 0; i < this.tiles.length; i++) {
+        int offset = this.tiles[i] * this.tileRows * width;
+        int[] swapped = Arrays.copyOfRange(raster, offset, offset + this.pixels[i].length);
+        System.arraycopy(this.pixels[i], 0, raster, offset, this.pixels[i].length);
+        this.pixels[i] = swapped;
+      }
+      this.layer.setImage(current.withColors(raster));
+    }
+
+    @Override
+    public void redo(LayerModel model) {
+      this.undo(model);
+    }
+
+    @Override
+    public long getBytes() {
+      long total = 0;
+      for (int[] tile : this.pixels) {
+        total += 4L * tile.length;
+      }
+      return total;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package model.layer;
+
+/**
+ * Represents one operation recorded in the undo history of a {@link LayerModel}, stored as the
+ * smallest delta that can both undo and redo it.
+ */
+interface IHistoryEntry {
+
+  /**
+   * Reverts the operation, given that the model is in the state right after it.
+   *
+   * @param model the model the operation was applied to
+   */
+  void undo(LayerModel model);
+
+  /**
+   * Applies the operation again, given that the model is in the state right before it.
+   *
+   * @param model the model the operation was applied to
+   */
+  void redo(LayerModel model);
+
+  /**
+   * Gets the approximate number of bytes of pixels that this entry keeps alive.
+   *
+   * @return the size of this entry in bytes
+   */
+  long getBytes();
+}
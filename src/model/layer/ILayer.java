@@ -1,6 +1,9 @@
 package model.layer;
 
+import model.color.ColorTransformEngine;
+import model.color.IColorTransformation;
 import model.image.IImage;
+import model.image.IImageView;
 
 /**
  * Represents a Layer which has a name, image associated with it, and a visibility setting. It is a
@@ -9,17 +12,126 @@ import model.image.IImage;
 public interface ILayer {
 
   /**
-   * Sets the image of this layer to be the given image.
+   * Sets the image of this layer to be the given image, dropping any deferred operations of the
+   * previous image. The layer keeps a copy of the image which shares its pixels, so changes made
+   * to the given image afterwards do not change this layer.
    *
    * @throws IllegalArgumentException if the given image is null.
    */
   void setImage(IImage image) throws IllegalArgumentException;
 
+  /**
+   * Queues the given color transformation to be applied to the image of this layer the next time
+   * this layer is flushed. Queued transformations are fused, so any number of them are applied in
+   * a single pass over the image.
+   *
+   * @param transformation the color transformation to queue
+   * @throws IllegalArgumentException if the transformation is null or this layer has no image
+   */
+  void deferColorTransform(IColorTransformation transformation) throws IllegalArgumentException;
+
+  /**
+   * Applies every deferred operation of this layer to its image. Does nothing if there are none.
+   */
+  void flush();
+
+  /**
+   * Sets the engine that applies the deferred color transformations of this layer when it is
+   * flushed, which is the default engine unless set otherwise.
+   *
+   * @param engine the engine to apply the deferred color transformations with
+   * @throws IllegalArgumentException if the engine is null
+   */
+  void setEngine(ColorTransformEngine engine) throws IllegalArgumentException;
+
+  /**
+   * Determines whether this layer has deferred operations that have not been applied yet.
+   *
+   * @return true if this layer must be flushed before its pixels are up to date
+   */
+  boolean hasDeferredOperations();
+
+  /**
+   * Creates a copy of this layer with the same name, visibility, blend mode and deferred
+   * operations. The image of the copy shares its pixels with the image of this layer until either
+   * of them is mutated.
+   *
+   * @return a copy of this layer
+   */
+  ILayer copy();
+
+  /**
+   * Restores the image, deferred operations and blend mode of this layer from the given copy of a
+   * layer, such as one made by {@link #copy()} before this layer was changed. The name and
+   * visibility of this layer are kept.
+   *
+   * @param snapshot the copy to restore this layer from
+   * @throws IllegalArgumentException if the copy is null
+   */
+  void restore(ILayer snapshot) throws IllegalArgumentException;
+
+  /**
+   * Closes the image of this layer once the layer is no longer used, which releases the memory it
+   * holds outside of the heap. The layer has no image afterwards, and copies of the image taken
+   * before can still be read.
+   */
+  void close();
+
+  /**
+   * Flips the image of this layer horizontally.
+   *
+   * @throws IllegalArgumentException if this layer has no image
+   */
+  void flippedImageH() throws IllegalArgumentException;
+
+  /**
+   * Flips the image of this layer vertically.
+   *
+   * @throws IllegalArgumentException if this layer has no image
+   */
+  void flippedImageV() throws IllegalArgumentException;
+
+  /**
+   * Gets the version of this layer, which changes whenever the pixels or the blend mode of this
+   * layer change (but not when its visibility changes). Deferred operations are not applied, so
+   * they only change the version once this layer is flushed.
+   *
+   * @return the version of this layer
+   */
+  long getVersion();
+
+  /**
+   * Gets the rows of the image of this layer that changed since the given version.
+   *
+   * @param sinceVersion an earlier version of this layer
+   * @return the first (inclusive) and last (exclusive) changed rows, which are equal if nothing
+   *         changed, or null if the changed rows are not known, in which case every row should be
+   *         treated as changed
+   */
+  int[] getChangedRows(long sinceVersion);
+
   /**
    * Changes the current visibility to be the given visibility.
    */
   void setVisibility(boolean isVisible);
 
+  /**
+   * Sets how the image of this layer is combined with the layers below it when the layers are
+   * flattened.
+   *
+   * @param mode the blend mode of this layer
+   * @throws IllegalArgumentException if the mode is null
+   */
+  void setBlendMode(BlendMode mode) throws IllegalArgumentException;
+
+  /**
+   * Gets how the image of this layer is combined with the layers below it when the layers are
+   * flattened. Layers are {@link BlendMode#NORMAL} unless set otherwise.
+   *
+   * @return the blend mode of this layer
+   */
+  BlendMode getBlendMode();
+
   /**
    * Gets this layer's name.
    *
@@ -28,12 +140,35 @@ public interface ILayer {
   String getName();
 
   /**
-   * Gets this layer's image.
+   * Gets a copy of this layer's image, flushing this layer first. The copy shares its pixels with
+   * this layer's image until either of them is mutated.
    *
-   * @return this layer's image
+   * @return a copy of this layer's image, or null if this layer has no image
    */
   IImage getImage();
 
+  /**
+   * Gets a read-only view of this layer's image which does not copy any pixels, flushing this
+   * layer first.
+   *
+   * @return a read-only view of this layer's image, or null if this layer has no image
+   */
+  IImageView getImageView();
+
+  /**
+   * Determines whether this layer has an image, without flushing it.
+   *
+   * @return true if this layer has an image
+   */
+  boolean hasImage();
+
+  /**
+   * Gets the metadata of this layer, without flushing it or reading the pixels of its image.
+   *
+   * @return the name, image filename and size, visibility and blend mode of this layer
+   */
+  LayerInfo getInfo();
+
   /**
    * Determines if this layer is visible.
    *
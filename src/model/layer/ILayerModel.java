@@ -3,6 +3,8 @@ package model.layer;
 import java.util.List;
 
 
+import model.color.ColorTransformEngine;
+import model.color.IColorTransformation;
 import model.image.IImage;
 
 
@@ -50,12 +52,121 @@ public interface ILayerModel {
   void setCurrent(String layerName) throws IllegalArgumentException;
 
   /**
-   * Creates a deep copy of the list of layers in this {@code ILayerModel}.
+   * Applies the given color transformation to the image of the current layer, replacing the
+   * layer's image with the transformed image. If this model defers its operations, the
+   * transformation is only queued on the current layer until the model is flushed.
    *
-   * @return a deep copy of the list of layers in the model.
+   * @param transformation the color transformation to apply
+   * @throws IllegalArgumentException if the transformation is null or if there is no current layer
+   *                                  with a visible image to transform
+   */
+  void colorTransformCurrent(IColorTransformation transformation) throws IllegalArgumentException;
+
+  /**
+   * Flips the image of the current layer horizontally.
+   *
+   * @throws IllegalArgumentException if there is no current layer or it has no image
+   */
+  void flipCurrentHorizontally() throws IllegalArgumentException;
+
+  /**
+   * Flips the image of the current layer vertically.
+   *
+   * @throws IllegalArgumentException if there is no current layer or it has no image
+   */
+  void flipCurrentVertically() throws IllegalArgumentException;
+
+  /**
+   * Sets how the current layer is blended with the layers below it when the layers are flattened.
+   *
+   * @param mode the blend mode of the current layer
+   * @throws IllegalArgumentException if the mode is null or there is no current layer
+   */
+  void setCurrentBlendMode(BlendMode mode) throws IllegalArgumentException;
+
+  /**
+   * Undoes the most recent change made through this model that has not been undone yet. Setting
+   * the current layer is not a change.
+   *
+   * @throws IllegalArgumentException if there is nothing to undo
+   */
+  void undo() throws IllegalArgumentException;
+
+  /**
+   * Redoes the most recently undone change, as long as no other change was made since.
+   *
+   * @throws IllegalArgumentException if there is nothing to redo
+   */
+  void redo() throws IllegalArgumentException;
+
+  /**
+   * Sets the maximum number of bytes of pixels the undo history of this model may keep. Flips and
+   * other invertible changes cost nothing, and the oldest changes are forgotten when the history
+   * grows past its budget.
+   *
+   * @param bytes the maximum number of bytes of pixels to keep for undoing changes
+   * @throws IllegalArgumentException if the budget is negative
+   */
+  void setHistoryBudget(long bytes) throws IllegalArgumentException;
+
+  /**
+   * Sets the engine that applies the deferred color transformations of every layer of this model,
+   * which is the default engine unless set otherwise. Transformations that are not deferred run on
+   * their own engine.
+   *
+   * @param engine the engine to apply the deferred color transformations with
+   * @throws IllegalArgumentException if the engine is null
+   */
+  void setEngine(ColorTransformEngine engine) throws IllegalArgumentException;
+
+  /**
+   * Closes and removes every layer of this model and forgets its undo history, so the memory and
+   * scratch files of the images of the layers are released straight away rather than once they are
+   * collected. The model is empty afterwards, and can be used again.
+   */
+  void close();
+
+  /**
+   * Applies the deferred operations of every layer, fusing the operations queued on a layer into a
+   * single pass over its image. Does nothing if no operations are deferred.
+   */
+  void flush();
+
+  /**
+   * Flattens the visible layers of this model into a single image, blending every layer with the
+   * layers below it using its {@link BlendMode}. The image is named after the image of the topmost
+   * visible layer. Flattening the same layers again only recomputes the parts of the image that
+   * changed in the meantime.
+   *
+   * @return the flattened image
+   * @throws IllegalArgumentException if no layer is visible with an image
+   */
+  IImage flatten() throws IllegalArgumentException;
+
+  /**
+   * Creates a copy of the list of layers in this {@code ILayerModel}, without flushing them. The
+   * images of the copied layers share their pixels with the images of this model until either of
+   * them is mutated, and the copied layers carry their own copy of any deferred operations.
+   *
+   * @return a copy of the list of layers in the model.
    */
   List<ILayer> getLayers();
 
+  /**
+   * Gets the metadata of every layer in this {@code ILayerModel}, in order. Unlike {@link
+   * #getLayers()}, no layer is copied or flushed and no pixels are read.
+   *
+   * @return an unmodifiable list of the metadata of the layers
+   */
+  List<LayerInfo> getLayerInfo();
+
+  /**
+   * Gets the index of the current layer.
+   *
+   * @return the index of the current layer, or -1 if no current layer exists
+   */
+  int getCurrentIndex();
+
   /**
    * Returns the current layer, if one exists.
    *
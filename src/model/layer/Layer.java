@@ -1,17 +1,55 @@
 package model.layer;
 
 import java.util.Objects;
+import model.color.ColorTransformEngine;
+import model.color.IColorTransformation;
+import model.color.KernelPipeline;
 import model.image.IImage;
-import model.image.Image;
+import model.image.IImageView;
+import model.image.IMappableImage;
+import model.image.OffHeapImage;
 
 /**
  * Represents a named layer of a multi-layered image with an image and a visibility setting.
+ *
+ * <p>Color transformations can be deferred, in which case they are queued in a {@link
+ * KernelPipeline} and only applied, all in one pass, when the layer is flushed. Flips are applied
+ * to the image straight away, which only records its new orientation: since every color
+ * transformation maps each pixel on its own, the two kinds of operations can be reordered freely.
+ *
+ * <p>Every change to the pixels or the blend mode of a layer increments its version and records
+ * the rows that changed, so that a flattened image can be brought up to date by only recomputing
+ * those rows (see {@link FlattenCache}). The image of a layer is copied when it is set, so it can
+ * only be changed through the layer.
+ *
+ * <p>Images of at least {@link #OFF_HEAP_PIXELS} pixels are copied out of the heap into an {@link
+ * OffHeapImage} when they are set, so large layers do not slow down the garbage collector. The
+ * off-heap image of a layer is closed as soon as it is replaced or the layer is closed.
  */
 public class Layer implements ILayer {
 
+  // the number of recent changes whose rows are remembered
+  private static final int HISTORY = 8;
+
+  /**
+   * The smallest number of pixels of an image for a layer to keep it out of the heap (4 megapixels,
+   * or a raster of 16 MiB).
+   */
+  public static final long OFF_HEAP_PIXELS = 1L << 22;
+
   private IImage image;
+  // the number of changes made to this layer, and the rows each of the most recent ones changed,
+  // where the change that made version v is stored at index v % HISTORY
+  private long version;
+  private final int[] changedFromRow;
+  private final int[] changedToRow;
+  // the color transformations that have not been applied to the image yet, and the engine that
+  // applies them
+  private KernelPipeline deferred;
+  private ColorTransformEngine engine;
   private final String name;
   private boolean visibility; // true if visible, false if invisible
+  private BlendMode blendMode;
 
   /**
    * Constructs a {@code Layer} object without a set image, a name, and visibility status as true.
@@ -24,8 +62,13 @@ public class Layer implements ILayer {
       throw new IllegalArgumentException("Name cannot be null");
     }
     this.image = null;
+    this.deferred = KernelPipeline.empty();
+    this.engine = ColorTransformEngine.getDefault();
     this.name = name;
     this.visibility = true;
+    this.blendMode = BlendMode.NORMAL;
+    this.changedFromRow = new int[HISTORY];
+    this.changedToRow = new int[HISTORY];
   }
 
   @Override
@@ -33,17 +76,183 @@ public class Layer implements ILayer {
     if (image == null) {
       throw new IllegalArgumentException("Cannot have a null image");
     }
-    this.image = image;
+    IImage previous = this.image;
+    this.image = own(image);
+    this.deferred = KernelPipeline.empty();
+    this.markChanged(0, this.image.getHeight());
+    release(previous);
+  }
+
+  /**
+   * Creates the copy of the given image that a layer keeps, which is moved out of the heap if it
+   * is large and not already stored out of the heap.
+   *
+   * @param image the image to be kept
+   * @return the copy of the image
+   */
+  private static IImage own(IImage image) {
+    if (!(image instanceof IMappableImage)
+        && (long) image.getWidth() * image.getHeight() >= OFF_HEAP_PIXELS) {
+      return new OffHeapImage(image);
+    }
+    return image.copy();
+  }
+
+  /**
+   * Closes an image that a layer no longer keeps, if it is stored out of the heap.
+   *
+   * @param image the image that is no longer kept, or null
+   */
+  private static void release(IImage image) {
+    if (image instanceof OffHeapImage) {
+      ((OffHeapImage) image).close();
+    }
+  }
+
+  /**
+   * Records a change to the given rows of this layer as a new version.
+   *
+   * @param fromRow the first changed row (inclusive)
+   * @param toRow   the last changed row (exclusive)
+   */
+  private void markChanged(int fromRow, int toRow) {
+    this.version++;
+    int slot = (int) (this.version % HISTORY);
+    this.changedFromRow[slot] = fromRow;
+    this.changedToRow[slot] = toRow;
+  }
+
+  @Override
+  public long getVersion() {
+    return this.version;
+  }
+
+  @Override
+  public int[] getChangedRows(long sinceVersion) {
+    long current = this.getVersion();
+    if (sinceVersion > current || current - sinceVersion > HISTORY) {
+      return null;
+    }
+    int fromRow = Integer.MAX_VALUE;
+    int toRow = 0;
+    for (long v = sinceVersion + 1; v <= current; v++) {
+      int slot = (int) (v % HISTORY);
+      fromRow = Math.min(fromRow, this.changedFromRow[slot]);
+      toRow = Math.max(toRow, this.changedToRow[slot]);
+    }
+    return fromRow < toRow ? new int[]{fromRow, toRow} : new int[]{0, 0};
+  }
+
+  @Override
+  public void deferColorTransform(IColorTransformation transformation)
+      throws IllegalArgumentException {
+    if (transformation == null) {
+      throw new IllegalArgumentException("Transformation cannot be null!");
+    }
+    if (this.image == null) {
+      throw new IllegalArgumentException("Layer has no image to transform.");
+    }
+    this.deferred = this.deferred.then(transformation.getCompiledKernel());
+  }
+
+  @Override
+  public void flush() {
+    if (this.image == null || this.deferred.isEmpty()) {
+      return;
+    }
+    IImage previous = this.image;
+    this.image = this.engine.transform(this.image, this.deferred);
+    this.deferred = KernelPipeline.empty();
+    release(previous);
+    this.markChanged(0, this.image.getHeight());
+  }
+
+  @Override
+  public void setEngine(ColorTransformEngine engine) throws IllegalArgumentException {
+    if (engine == null) {
+      throw new IllegalArgumentException("Engine cannot be null!");
+    }
+    this.engine = engine;
+  }
+
+  @Override
+  public boolean hasDeferredOperations() {
+    return !this.deferred.isEmpty();
+  }
+
+  @Override
+  public ILayer copy() {
+    Layer copy = new Layer(this.name);
+    copy.visibility = this.visibility;
+    copy.blendMode = this.blendMode;
+    if (this.image != null) {
+      copy.image = this.image.copy();
+    }
+    copy.deferred = this.deferred;
+    copy.engine = this.engine;
+    copy.version = this.version;
+    System.arraycopy(this.changedFromRow, 0, copy.changedFromRow, 0, HISTORY);
+    System.arraycopy(this.changedToRow, 0, copy.changedToRow, 0, HISTORY);
+    return copy;
+  }
+
+  /**
+   * Gets the approximate number of bytes of the pixels of the image of this layer, without applying
+   * its deferred operations.
+   *
+   * @return the number of bytes of the pixels of this layer, or 0 if it has no image
+   */
+  long getImageBytes() {
+    if (this.image == null) {
+      return 0;
+    }
+    return (long) this.image.getWidth() * this.image.getHeight() * (this.image.hasAlpha() ? 5 : 4);
+  }
+
+  @Override
+  public void restore(ILayer snapshot) throws IllegalArgumentException {
+    if (snapshot == null) {
+      throw new IllegalArgumentException("Snapshot cannot be null!");
+    }
+    IImage previous = this.image;
+    if (snapshot instanceof Layer) {
+      Layer other = (Layer) snapshot;
+      this.image = other.image == null ? null : other.image.copy();
+      this.deferred = other.deferred;
+    } else {
+      this.image = snapshot.getImage() == null ? null : own(snapshot.getImage());
+      this.deferred = KernelPipeline.empty();
+    }
+    this.blendMode = snapshot.getBlendMode();
+    this.markChanged(0, this.image == null ? 0 : this.image.getHeight());
+    release(previous);
+  }
+
+  @Override
+  public void close() {
+    IImage previous = this.image;
+    this.image = null;
+    this.deferred = KernelPipeline.empty();
+    this.markChanged(0, 0);
+    release(previous);
   }
 
   @Override
   public void flippedImageH() {
+    if (this.image == null) {
+      throw new IllegalArgumentException("Layer has no image to flip.");
+    }
     this.image.flipImageH();
+    this.markChanged(0, this.image.getHeight());
   }
 
   @Override
   public void flippedImageV() {
+    if (this.image == null) {
+      throw new IllegalArgumentException("Layer has no image to flip.");
+    }
     this.image.flipImageV();
+    this.markChanged(0, this.image.getHeight());
   }
 
   @Override
@@ -51,6 +260,22 @@ public class Layer implements ILayer {
     this.visibility = isVisible;
   }
 
+  @Override
+  public void setBlendMode(BlendMode mode) throws IllegalArgumentException {
+    if (mode == null) {
+      throw new IllegalArgumentException("Blend mode cannot be null!");
+    }
+    if (this.blendMode != mode) {
+      this.blendMode = mode;
+      this.markChanged(0, this.image == null ? 0 : this.image.getHeight());
+    }
+  }
+
+  @Override
+  public BlendMode getBlendMode() {
+    return this.blendMode;
+  }
+
   @Override
   public String getName() {
     return this.name;
@@ -61,8 +286,33 @@ public class Layer implements ILayer {
     if (this.image == null) {
       return null;
     } else {
-      return new Image(this.image.getImage(), this.image.getFilename());
+      this.flush();
+      return this.image.copy();
+    }
+  }
+
+  @Override
+  public IImageView getImageView() {
+    if (this.image == null) {
+      return null;
+    } else {
+      this.flush();
+      return this.image.view();
+    }
+  }
+
+  @Override
+  public boolean hasImage() {
+    return this.image != null;
+  }
+
+  @Override
+  public LayerInfo getInfo() {
+    if (this.image == null) {
+      return new LayerInfo(this.name, null, 0, 0, this.visibility, this.blendMode);
     }
+    return new LayerInfo(this.name, this.image.getFilename(), this.image.getWidth(),
+        this.image.getHeight(), this.visibility, this.blendMode);
   }
 
   @Override
@@ -72,14 +322,7 @@ public class Layer implements ILayer {
 
   @Override
   public String toString() {
-    if (this.image == null) {
-      return "Name of Layer: " + this.name
-          + ", No Image Associated With This Layer"
-          + ", Visibility: " + this.visibility;
-    } else {
-      return "Name of Layer: " + this.name + ", Image Filename: " + this.image.getFilename()
-          + ", Visibility: " + this.visibility;
-    }
+    return this.getInfo().toString();
   }
 
   @Override
@@ -95,7 +338,6 @@ public class Layer implements ILayer {
     if (this.image != null) {
       return visibility == layer.visibility && image.getFilename()
           .equalsIgnoreCase(layer.image.getFilename())
-          && Objects.deepEquals(image.getImage(), image.getImage())
           && name.equalsIgnoreCase(layer.name);
     } else {
       return visibility == layer.visibility && image == layer.image
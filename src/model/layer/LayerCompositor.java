@@ -0,0 +1,297 @@
+package model.layer;
+
+import java.util.ArrayList;
+import java.util.List;
+import model.image.IImage;
+import model.image.IImageView;
+import model.image.Image;
+import utils.TileRunner;
+
+/**
+ * Represents an engine which flattens the visible layers of a multi-layered image into a single
+ * image. Every layer is blended with the layers below it using its {@link BlendMode} and
+ * composited with the Porter-Duff source over operator, from the bottom layer to the top one.
+ *
+ * <p>The image is split into tiles of whole rows which are flattened in parallel on the pool of a
+ * {@link TileRunner}: each tile reads the same rows of every layer into a small premultiplied
+ * accumulator, so no intermediate image is ever built per layer. Layers below the topmost opaque
+ * layer that is not blended are hidden, so they are skipped altogether.
+ *
+ * <p>A compositor created with its own parallelism level owns its pool, whose threads are stopped
+ * once the compositor is closed. The default compositor runs on the common pool, which it never
+ * stops.
+ */
+public class LayerCompositor implements AutoCloseable {
+
+  // the approximate number of pixels in a tile, small enough for the accumulator to stay in cache
+  private static final int TILE_PIXELS = 1 << 14;
+
+  private static final LayerCompositor DEFAULT = new LayerCompositor(TileRunner.getDefault());
+
+  private final TileRunner runner;
+
+  /**
+   * Constructs a {@code LayerCompositor} object which runs on its own pool with the given
+   * parallelism level.
+   *
+   * @param parallelism     the number of threads to flatten images with
+   * @param serialThreshold the minimum number of pixels for an image to be flattened in parallel
+   * @throws IllegalArgumentException if the parallelism is not positive or the threshold is
+   *                                  negative
+   */
+  public LayerCompositor(int parallelism, int serialThreshold) throws IllegalArgumentException {
+    this(new TileRunner(parallelism, serialThreshold));
+  }
+
+  /**
+   * Constructs a {@code LayerCompositor} object which runs on the given runner.
+   *
+   * @param runner the runner to flatten images with
+   */
+  private LayerCompositor(TileRunner runner) {
+    this.runner = runner;
+  }
+
+  /**
+   * Gets the default compositor, which runs on the common pool.
+   *
+   * @return the default compositor
+   */
+  public static LayerCompositor getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Stops the threads of the pool of this compositor once the images being flattened are done, if
+   * the compositor owns its pool. The compositor cannot flatten images afterwards. Closing the
+   * default compositor does nothing.
+   */
+  @Override
+  public void close() {
+    this.runner.close();
+  }
+
+  /**
+   * Flattens the visible layers of the given list, where the first layer is the bottom one, into a
+   * single image named after the image of the topmost visible layer. The result only has an alpha
+   * channel if some of its pixels are not fully opaque.
+   *
+   * @param layers the layers to flatten, from bottom to top
+   * @return the flattened image
+   * @throws IllegalArgumentException if the list is null, if no layer is visible with an image or
+   *                                  if the visible images do not have the same dimensions
+   * @throws IllegalStateException    if this compositor is closed
+   */
+  public IImage flatten(List<ILayer> layers)
+      throws IllegalArgumentException, IllegalStateException {
+    List<ILayer> stack = shownLayers(layers);
+    ILayer top = stack.get(stack.size() - 1);
+    if (stack.size() == 1 && top.getBlendMode() == BlendMode.NORMAL) {
+      return top.getImage();
+    }
+
+    IImageView[] images = new IImageView[stack.size()];
+    BlendMode[] modes = new BlendMode[stack.size()];
+    for (int i = 0; i < stack.size(); i++) {
+      images[i] = stack.get(i).getImageView();
+      modes[i] = stack.get(i).getBlendMode();
+    }
+    int width = images[0].getWidth();
+    int height = images[0].getHeight();
+    int[] raster = new int[width * height];
+    byte[] alpha = new byte[width * height];
+    this.flattenRows(images, modes, raster, alpha, 0, height);
+    return toImage(width, height, raster, alpha, top.getImageView());
+  }
+
+  /**
+   * Finds the layers of the given list that show in the flattened image: the visible layers with
+   * an image, from the topmost opaque layer that is drawn over the layers below it (if any) up to
+   * the top.
+   *
+   * @param layers the layers to flatten, from bottom to top
+   * @return the layers that show, from bottom to top
+   * @throws IllegalArgumentException if the list is null, if no layer is visible with an image or
+   *                                  if the visible images do not have the same dimensions
+   */
+  static List<ILayer> shownLayers(List<ILayer> layers) throws IllegalArgumentException {
+    if (layers == null) {
+      throw new IllegalArgumentException("Layers cannot be null!");
+    }
+    List<ILayer> visible = new ArrayList<>();
+    for (ILayer layer : layers) {
+      if (layer.isVisible() && layer.getImageView() != null) {
+        visible.add(layer);
+      }
+    }
+    if (visible.isEmpty()) {
+      throw new IllegalArgumentException("No topmost visible layer exists!");
+    }
+
+    // nothing shows through the topmost opaque layer that is drawn over the layers below it
+    int first = 0;
+    for (int i = visible.size() - 1; i >= 0; i--) {
+      ILayer layer = visible.get(i);
+      if (layer.getBlendMode() == BlendMode.NORMAL && !layer.getImageView().hasAlpha()) {
+        first = i;
+        break;
+      }
+    }
+    List<ILayer> shown = visible.subList(first, visible.size());
+    IImageView bottom = shown.get(0).getImageView();
+    for (ILayer layer : shown) {
+      if (layer.getImageView().getWidth() != bottom.getWidth()
+          || layer.getImageView().getHeight() != bottom.getHeight()) {
+        throw new IllegalArgumentException("Image(s) are not the same dimension!");
+      }
+    }
+    return new ArrayList<>(shown);
+  }
+
+  /**
+   * Flattens the given rows of the images into the given raster and alpha plane, in parallel if
+   * there are enough pixels. A flattened image that is brought up to date only flattens the rows
+   * that changed, so a subclass can observe which rows are flattened again.
+   *
+   * @param images  the images to flatten, from bottom to top
+   * @param modes   the blend mode of every image
+   * @param raster  the colors of the flattened image
+   * @param alpha   the alpha plane of the flattened image
+   * @param fromRow the first row to flatten (inclusive)
+   * @param toRow   the last row to flatten (exclusive)
+   * @throws IllegalStateException if this compositor is closed
+   */
+  protected void flattenRows(IImageView[] images, BlendMode[] modes, int[] raster, byte[] alpha,
+      int fromRow, int toRow) throws IllegalStateException {
+    if (this.runner.isClosed()) {
+      throw new IllegalStateException("The compositor is closed.");
+    }
+    int width = images[0].getWidth();
+    this.runner.forEachTile(fromRow, toRow, width, getTileRows(width),
+        (from, to) -> flattenTile(images, modes, raster, alpha, from, to));
+  }
+
+  /**
+   * Gets the number of rows of a tile of an image of the given width.
+   *
+   * @param width the width of the image
+   * @return the number of rows of a tile
+   */
+  static int getTileRows(int width) {
+    return Math.max(1, TILE_PIXELS / width);
+  }
+
+  /**
+   * Creates an image from a flattened raster and alpha plane, which only keeps the alpha plane if
+   * some of the pixels are not fully opaque.
+   *
+   * @param width    the width of the image
+   * @param height   the height of the image
+   * @param raster   the colors of the flattened image
+   * @param alpha    the alpha plane of the flattened image
+   * @param top      the image of the topmost layer, whose name and format the image takes
+   * @return the flattened image
+   */
+  static IImage toImage(int width, int height, int[] raster, byte[] alpha, IImageView top) {
+    for (byte value : alpha) {
+      if (value != (byte) 255) {
+        return new Image(width, height, raster, alpha, top.getFilename(), top.getFormat());
+      }
+    }
+    return new Image(width, height, raster, null, top.getFilename(), top.getFormat());
+  }
+
+  /**
+   * Flattens the given rows of the images into the raster and alpha plane of the result.
+   *
+   * @param images  the images to flatten, from bottom to top
+   * @param modes   the blend mode of every image
+   * @param raster  the colors of the flattened image
+   * @param alpha   the alpha plane of the flattened image
+   * @param fromRow the first row of the tile (inclusive)
+   * @param toRow   the last row of the tile (exclusive)
+   */
+  private static void flattenTile(IImageView[] images, BlendMode[] modes, int[] raster,
+      byte[] alpha, int fromRow, int toRow) {
+    int width = images[0].getWidth();
+    int numRows = toRow - fromRow;
+    int count = numRows * width;
+    // the flattened pixels so far, premultiplied by their alpha, from 0 to 1
+    float[] red = new float[count];
+    float[] green = new float[count];
+    float[] blue = new float[count];
+    float[] opacity = new float[count];
+    int[] colors = new int[count];
+    byte[] alphas = new byte[count];
+
+    for (int k = 0; k < images.length; k++) {
+      images[k].getRows(fromRow, numRows, colors, 0);
+      boolean opaque = !images[k].hasAlpha();
+      if (!opaque) {
+        images[k].getAlphaRows(fromRow, numRows, alphas, 0);
+      }
+      for (int i = 0; i < count; i++) {
+        int rgb = colors[i];
+        float sourceAlpha = opaque ? 1f : (alphas[i] & 0xFF) / 255f;
+        float backdropAlpha = opacity[i];
+        red[i] = blend(modes[k], ((rgb >> 16) & 0xFF) / 255f, sourceAlpha, red[i], backdropAlpha);
+        green[i] = blend(modes[k], ((rgb >> 8) & 0xFF) / 255f, sourceAlpha, green[i],
+            backdropAlpha);
+        blue[i] = blend(modes[k], (rgb & 0xFF) / 255f, sourceAlpha, blue[i], backdropAlpha);
+        opacity[i] = sourceAlpha + backdropAlpha - sourceAlpha * backdropAlpha;
+      }
+    }
+
+    int offset = fromRow * width;
+    for (int i = 0; i < count; i++) {
+      float a = opacity[i];
+      if (a <= 0f) {
+        raster[offset + i] = 0;
+        alpha[offset + i] = 0;
+      } else {
+        raster[offset + i] = (toChannel(red[i] / a) << 16) | (toChannel(green[i] / a) << 8)
+            | toChannel(blue[i] / a);
+        alpha[offset + i] = (byte) toChannel(a);
+      }
+    }
+  }
+
+  /**
+   * Composites one channel of a source pixel over one channel of the backdrop with the given blend
+   * mode, following the separable blend modes of the W3C compositing specification.
+   *
+   * @param mode          the blend mode of the source
+   * @param source        the channel of the source, from 0 to 1, not premultiplied
+   * @param sourceAlpha   the alpha of the source, from 0 to 1
+   * @param backdrop      the channel of the backdrop, from 0 to 1, premultiplied by its alpha
+   * @param backdropAlpha the alpha of the backdrop, from 0 to 1
+   * @return the composited channel, premultiplied by the composited alpha
+   */
+  private static float blend(BlendMode mode, float source, float sourceAlpha, float backdrop,
+      float backdropAlpha) {
+    float covered = sourceAlpha * source;
+    switch (mode) {
+      case MULTIPLY:
+        return covered * (1 - backdropAlpha) + covered * backdrop
+            + (1 - sourceAlpha) * backdrop;
+      case SCREEN:
+        return covered + backdrop - covered * backdrop;
+      case ADD:
+        return covered * (1 - backdropAlpha)
+            + sourceAlpha * Math.min(backdropAlpha, backdrop + backdropAlpha * source)
+            + (1 - sourceAlpha) * backdrop;
+      default:
+        return covered + (1 - sourceAlpha) * backdrop;
+    }
+  }
+
+  /**
+   * Converts a channel from 0 to 1 into a rounded channel from 0 to 255.
+   *
+   * @param value the channel from 0 to 1
+   * @return the channel from 0 to 255
+   */
+  private static int toChannel(float value) {
+    return Math.max(0, Math.min(255, (int) (value * 255f + .5f)));
+  }
+}
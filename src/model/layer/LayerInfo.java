@@ -0,0 +1,123 @@
+package model.layer;
+
+/**
+ * Represents the metadata of a layer at one point in time: its name, the filename and size of its
+ * image, its visibility and its blend mode. It never holds or reads the pixels of the layer, so it
+ * can be taken as often as needed, such as after every command, whatever the size of the image.
+ */
+public final class LayerInfo {
+
+  private final String name;
+  private final String filename;
+  private final int width;
+  private final int height;
+  private final boolean visible;
+  private final BlendMode blendMode;
+
+  /**
+   * Constructs a {@code LayerInfo} object.
+   *
+   * @param name      the name of the layer
+   * @param filename  the filename of the image of the layer, or null if it has no image
+   * @param width     the width of the image of the layer, or 0 if it has no image
+   * @param height    the height of the image of the layer, or 0 if it has no image
+   * @param visible   the visibility of the layer
+   * @param blendMode the blend mode of the layer
+   * @throws IllegalArgumentException if the name or blend mode is null or the size is negative
+   */
+  public LayerInfo(String name, String filename, int width, int height, boolean visible,
+      BlendMode blendMode) throws IllegalArgumentException {
+    if (name == null || blendMode == null) {
+      throw new IllegalArgumentException("Name and blend mode cannot be null!");
+    }
+    if (width < 0 || height < 0) {
+      throw new IllegalArgumentException("Size cannot be negative!");
+    }
+    this.name = name;
+    this.filename = filename;
+    this.width = width;
+    this.height = height;
+    this.visible = visible;
+    this.blendMode = blendMode;
+  }
+
+  /**
+   * Gets the name of the layer.
+   *
+   * @return the name of the layer
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Determines whether the layer has an image.
+   *
+   * @return true if the layer has an image
+   */
+  public boolean hasImage() {
+    return this.filename != null;
+  }
+
+  /**
+   * Gets the filename of the image of the layer.
+   *
+   * @return the filename of the image, or null if the layer has no image
+   */
+  public String getFilename() {
+    return this.filename;
+  }
+
+  /**
+   * Gets the width of the image of the layer.
+   *
+   * @return the width of the image, or 0 if the layer has no image
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Gets the height of the image of the layer.
+   *
+   * @return the height of the image, or 0 if the layer has no image
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Gets the visibility of the layer.
+   *
+   * @return true if the layer is visible
+   */
+  public boolean isVisible() {
+    return this.visible;
+  }
+
+  /**
+   * Gets the blend mode of the layer.
+   *
+   * @return the blend mode of the layer
+   */
+  public BlendMode getBlendMode() {
+    return this.blendMode;
+  }
+
+  /**
+   * Describes the layer the same way {@link Layer#toString()} does.
+   *
+   * @return the name, image filename and visibility of the layer
+   */
+  @Override
+  public String toString() {
+    if (this.filename == null) {
+      return "Name of Layer: " + this.name
+          + ", No Image Associated With This Layer"
+          + ", Visibility: " + this.visible;
+    } else {
+      return "Name of Layer: " + this.name + ", Image Filename: " + this.filename
+          + ", Visibility: " + this.visible;
+    }
+  }
+}
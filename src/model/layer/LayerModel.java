@@ -1,28 +1,89 @@
 package model.layer;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import model.color.ColorTransformEngine;
+import model.color.IColorTransformation;
 import model.image.IImage;
+import model.image.IImageView;
 
 
 /**
  * Represents a group of layers of {@code IImage} that can add/remove images from the group of
  * layers and apply different image/layer operations such as filtering/color transforming,
  * loading/saving multi-layered images.
+ *
+ * <p>A model can defer its color transformations, in which case they are queued on their layer
+ * and fused into a single pass over the image when the model is flushed (or when the pixels of
+ * the layer are read), instead of walking and reallocating the image once per transformation.
+ *
+ * <p>Every change made through the model is recorded in an undo history of compact deltas (see
+ * {@link History}), whose pixels are kept within a memory budget of a quarter of the maximum heap
+ * size unless set otherwise. Loading a multi-layered image starts a new history.
+ *
+ * <p>Layers are looked up by name through an index kept alongside the list of layers, and the size
+ * of the canvas is fixed by the first image loaded into the model, so neither looking up a layer
+ * nor checking a new image of the size of the canvas walks the layers or touches their pixels. An
+ * image of another size only fits once no layer has an image anymore.
  */
 public class LayerModel implements ILayerModel {
 
   private final List<ILayer> layers;
+  // the index of every layer in the list of layers by its name
+  private final Map<String, Integer> indexByName;
+  // the size of every image of the model, or -1 until the first image is loaded, which is stale
+  // once no layer has an image anymore
+  private int canvasWidth;
+  private int canvasHeight;
   private int currentLayerNum;
   private static int count;
+  private final boolean deferred;
+  // the engine that applies the deferred color transformations of every layer
+  private ColorTransformEngine engine;
+  // the flattened image of the last save, which is only recomputed where the layers changed
+  private final FlattenCache flattenCache;
+  private final History history;
 
   /**
-   * Constructs a {@code Layers} object with an empty ArrayList.
+   * Constructs a {@code Layers} object with an empty ArrayList, which applies every operation
+   * straight away.
    */
   public LayerModel() {
+    this(false);
+  }
+
+  /**
+   * Constructs a {@code Layers} object with an empty ArrayList.
+   *
+   * @param deferred true if color transformations should be queued until the model is flushed
+   */
+  public LayerModel(boolean deferred) {
+    this(deferred, LayerCompositor.getDefault());
+  }
+
+  /**
+   * Constructs a {@code Layers} object with an empty ArrayList, which flattens its layers with the
+   * given compositor.
+   *
+   * @param deferred   true if color transformations should be queued until the model is flushed
+   * @param compositor the compositor to flatten the layers with
+   * @throws IllegalArgumentException if the compositor is null
+   */
+  public LayerModel(boolean deferred, LayerCompositor compositor)
+      throws IllegalArgumentException {
     this.layers = new ArrayList<>();
+    this.indexByName = new HashMap<>();
+    this.canvasWidth = -1;
+    this.canvasHeight = -1;
     currentLayerNum = -1;
     count = 0;
+    this.deferred = deferred;
+    this.engine = ColorTransformEngine.getDefault();
+    this.flattenCache = new FlattenCache(compositor);
+    this.history = new History(Runtime.getRuntime().maxMemory() / 4);
   }
 
   @Override
@@ -35,7 +96,9 @@ public class LayerModel implements ILayerModel {
       if (layers.isEmpty()) {
         currentLayerNum = 0;
       }
-      this.layers.add(new Layer(name));
+      ILayer layer = new Layer(name);
+      this.addLayer(layer);
+      this.history.record(new History.CreateEntry(layer, this.layers.size() - 1));
     } else {
       throw new IllegalArgumentException("Layer already exists!");
     }
@@ -59,8 +122,11 @@ public class LayerModel implements ILayerModel {
       throw new IllegalArgumentException("No current layer exists!");
     }
 
-    if (sameDimensions(image)) {
-      this.layers.get(currentLayerNum).setImage(image);
+    if (this.fitsCanvas(image)) {
+      ILayer current = this.layers.get(currentLayerNum);
+      ILayer snapshot = current.copy();
+      current.setImage(image);
+      this.history.record(new History.SnapshotEntry(current, snapshot));
     } else {
       throw new IllegalArgumentException("Image(s) are not the same dimension!");
     }
@@ -76,10 +142,9 @@ public class LayerModel implements ILayerModel {
 
     for (ILayer importedLayer : importedLayers) {
       // adds images if they are all the same dimension
-      if (importedLayer.getImage() == null) {
-        this.layers.add(importedLayer);
-      } else if (this.sameDimensions(importedLayer.getImage())) {
-        this.layers.add(importedLayer);
+      IImageView image = importedLayer.getImageView();
+      if (image == null || this.fitsCanvas(image)) {
+        this.addLayer(importedLayer);
       } else {
         throw new IllegalArgumentException("Image(s) are not the same dimension!");
       }
@@ -88,44 +153,42 @@ public class LayerModel implements ILayerModel {
     if (layersEmptyBefore && this.layers.size() != 0) {
       this.currentLayerNum = 0;
     }
+    this.history.clear();
   }
 
   /**
-   * Determines whether or not the given image has the same dimensions as the first image in the
-   * list of layers. If there are no layers in the list of layers, return true.
+   * Determines whether or not the given image has the same dimensions as the canvas of the model,
+   * fixing the size of the canvas to the size of the image if no layer has an image.
    *
    * @param image the image to be checked if the dimensions are appropriate
-   * @return true if the given image has the same dimensions as the first or if the image is the
-   *         first layer in the list of layers
+   * @return true if the given image has the same dimensions as the canvas or if no layer has an
+   *         image
    */
-  private boolean sameDimensions(IImage image) {
-    if (!layers.isEmpty()) {
-
-      if (layers.size() == 1) {
-        if (layers.get(0).getImage() == null) {
-          return true;
-        }
-
-        int firstImageHeight = this.layers.get(0).getImage().getHeight();
-        int firstImageWidth = this.layers.get(0).getImage().getWidth();
-
-        return (firstImageWidth == image.getWidth()) && (firstImageHeight == image.getHeight());
-      }
+  private boolean fitsCanvas(IImageView image) {
+    if (this.canvasWidth == image.getWidth() && this.canvasHeight == image.getHeight()) {
+      return true;
+    }
+    // the images that fixed the canvas may all be gone, such as after undoing the only load
+    if (this.canvasWidth != -1 && this.anyLayerHasImage()) {
+      return false;
+    }
+    this.canvasWidth = image.getWidth();
+    this.canvasHeight = image.getHeight();
+    return true;
+  }
 
-      for (ILayer layer : layers) {
-        if (layer.getImage() != null) {
-          int height1 = layer.getImage().getHeight();
-          int width1 = layer.getImage().getHeight();
-          int height2 = image.getHeight();
-          int width2 = image.getHeight();
-
-          if ((height1 != height2) || (width1 != width2)) {
-            return false;
-          }
-        }
+  /**
+   * Determines whether any layer of the model has an image, without flushing or reading any.
+   *
+   * @return true if at least one layer has an image
+   */
+  private boolean anyLayerHasImage() {
+    for (ILayer layer : this.layers) {
+      if (layer.hasImage()) {
+        return true;
       }
     }
-    return true;
+    return false;
   }
 
   @Override
@@ -134,8 +197,9 @@ public class LayerModel implements ILayerModel {
       throw new IllegalArgumentException("Layer name cannot be null!");
     }
 
-    if (this.getIndexBasedOnName(layerName) != -1) {
-      this.currentLayerNum = this.getIndexBasedOnName(layerName);
+    int index = this.getIndexBasedOnName(layerName);
+    if (index != -1) {
+      this.currentLayerNum = index;
     } else {
       throw new IllegalArgumentException("Current cannot be set!");
     }
@@ -143,15 +207,148 @@ public class LayerModel implements ILayerModel {
 
   /**
    * Determines if the blur, gray, sepia, or sharpen can be applied to an image by checking if the
-   * current layer has an image and that the layer is visible.
+   * current layer has an image and that the layer is visible. The layer is not flushed, so the
+   * color transformations of a deferred model keep being queued.
    *
    * @return true if the current layer has an image and that it is visible.
    */
   private boolean canApplyOperation() {
-    return (this.currentLayerNum != -1 && this.layers.get(this.currentLayerNum).getImage() != null
+    return (this.currentLayerNum != -1
+        && this.layers.get(this.currentLayerNum).hasImage()
         && this.layers.get(this.currentLayerNum).isVisible());
   }
 
+  @Override
+  public void colorTransformCurrent(IColorTransformation transformation)
+      throws IllegalArgumentException {
+    if (transformation == null) {
+      throw new IllegalArgumentException("Transformation cannot be null!");
+    }
+    if (!this.canApplyOperation()) {
+      throw new IllegalArgumentException("No visible image in the current layer!");
+    }
+
+    ILayer current = this.layers.get(this.currentLayerNum);
+    ILayer snapshot = current.copy();
+    if (this.deferred) {
+      current.deferColorTransform(transformation);
+      this.history.record(new History.SnapshotEntry(current, snapshot));
+    } else {
+      current.setImage(transformation.apply(current.getImage()));
+      this.history.record(History.colorTransform(current, snapshot));
+    }
+  }
+
+  @Override
+  public void flipCurrentHorizontally() throws IllegalArgumentException {
+    ILayer current = this.getCurrentLayer();
+    current.flippedImageH();
+    this.history.record(new History.FlipEntry(current, true));
+  }
+
+  @Override
+  public void flipCurrentVertically() throws IllegalArgumentException {
+    ILayer current = this.getCurrentLayer();
+    current.flippedImageV();
+    this.history.record(new History.FlipEntry(current, false));
+  }
+
+  @Override
+  public void setCurrentBlendMode(BlendMode mode) throws IllegalArgumentException {
+    ILayer current = this.getCurrentLayer();
+    BlendMode before = current.getBlendMode();
+    current.setBlendMode(mode);
+    if (before != mode) {
+      this.history.record(new History.BlendEntry(current, before, mode));
+    }
+  }
+
+  @Override
+  public void undo() throws IllegalArgumentException {
+    this.history.undo(this);
+  }
+
+  @Override
+  public void redo() throws IllegalArgumentException {
+    this.history.redo(this);
+  }
+
+  @Override
+  public void setHistoryBudget(long bytes) throws IllegalArgumentException {
+    this.history.setBudget(bytes);
+  }
+
+  @Override
+  public void setEngine(ColorTransformEngine engine) throws IllegalArgumentException {
+    if (engine == null) {
+      throw new IllegalArgumentException("Engine cannot be null!");
+    }
+    this.engine = engine;
+    for (ILayer layer : this.layers) {
+      layer.setEngine(engine);
+    }
+  }
+
+  /**
+   * Removes the layer at the given index and closes it, keeping the current layer the same if it is
+   * not the removed one.
+   *
+   * @param index the index of the layer to remove
+   */
+  void removeLayer(int index) {
+    this.layers.remove(index).close();
+    this.reindex();
+    if (this.layers.isEmpty()) {
+      this.currentLayerNum = -1;
+      this.canvasWidth = -1;
+      this.canvasHeight = -1;
+    } else if (this.currentLayerNum >= index && this.currentLayerNum > 0) {
+      this.currentLayerNum--;
+    }
+  }
+
+  /**
+   * Inserts the given layer at the given index, keeping the current layer the same.
+   *
+   * @param index the index to insert the layer at
+   * @param layer the layer to insert
+   */
+  void insertLayer(int index, ILayer layer) {
+    layer.setEngine(this.engine);
+    this.layers.add(index, layer);
+    this.reindex();
+    if (this.currentLayerNum == -1) {
+      this.currentLayerNum = 0;
+    } else if (this.currentLayerNum >= index) {
+      this.currentLayerNum++;
+    }
+  }
+
+  @Override
+  public void close() {
+    for (ILayer layer : this.layers) {
+      layer.close();
+    }
+    this.layers.clear();
+    this.indexByName.clear();
+    this.canvasWidth = -1;
+    this.canvasHeight = -1;
+    this.currentLayerNum = -1;
+    this.history.clear();
+  }
+
+  @Override
+  public IImage flatten() throws IllegalArgumentException {
+    return this.flattenCache.flatten(this.layers);
+  }
+
+  @Override
+  public void flush() {
+    for (ILayer layer : this.layers) {
+      layer.flush();
+    }
+  }
+
 
 
   /**
@@ -161,12 +358,30 @@ public class LayerModel implements ILayerModel {
    * @return The index of the desired layer based on its name. Returns -1 if no such layer exists.
    */
   private int getIndexBasedOnName(String layerName) {
-    for (int i = 0; i < layers.size(); i++) {
-      if (layers.get(i).getName().equals(layerName)) {
-        return i;
-      }
+    return this.indexByName.getOrDefault(layerName, -1);
+  }
+
+  /**
+   * Adds the given layer after every other layer, applying its deferred color transformations with
+   * the engine of this model.
+   *
+   * @param layer the layer to add
+   */
+  private void addLayer(ILayer layer) {
+    layer.setEngine(this.engine);
+    this.layers.add(layer);
+    this.indexByName.putIfAbsent(layer.getName(), this.layers.size() - 1);
+  }
+
+  /**
+   * Rebuilds the index of the layers by name after layers were inserted or removed in the middle of
+   * the list of layers. The first of the layers with the same name is the one found by its name.
+   */
+  private void reindex() {
+    this.indexByName.clear();
+    for (int i = 0; i < this.layers.size(); i++) {
+      this.indexByName.putIfAbsent(this.layers.get(i).getName(), i);
     }
-    return -1;
   }
 
 
@@ -175,18 +390,26 @@ public class LayerModel implements ILayerModel {
     List<ILayer> newList = new ArrayList<>();
 
     for (ILayer iLayer : layers) {
-      ILayer layer = new Layer(iLayer.getName());
-      layer.setVisibility(iLayer.isVisible());
-      if (iLayer.getImage() != null) {
-        layer.setImage(iLayer.getImage());
-      }
-
-      newList.add(layer);
+      newList.add(iLayer.copy());
     }
 
     return newList;
   }
 
+  @Override
+  public List<LayerInfo> getLayerInfo() {
+    List<LayerInfo> info = new ArrayList<>(this.layers.size());
+    for (ILayer layer : this.layers) {
+      info.add(layer.getInfo());
+    }
+    return Collections.unmodifiableList(info);
+  }
+
+  @Override
+  public int getCurrentIndex() {
+    return this.currentLayerNum;
+  }
+
   @Override
   public ILayer getCurrentLayer() throws IllegalArgumentException {
     if (currentLayerNum < 0 || currentLayerNum > layers.size() - 1) {
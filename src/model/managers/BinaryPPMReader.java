@@ -0,0 +1,343 @@
+package model.managers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import model.image.IImage;
+import model.image.Image;
+import model.image.PackedRGB;
+import model.image.TileCache;
+import model.image.TiledImage;
+
+/**
+ * Represents a reader of binary PPM (P6) and PGM (P5) images. The file is memory-mapped, so the
+ * pixel data is decoded straight from the mapped buffer into a packed raster without any
+ * intermediate strings or copies. Grayscale (P5) images are loaded with equal red, green, and blue
+ * values.
+ *
+ * <p>Images with more than {@link #MAX_IN_MEMORY_PIXELS} pixels are decoded into a {@link
+ * TiledImage} in the default {@link TileCache}, a window of rows at a time, so they are never held
+ * in memory at once.
+ */
+public class BinaryPPMReader {
+
+  // the largest region of the file that is mapped at once
+  private static final int MAX_WINDOW = 1 << 28;
+  // the approximate number of pixels decoded at a time into a tiled image
+  private static final int TILED_CHUNK_PIXELS = 1 << 22;
+
+  /**
+   * The largest number of pixels of an image that is read into memory, beyond which it is read into
+   * a {@link TiledImage} instead (a quarter of a gigapixel, or a raster of 1 GiB).
+   */
+  public static final long MAX_IN_MEMORY_PIXELS = 1L << 28;
+
+  private BinaryPPMReader() {
+    // static helpers only
+  }
+
+  /**
+   * Reads the magic number (the first two bytes) of the file with the given name.
+   *
+   * @param filename the path of the file
+   * @return the magic number of the file such as {@code "P3"} or {@code "P6"}, or null if the file
+   *         does not exist or is too short
+   * @throws IllegalArgumentException if the filename is null
+   */
+  public static String readMagicNumber(String filename) throws IllegalArgumentException {
+    if (filename == null) {
+      throw new IllegalArgumentException("No valid filename given.");
+    }
+    try (InputStream in = Files.newInputStream(Paths.get(filename))) {
+      int first = in.read();
+      int second = in.read();
+      if (first == -1 || second == -1) {
+        return null;
+      }
+      return "" + (char) first + (char) second;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the binary PPM or PGM image from the file with the given name.
+   *
+   * @param filename the path of the file
+   * @return the image stored in the file, named after the given filename, which is a {@link
+   *         TiledImage} if it has more than {@link #MAX_IN_MEMORY_PIXELS} pixels
+   * @throws IllegalArgumentException if the filename is null, the file is not found, cannot be read
+   *                                  or is not a valid binary PPM or PGM file
+   */
+  public static IImage readFile(String filename) throws IllegalArgumentException {
+    if (filename == null) {
+      throw new IllegalArgumentException("No valid filename given.");
+    }
+    Path path = Paths.get(filename);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return read(channel, filename);
+    } catch (NoSuchFileException e) {
+      throw new IllegalArgumentException("File " + filename + " not found!");
+    } catch (IOException e) {
+      throw new IllegalArgumentException("File " + filename + " could not be read!");
+    }
+  }
+
+  /**
+   * Reads a binary PPM or PGM image from the given channel.
+   *
+   * @param channel  the channel of the file to read
+   * @param filename the name to give to the image
+   * @return the image read from the channel
+   * @throws IOException              if reading from the channel fails
+   * @throws IllegalArgumentException if the channel does not contain a valid binary image
+   */
+  private static IImage read(FileChannel channel, String filename)
+      throws IOException, IllegalArgumentException {
+    long size = channel.size();
+    MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0, Math.min(size, MAX_WINDOW));
+    HeaderCursor cursor = new HeaderCursor(header);
+
+    if (cursor.next() != 'P') {
+      throw new IllegalArgumentException("Invalid binary file: should begin with P5 or P6");
+    }
+    int type = cursor.next();
+    if (type != '5' && type != '6') {
+      throw new IllegalArgumentException("Invalid binary file: should begin with P5 or P6");
+    }
+    int width = cursor.nextInt();
+    int height = cursor.nextInt();
+    int maxValue = cursor.nextInt();
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Invalid binary file: bad dimensions.");
+    }
+    if (maxValue <= 0 || maxValue > 65535) {
+      throw new IllegalArgumentException("Invalid binary file: bad maximum value.");
+    }
+
+    int channels = type == '6' ? 3 : 1;
+    int bytesPerSample = maxValue < 256 ? 1 : 2;
+    int bytesPerPixel = channels * bytesPerSample;
+    long totalPixels = (long) width * height;
+    long dataStart = cursor.position();
+    if (size - dataStart < totalPixels * bytesPerPixel) {
+      throw new IllegalArgumentException("Invalid binary file: pixel data is truncated.");
+    }
+    if (totalPixels > MAX_IN_MEMORY_PIXELS) {
+      return readTiled(channel, filename, width, height, dataStart, channels, bytesPerSample,
+          maxValue);
+    }
+
+    int numPixels = (int) totalPixels;
+    int[] raster = new int[numPixels];
+    int pixelsPerWindow = MAX_WINDOW / bytesPerPixel;
+    for (int pixel = 0; pixel < numPixels; pixel += pixelsPerWindow) {
+      int count = Math.min(pixelsPerWindow, numPixels - pixel);
+      MappedByteBuffer data = channel.map(MapMode.READ_ONLY,
+          dataStart + (long) pixel * bytesPerPixel, (long) count * bytesPerPixel);
+      if (channels == 3) {
+        decodeColor(data, raster, pixel, count, bytesPerSample, maxValue);
+      } else {
+        decodeGray(data, raster, pixel, count, bytesPerSample, maxValue);
+      }
+    }
+
+    return new Image(width, height, raster, null, filename, channels == 3 ? "P6" : "P5");
+  }
+
+  /**
+   * Decodes the pixel data of a binary image into a new {@link TiledImage}, a window of whole rows
+   * at a time.
+   *
+   * @param channel        the channel of the file to read
+   * @param filename       the name to give to the image
+   * @param width          the width of the image
+   * @param height         the height of the image
+   * @param dataStart      the position of the pixel data in the file
+   * @param channels       the number of samples of every pixel (1 or 3)
+   * @param bytesPerSample the number of bytes of every sample (1 or 2)
+   * @param maxValue       the maximum value of a sample
+   * @return the image read from the channel
+   * @throws IOException              if reading from the channel fails
+   * @throws IllegalArgumentException if a sample is greater than the maximum value
+   */
+  private static TiledImage readTiled(FileChannel channel, String filename, int width, int height,
+      long dataStart, int channels, int bytesPerSample, int maxValue)
+      throws IOException, IllegalArgumentException {
+    TiledImage image = new TiledImage(width, height, filename, channels == 3 ? "P6" : "P5",
+        TileCache.getDefault());
+    long bytesPerRow = (long) width * channels * bytesPerSample;
+    int rowsPerChunk = (int) Math.max(1, Math.min(TILED_CHUNK_PIXELS / width,
+        MAX_WINDOW / bytesPerRow));
+    int[] rows = new int[rowsPerChunk * width];
+    for (int row = 0; row < height; row += rowsPerChunk) {
+      int numRows = Math.min(rowsPerChunk, height - row);
+      MappedByteBuffer data = channel.map(MapMode.READ_ONLY, dataStart + row * bytesPerRow,
+          numRows * bytesPerRow);
+      if (channels == 3) {
+        decodeColor(data, rows, 0, numRows * width, bytesPerSample, maxValue);
+      } else {
+        decodeGray(data, rows, 0, numRows * width, bytesPerSample, maxValue);
+      }
+      image.setRows(row, numRows, rows, 0);
+    }
+    return image;
+  }
+
+  /**
+   * Decodes the given number of RGB pixels from the given buffer into the raster.
+   *
+   * @param data           the mapped pixel data
+   * @param raster         the raster to decode into
+   * @param start          the index in the raster of the first pixel
+   * @param count          the number of pixels to decode
+   * @param bytesPerSample the number of bytes of every sample (1 or 2)
+   * @param maxValue       the maximum value of a sample
+   */
+  private static void decodeColor(MappedByteBuffer data, int[] raster, int start, int count,
+      int bytesPerSample, int maxValue) {
+    if (bytesPerSample == 1 && maxValue == 255) {
+      for (int i = 0, b = 0; i < count; i++, b += 3) {
+        raster[start + i] = PackedRGB.pack(data.get(b) & 0xFF, data.get(b + 1) & 0xFF,
+            data.get(b + 2) & 0xFF);
+      }
+      return;
+    }
+    for (int i = 0, b = 0; i < count; i++, b += 3 * bytesPerSample) {
+      int red = sample(data, b, bytesPerSample, maxValue);
+      int green = sample(data, b + bytesPerSample, bytesPerSample, maxValue);
+      int blue = sample(data, b + 2 * bytesPerSample, bytesPerSample, maxValue);
+      raster[start + i] = PackedRGB.pack(red, green, blue);
+    }
+  }
+
+  /**
+   * Decodes the given number of gray pixels from the given buffer into the raster.
+   *
+   * @param data           the mapped pixel data
+   * @param raster         the raster to decode into
+   * @param start          the index in the raster of the first pixel
+   * @param count          the number of pixels to decode
+   * @param bytesPerSample the number of bytes of every sample (1 or 2)
+   * @param maxValue       the maximum value of a sample
+   */
+  private static void decodeGray(MappedByteBuffer data, int[] raster, int start, int count,
+      int bytesPerSample, int maxValue) {
+    for (int i = 0, b = 0; i < count; i++, b += bytesPerSample) {
+      int gray = sample(data, b, bytesPerSample, maxValue);
+      raster[start + i] = PackedRGB.pack(gray, gray, gray);
+    }
+  }
+
+  /**
+   * Reads one sample at the given index and scales it into 0 to 255.
+   *
+   * @param data           the mapped pixel data
+   * @param index          the index of the sample in the buffer
+   * @param bytesPerSample the number of bytes of the sample (1 or 2, most significant first)
+   * @param maxValue       the maximum value of a sample
+   * @return the scaled sample
+   * @throws IllegalArgumentException if the sample is greater than the maximum value
+   */
+  private static int sample(MappedByteBuffer data, int index, int bytesPerSample, int maxValue) {
+    int value = data.get(index) & 0xFF;
+    if (bytesPerSample == 2) {
+      value = (value << 8) | (data.get(index + 1) & 0xFF);
+    }
+    if (value > maxValue) {
+      throw new IllegalArgumentException("Invalid binary file: sample is greater than maximum "
+          + "value.");
+    }
+    return maxValue == 255 ? value : (value * 255 + maxValue / 2) / maxValue;
+  }
+
+  /**
+   * Represents a cursor over the text header of a binary image, which skips whitespace and
+   * comments between the tokens of the header.
+   */
+  private static class HeaderCursor {
+
+    private final MappedByteBuffer header;
+
+    /**
+     * Constructs a {@code HeaderCursor} object at the start of the given buffer.
+     *
+     * @param header the mapped start of the file
+     */
+    HeaderCursor(MappedByteBuffer header) {
+      this.header = header;
+    }
+
+    /**
+     * Returns the next byte of the header.
+     *
+     * @return the next byte of the header, or -1 at the end of the buffer
+     */
+    int next() {
+      return this.header.hasRemaining() ? this.header.get() & 0xFF : -1;
+    }
+
+    /**
+     * Gets the position of the cursor in the file.
+     *
+     * @return the position of the cursor in the file
+     */
+    long position() {
+      return this.header.position();
+    }
+
+    /**
+     * Reads the next non-negative decimal integer of the header along with the single whitespace
+     * byte that follows it.
+     *
+     * @return the integer that was read
+     * @throws IllegalArgumentException if the header does not contain an integer
+     */
+    int nextInt() throws IllegalArgumentException {
+      int c = this.next();
+      while (c == '#' || isWhitespace(c)) {
+        if (c == '#') {
+          do {
+            c = this.next();
+          } while (c != '\n' && c != '\r' && c != -1);
+        }
+        c = this.next();
+      }
+      if (c < '0' || c > '9') {
+        throw new IllegalArgumentException("Invalid binary file: malformed header.");
+      }
+
+      int value = 0;
+      do {
+        value = value * 10 + (c - '0');
+        if (value > 100_000_000) {
+          throw new IllegalArgumentException("Invalid binary file: number is too large.");
+        }
+        c = this.next();
+      } while (c >= '0' && c <= '9');
+
+      if (!isWhitespace(c)) {
+        throw new IllegalArgumentException("Invalid binary file: malformed header.");
+      }
+      return value;
+    }
+
+    /**
+     * Determines whether the given byte is whitespace in a PPM header.
+     *
+     * @param c the given byte
+     * @return true if the byte is a space, tab, line feed, vertical tab, form feed or carriage
+     *         return
+     */
+    private static boolean isWhitespace(int c) {
+      return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == 0x0B || c == '\f';
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package model.managers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import model.image.IImage;
+import model.image.IMappableImage;
+
+/**
+ * Represents a cache of the images decoded from files, which is shared by every load of the
+ * process. An image is found again by the canonical path of its file along with the identity, size
+ * and last modified time of the file, so a file that is written or replaced again is decoded
+ * again. The cache hands out copies of its images, which share their pixels until either of them
+ * is mutated, so loading the same file any number of times costs one decode.
+ *
+ * <p>The least recently used images are evicted once the images in the cache take more bytes than
+ * the budget of the cache. Images larger than the budget, and images kept out of the heap (see
+ * {@link IMappableImage}), are not cached. Images are named after the filename they were first
+ * loaded with.
+ */
+public final class DecodedImageCache {
+
+  private static final DecodedImageCache DEFAULT =
+      new DecodedImageCache(Runtime.getRuntime().maxMemory() / 8);
+
+  private final long budget;
+  // the cached images, from the least to the most recently used
+  private final LinkedHashMap<Key, IImage> images;
+  private long bytes;
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructs an empty {@code DecodedImageCache} object with the given memory budget.
+   *
+   * @param budget the maximum number of bytes of images to keep in memory
+   * @throws IllegalArgumentException if the budget is negative
+   */
+  public DecodedImageCache(long budget) throws IllegalArgumentException {
+    if (budget < 0) {
+      throw new IllegalArgumentException("Budget cannot be negative!");
+    }
+    this.budget = budget;
+    this.images = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Gets the default cache, whose budget is an eighth of the maximum heap size.
+   *
+   * @return the default cache
+   */
+  public static DecodedImageCache getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Gets the maximum number of bytes of images this cache keeps in memory.
+   *
+   * @return the budget of this cache
+   */
+  public long getBudget() {
+    return this.budget;
+  }
+
+  /**
+   * Gets the number of bytes of the images in this cache.
+   *
+   * @return the number of bytes of the cached images
+   */
+  public synchronized long getBytes() {
+    return this.bytes;
+  }
+
+  /**
+   * Gets the number of loads that found their image in this cache.
+   *
+   * @return the number of cache hits
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Gets the number of loads that had to decode their file.
+   *
+   * @return the number of cache misses
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Evicts every image from this cache, keeping its hit and miss counts.
+   */
+  public synchronized void clear() {
+    this.images.clear();
+    this.bytes = 0;
+  }
+
+  /**
+   * Gets the image decoded from the file with the given name, decoding it with the given decoder
+   * if it is not cached. The file is decoded without holding the cache, so loads of other files
+   * are not held up by it.
+   *
+   * @param filename the path of the file
+   * @param decoder  decodes the image from the path of the file
+   * @return a copy of the image of the file, which shares its pixels with the cached image until
+   *         either of them is mutated
+   * @throws IllegalArgumentException if the filename or decoder is null, or as thrown by the
+   *                                  decoder if the file cannot be decoded
+   */
+  public IImage load(String filename, Function<String, IImage> decoder)
+      throws IllegalArgumentException {
+    if (filename == null || decoder == null) {
+      throw new IllegalArgumentException("Filename and decoder cannot be null!");
+    }
+    Key key;
+    try {
+      Path path = Paths.get(filename).toRealPath();
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      key = new Key(path.toString(), attributes.fileKey(), attributes.size(),
+          attributes.lastModifiedTime());
+    } catch (IOException e) {
+      // the decoder reports the file that cannot be read
+      return decoder.apply(filename);
+    }
+
+    synchronized (this) {
+      IImage cached = this.images.get(key);
+      if (cached != null) {
+        this.hits++;
+        return cached.copy();
+      }
+      this.misses++;
+    }
+    IImage image = decoder.apply(filename);
+    long imageBytes = bytesOf(image);
+    if (image instanceof IMappableImage || imageBytes > this.budget) {
+      return image;
+    }
+    // copied before other loads can see the image
+    IImage copy = image.copy();
+    synchronized (this) {
+      // another load may have decoded the same file at the same time, whose image is replaced
+      IImage previous = this.images.put(key, image);
+      this.bytes += imageBytes - (previous == null ? 0 : bytesOf(previous));
+      this.evict();
+    }
+    return copy;
+  }
+
+  /**
+   * Evicts the least recently used images until the cache is within its budget.
+   */
+  private void evict() {
+    Iterator<Map.Entry<Key, IImage>> eldest = this.images.entrySet().iterator();
+    while (this.bytes > this.budget && eldest.hasNext()) {
+      this.bytes -= bytesOf(eldest.next().getValue());
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Gets the number of bytes the pixels of the given image take in memory.
+   *
+   * @param image the image
+   * @return the number of bytes of its colors and alpha
+   */
+  private static long bytesOf(IImage image) {
+    long pixels = (long) image.getWidth() * image.getHeight();
+    return pixels * (image.hasAlpha() ? 5 : 4);
+  }
+
+  /**
+   * Represents the key of a cached image, which is the canonical path, identity, size and last
+   * modified time of its file.
+   */
+  private static final class Key {
+
+    private final String path;
+    private final Object fileKey;
+    private final long size;
+    private final FileTime modified;
+
+    /**
+     * Constructs a {@code Key} object.
+     *
+     * @param path     the canonical path of the file
+     * @param fileKey  the identity of the file, such as its inode, or null if it is not known
+     * @param size     the size of the file, in bytes
+     * @param modified the last modified time of the file
+     */
+    Key(String path, Object fileKey, long size, FileTime modified) {
+      this.path = path;
+      this.fileKey = fileKey;
+      this.size = size;
+      this.modified = modified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return this.path.equals(other.path) && Objects.equals(this.fileKey, other.fileKey)
+          && this.size == other.size && this.modified.equals(other.modified);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.path, this.fileKey, this.size, this.modified);
+    }
+  }
+}
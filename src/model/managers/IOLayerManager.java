@@ -14,7 +14,7 @@ public interface IOLayerManager {
    * @return the ILayers associated with the fields of the class.
    * @throws IllegalArgumentException if any arguments are null/invalid or if the file is malformed
    *                                  (if the lines do not follow the format of layerNum, filename
-   *                                  of image, visibility)
+   *                                  of image, visibility, and an optional checksum)
    */
   List<ILayer> apply() throws IllegalArgumentException;
 }
@@ -1,10 +1,12 @@
 package model.managers;
 
 import model.image.IImage;
-import model.image.Image;
 
 /**
  * Represents a class that manages the given input file and returns the file's associated image.
+ * Plain (P3) and binary (P6) PPM files as well as binary (P5) PGM files are supported, and the
+ * correct reader is chosen based on the magic number at the start of the file. Decoded images are
+ * cached, so a file that is loaded again is only decoded again if it has changed.
  */
 public class InputFilenameManager implements IOManager {
 
@@ -23,8 +25,35 @@ public class InputFilenameManager implements IOManager {
     this.filename = filename;
   }
 
+  /**
+   * Loads the image of the file, which is only decoded if the file was not loaded before or has
+   * changed since (see {@link DecodedImageCache#getDefault()}).
+   *
+   * @return the image of the file
+   * @throws IllegalArgumentException if the file cannot be found, read or decoded
+   */
   @Override
-  public IImage apply() {
-    return new Image(filename);
+  public IImage apply() throws IllegalArgumentException {
+    return DecodedImageCache.getDefault().load(this.filename, InputFilenameManager::decode);
+  }
+
+  /**
+   * Decodes the image of the file with the given name, without caching it, for files that are
+   * loaded only once such as scratch files.
+   *
+   * @param filename the path of the file
+   * @return the image stored in the file
+   * @throws IllegalArgumentException if the filename is null or if the file cannot be found, read
+   *                                  or decoded
+   */
+  public static IImage decode(String filename) throws IllegalArgumentException {
+    if (filename == null) {
+      throw new IllegalArgumentException("Filename is null.");
+    }
+    String magicNumber = BinaryPPMReader.readMagicNumber(filename);
+    if ("P5".equals(magicNumber) || "P6".equals(magicNumber)) {
+      return BinaryPPMReader.readFile(filename);
+    }
+    return PPMReader.readFile(filename);
   }
 }
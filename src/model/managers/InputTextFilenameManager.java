@@ -5,12 +5,13 @@ import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
 import model.layer.ILayer;
 import model.layer.Layer;
 
 /**
  * Represents a class that manages the given input filename and returns the file's associated
- * layer.
+ * layer. The images of the layers are all loaded at once (see {@link LayerIOTasks}).
  */
 public class InputTextFilenameManager implements IOLayerManager {
 
@@ -38,29 +39,42 @@ public class InputTextFilenameManager implements IOLayerManager {
   @Override
   public List<ILayer> apply() {
     Scanner in = new Scanner(this.rd);
-    List<ILayer> layers = new ArrayList<>();
+    List<String> labels = new ArrayList<>();
+    List<Callable<ILayer>> tasks = new ArrayList<>();
 
+    // the whole file is checked before any image is loaded
     while (in.hasNext()) {
       String cmd = in.nextLine();
       String[] tokens = cmd.split("\\s*,\\s*");
-      if (tokens.length != 3) {
+      // the checksum of the layer file, if any, is only used when the layers are saved again
+      if (tokens.length != 3 && tokens.length != 4) {
         throw new IllegalArgumentException("Invalid text file!");
       }
-      ILayer layer;
-      if (!tokens[1].equalsIgnoreCase("noimage")) {
-        int lastIndex = tokens[1].lastIndexOf(".");
-        int firstIndex = tokens[1].lastIndexOf("/");
-        String layerName = tokens[1].substring(firstIndex + 1, lastIndex);
-        layer = new Layer(layerName);
-        layer.setImage(determineCorrectManager(tokens[1]).apply());
+      String filename = tokens[1];
+      boolean visible = Boolean.parseBoolean(tokens[2]);
+      if (!filename.equalsIgnoreCase("noimage")) {
+        int lastIndex = filename.lastIndexOf(".");
+        int firstIndex = filename.lastIndexOf("/");
+        String layerName = filename.substring(firstIndex + 1, lastIndex);
+        IOManager manager = determineCorrectManager(filename);
+        labels.add("layer " + (labels.size() + 1) + " (" + layerName + ")");
+        tasks.add(() -> {
+          ILayer layer = new Layer(layerName);
+          layer.setImage(manager.apply());
+          layer.setVisibility(visible);
+          return layer;
+        });
       } else {
-        layer = new Layer(tokens[1]);
+        labels.add("layer " + (labels.size() + 1));
+        tasks.add(() -> {
+          ILayer layer = new Layer(filename);
+          layer.setVisibility(visible);
+          return layer;
+        });
       }
-      layer.setVisibility(Boolean.parseBoolean(tokens[2]));
-      layers.add(layer);
     }
 
-    return layers;
+    return LayerIOTasks.runAll(labels, tasks, "load");
   }
 
   /**
@@ -77,6 +91,7 @@ public class InputTextFilenameManager implements IOLayerManager {
 
     switch (fileType) {
       case "ppm":
+      case "pgm":
         return new InputFilenameManager(filename);
       default:
         throw new IllegalArgumentException("Cannot load the layer with that file type.");
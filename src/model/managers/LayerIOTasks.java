@@ -0,0 +1,68 @@
+package model.managers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Represents a runner of the reading or writing of the layers of a multi-layered image, which runs
+ * the work of every layer at once on its own virtual thread so that the decoding, encoding and
+ * waiting on the disk of the layers overlap. The results are always given in the order of the
+ * layers, and the errors of all of the layers that failed are reported together.
+ */
+public final class LayerIOTasks {
+
+  private LayerIOTasks() {
+    // static helpers only
+  }
+
+  /**
+   * Runs the given tasks at once, one per layer, and waits for all of them to finish.
+   *
+   * @param <T>    the type of the result of a task
+   * @param labels the label of the layer of every task, such as its number and name, which is
+   *               given in the error of the task
+   * @param tasks  the tasks to run, in the order of the layers
+   * @param action the action the tasks do, such as {@code "load"}, which is given in the errors
+   * @return the result of every task, in the order of the tasks
+   * @throws IllegalArgumentException if any argument is null, if the labels do not match the tasks
+   *                                  or if any task failed, with the error of every failed layer
+   * @throws IllegalStateException    if the calling thread is interrupted while waiting
+   */
+  public static <T> List<T> runAll(List<String> labels, List<Callable<T>> tasks, String action)
+      throws IllegalArgumentException, IllegalStateException {
+    if (labels == null || tasks == null || action == null || labels.size() != tasks.size()) {
+      throw new IllegalArgumentException("Invalid layers or tasks.");
+    }
+    List<Future<T>> futures = new ArrayList<>(tasks.size());
+    List<T> results = new ArrayList<>(tasks.size());
+    StringBuilder errors = new StringBuilder();
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (Callable<T> task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          results.add(futures.get(i).get());
+        } catch (ExecutionException e) {
+          results.add(null);
+          errors.append(errors.length() == 0 ? "" : "; ").append(labels.get(i)).append(": ")
+              .append(e.getCause().getMessage());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while the layers were processed!");
+    }
+
+    if (errors.length() > 0) {
+      throw new IllegalArgumentException("Could not " + action + " every layer! " + errors);
+    }
+    return results;
+  }
+}
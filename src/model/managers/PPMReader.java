@@ -0,0 +1,219 @@
+package model.managers;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import model.image.Image;
+import model.image.PackedRGB;
+
+/**
+ * Represents a reader of plain (P3) PPM images. The bytes of the given stream are tokenized by
+ * hand, through a reusable buffer, and the pixels are parsed directly into a packed raster in a
+ * single pass. Comments (from a {@code #} to the end of the line) may appear anywhere whitespace
+ * is allowed, and samples are scaled to 0 to 255 when the maximum value of the file is not 255.
+ */
+public class PPMReader {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final InputStream in;
+  private final byte[] buffer;
+  private int position;
+  private int limit;
+
+  /**
+   * Constructs a {@code PPMReader} object which reads from the given stream. The reader does its
+   * own buffering, so the stream does not need to be buffered.
+   *
+   * @param in the stream to read the image from
+   * @throws IllegalArgumentException if the given stream is null
+   */
+  public PPMReader(InputStream in) throws IllegalArgumentException {
+    if (in == null) {
+      throw new IllegalArgumentException("Stream cannot be null.");
+    }
+    this.in = in;
+    this.buffer = new byte[BUFFER_SIZE];
+    this.position = 0;
+    this.limit = 0;
+  }
+
+  /**
+   * Reads the image from the file with the given name.
+   *
+   * @param filename the path of the file
+   * @return the image stored in the file, named after the given filename
+   * @throws IllegalArgumentException if the filename is null, the file is not found, cannot be read
+   *                                  or is not a valid plain PPM file
+   */
+  public static Image readFile(String filename) throws IllegalArgumentException {
+    if (filename == null) {
+      throw new IllegalArgumentException("No valid filename given.");
+    }
+    try (InputStream in = new FileInputStream(filename)) {
+      return new PPMReader(in).read(filename);
+    } catch (FileNotFoundException e) {
+      throw new IllegalArgumentException("File " + filename + " not found!");
+    } catch (IOException e) {
+      throw new IllegalArgumentException("File " + filename + " could not be read!");
+    }
+  }
+
+  /**
+   * Reads a plain PPM image from the stream of this reader.
+   *
+   * @param filename the name to give to the image
+   * @return the image read from the stream
+   * @throws IOException              if reading from the stream fails
+   * @throws IllegalArgumentException if the filename is null or the stream is not a valid plain
+   *                                  PPM image
+   */
+  public Image read(String filename) throws IOException, IllegalArgumentException {
+    if (filename == null) {
+      throw new IllegalArgumentException("Filename cannot be null.");
+    }
+    if (this.nextByte() != 'P' || this.nextByte() != '3') {
+      throw new IllegalArgumentException("Invalid PPM file: plain RAW file should begin with P3");
+    }
+    int c = this.nextByte();
+    if (!isWhitespace(c) && c != '#') {
+      throw new IllegalArgumentException("Invalid PPM file: plain RAW file should begin with P3");
+    }
+    if (c == '#') {
+      this.skipComment();
+    }
+
+    int width = this.nextInt();
+    int height = this.nextInt();
+    int maxValue = this.nextInt();
+    if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Invalid PPM file: bad dimensions.");
+    }
+    if (maxValue <= 0 || maxValue > 65535) {
+      throw new IllegalArgumentException("Invalid PPM file: bad maximum value.");
+    }
+
+    int[] raster = new int[width * height];
+    for (int i = 0; i < raster.length; i++) {
+      int red = this.nextSample(maxValue);
+      int green = this.nextSample(maxValue);
+      int blue = this.nextSample(maxValue);
+      raster[i] = PackedRGB.pack(red, green, blue);
+    }
+
+    return new Image(width, height, raster, null, filename, "P3");
+  }
+
+  /**
+   * Reads the next sample of the image and scales it from 0 to the given maximum value into 0 to
+   * 255.
+   *
+   * @param maxValue the maximum value of a sample in the image
+   * @return the scaled sample
+   * @throws IOException              if reading from the stream fails
+   * @throws IllegalArgumentException if the sample is malformed or greater than the maximum value
+   */
+  private int nextSample(int maxValue) throws IOException, IllegalArgumentException {
+    int sample = this.nextInt();
+    if (sample > maxValue) {
+      throw new IllegalArgumentException("Invalid PPM file: sample is greater than maximum value.");
+    }
+    if (maxValue == 255) {
+      return sample;
+    }
+    return (sample * 255 + maxValue / 2) / maxValue;
+  }
+
+  /**
+   * Reads the next non-negative decimal integer from the stream, skipping any whitespace and
+   * comments before it.
+   *
+   * @return the integer that was read
+   * @throws IOException              if reading from the stream fails
+   * @throws IllegalArgumentException if the stream ends or does not contain an integer
+   */
+  private int nextInt() throws IOException, IllegalArgumentException {
+    int c = this.skipSeparators();
+    if (c < '0' || c > '9') {
+      throw new IllegalArgumentException(c == -1 ? "Invalid PPM file: unexpected end of file."
+          : "Invalid PPM file: unexpected character '" + (char) c + "'.");
+    }
+
+    int value = 0;
+    do {
+      value = value * 10 + (c - '0');
+      if (value > 100_000_000) {
+        throw new IllegalArgumentException("Invalid PPM file: number is too large.");
+      }
+      c = this.nextByte();
+    } while (c >= '0' && c <= '9');
+
+    if (c == '#') {
+      this.skipComment();
+    } else if (c != -1 && !isWhitespace(c)) {
+      throw new IllegalArgumentException("Invalid PPM file: unexpected character '" + (char) c
+          + "'.");
+    }
+    return value;
+  }
+
+  /**
+   * Skips whitespace and comments and returns the first byte after them.
+   *
+   * @return the first byte that is not whitespace or part of a comment, or -1 at the end of the
+   *         stream
+   * @throws IOException if reading from the stream fails
+   */
+  private int skipSeparators() throws IOException {
+    int c = this.nextByte();
+    while (true) {
+      if (c == '#') {
+        this.skipComment();
+      } else if (!isWhitespace(c)) {
+        return c;
+      }
+      c = this.nextByte();
+    }
+  }
+
+  /**
+   * Skips the rest of a comment, up to and including the end of its line.
+   *
+   * @throws IOException if reading from the stream fails
+   */
+  private void skipComment() throws IOException {
+    int c;
+    do {
+      c = this.nextByte();
+    } while (c != '\n' && c != '\r' && c != -1);
+  }
+
+  /**
+   * Returns the next byte of the stream, refilling the buffer of this reader when needed.
+   *
+   * @return the next byte of the stream, or -1 at the end of the stream
+   * @throws IOException if reading from the stream fails
+   */
+  private int nextByte() throws IOException {
+    if (this.position == this.limit) {
+      int read = this.in.read(this.buffer, 0, this.buffer.length);
+      if (read <= 0) {
+        return -1;
+      }
+      this.position = 0;
+      this.limit = read;
+    }
+    return this.buffer[this.position++] & 0xFF;
+  }
+
+  /**
+   * Determines whether the given byte is whitespace in a PPM file.
+   *
+   * @param c the given byte
+   * @return true if the byte is a space, tab, line feed, vertical tab, form feed or carriage return
+   */
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == 0x0B || c == '\f';
+  }
+}
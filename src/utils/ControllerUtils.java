@@ -2,9 +2,11 @@
 package utils;
 
 
+import controller.BlendCommand;
 import controller.CreateImageLayerCommand;
 import controller.FlipHorizontallyCommand;
 import controller.FlipVerticallyCommand;
+import controller.FlushCommand;
 import controller.GrayscaleBlueCommand;
 import controller.GrayscaleCommand;
 import controller.GrayscaleGreenCommand;
@@ -12,10 +14,13 @@ import controller.GrayscaleRedCommand;
 import controller.IPhotoCommands;
 import controller.LoadAllCommand;
 import controller.LoadSingleCommand;
+import controller.RedoCommand;
 import controller.SaveAllCommand;
 import controller.SaveSingleCommand;
 import controller.SetCurrentCommand;
+import controller.UndoCommand;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
@@ -24,32 +29,101 @@ import java.util.function.Function;
 /**
  * This class contains utility methods to help get the known controller commands of an
  * IImageProcessingController.
+ *
+ * <p>Every command is registered once, with the number of arguments it takes and how to create it
+ * from them. The commands read from a {@link Scanner} and the commands of a compiled script (see
+ * {@link controller.ScriptCompiler}) are created from the same registry.
  */
 public class ControllerUtils {
 
+  // the number of arguments of every known command
+  private static final Map<String, Integer> ARGUMENTS = new HashMap<>();
+  // how to create every known command from its arguments
+  private static final Map<String, Function<String[], IPhotoCommands>> FACTORIES =
+      new HashMap<>();
+  private static final Map<String, Function<Scanner, IPhotoCommands>> KNOWN_COMMANDS;
+
+  static {
+    register("create", 1, args -> new CreateImageLayerCommand(args[0]));
+    register("current", 1, args -> new SetCurrentCommand(args[0]));
+    register("load", 1, args -> new LoadSingleCommand(args[0]));
+    register("loadall", 1, args -> new LoadAllCommand(args[0]));
+    register("save", 1, args -> new SaveSingleCommand(args[0]));
+    register("saveall", 1, args -> new SaveAllCommand(args[0]));
+    register("blend", 1, args -> new BlendCommand(args[0]));
+    register("flush", 0, args -> new FlushCommand());
+    register("flip-h", 0, args -> new FlipHorizontallyCommand());
+    register("flip-v", 0, args -> new FlipVerticallyCommand());
+    register("grayscale", 0, args -> new GrayscaleCommand());
+    register("grayscale-red", 0, args -> new GrayscaleRedCommand());
+    register("grayscale-blue", 0, args -> new GrayscaleBlueCommand());
+    register("grayscale-green", 0, args -> new GrayscaleGreenCommand());
+    register("undo", 0, args -> new UndoCommand());
+    register("redo", 0, args -> new RedoCommand());
+
+    Map<String, Function<Scanner, IPhotoCommands>> knownCommands = new HashMap<>();
+    for (Map.Entry<String, Integer> command : ARGUMENTS.entrySet()) {
+      Function<String[], IPhotoCommands> factory = FACTORIES.get(command.getKey());
+      int numArguments = command.getValue();
+      knownCommands.put(command.getKey(), scanner -> {
+        String[] args = new String[numArguments];
+        for (int i = 0; i < numArguments; i++) {
+          args[i] = scanner.next();
+        }
+        return factory.apply(args);
+      });
+    }
+    KNOWN_COMMANDS = Collections.unmodifiableMap(knownCommands);
+  }
+
+  /**
+   * Registers a known command.
+   *
+   * @param name         the name of the command
+   * @param numArguments the number of arguments of the command
+   * @param factory      creates the command from its arguments
+   */
+  private static void register(String name, int numArguments,
+      Function<String[], IPhotoCommands> factory) {
+    ARGUMENTS.put(name, numArguments);
+    FACTORIES.put(name, factory);
+  }
+
   /**
    * Represents a static method that gets the known commands that can be used in an {@code
-   * IImageProcessingController} and returns them as a Map.
+   * IImageProcessingController} and returns them as a Map. The map is built once and shared, so it
+   * cannot be modified.
    *
    * @return the map of known commands associated with the controller
    */
   public static Map<String, Function<Scanner, IPhotoCommands>> getKnownCommands() {
-    Map<String, Function<Scanner, IPhotoCommands>> knownCommands =
-        new HashMap<>();
-
-    knownCommands.putIfAbsent("create", scanner -> new CreateImageLayerCommand(scanner.next()));
-    knownCommands.putIfAbsent("current", scanner -> new SetCurrentCommand(scanner.next()));
-    knownCommands.putIfAbsent("load", scanner -> new LoadSingleCommand(scanner.next()));
-    knownCommands.putIfAbsent("loadall", scanner -> new LoadAllCommand(scanner.next()));
-    knownCommands.putIfAbsent("save", scanner -> new SaveSingleCommand(scanner.next()));
-    knownCommands.putIfAbsent("saveall", scanner -> new SaveAllCommand(scanner.next()));
-    knownCommands.putIfAbsent("flip-h", scanner -> new FlipHorizontallyCommand());
-    knownCommands.putIfAbsent("flip-v", scanner -> new FlipVerticallyCommand());
-    knownCommands.putIfAbsent("grayscale", scanner -> new GrayscaleCommand());
-    knownCommands.putIfAbsent("grayscale-red", scanner -> new GrayscaleRedCommand());
-    knownCommands.putIfAbsent("grayscale-blue", scanner -> new GrayscaleBlueCommand());
-    knownCommands.putIfAbsent("grayscale-green", scanner -> new GrayscaleGreenCommand());
-
-    return knownCommands;
+    return KNOWN_COMMANDS;
+  }
+
+  /**
+   * Gets the number of arguments the known command with the given name takes.
+   *
+   * @param name the name of the command
+   * @return the number of arguments of the command, or -1 if the command is not known
+   */
+  public static int getNumArguments(String name) {
+    return ARGUMENTS.getOrDefault(name, -1);
+  }
+
+  /**
+   * Creates the known command with the given name from its arguments.
+   *
+   * @param name the name of the command
+   * @param args the arguments of the command
+   * @return the command
+   * @throws IllegalArgumentException if the command is not known, if the number of arguments is
+   *                                  wrong or if the command rejects its arguments
+   */
+  public static IPhotoCommands createCommand(String name, String... args)
+      throws IllegalArgumentException {
+    if (name == null || args == null || getNumArguments(name) != args.length) {
+      throw new IllegalArgumentException("Invalid command or arguments.");
+    }
+    return FACTORIES.get(name).apply(args);
   }
 }
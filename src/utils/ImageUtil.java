@@ -1,18 +1,20 @@
 package utils;
 
 
+import controller.BatchImageProcessingController;
+import controller.ImageProcessingServer;
 import controller.SimpleIImageProcessingController;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.StringReader;
-import java.util.Scanner;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import controller.IImageProcessingController;
 import model.image.IPixel;
-import model.image.Pixel;
 import model.layer.LayerModel;
+import model.managers.PPMReader;
 
 /**
  * This class contains utility methods to read a PPM image from file and simply print its contents.
@@ -21,7 +23,9 @@ import model.layer.LayerModel;
 public class ImageUtil {
 
   /**
-   * Read an image file in the PPM format and print the colors.
+   * Read an image file in the PPM format and print the colors. The file is parsed by a {@link
+   * PPMReader} and the pixels are only materialised as pixel objects for legacy callers, so callers
+   * that need an image should use {@link PPMReader#readFile(String)} instead.
    *
    * @param filename the path of the file.
    * @return a 2D array of pixels that represents a PPM image
@@ -31,79 +35,41 @@ public class ImageUtil {
     if (filename == null) {
       throw new IllegalArgumentException("No valid filename given.");
     }
-    Scanner sc;
-
-    try {
-      sc = new Scanner(new FileInputStream(filename));
-    } catch (FileNotFoundException e) {
-      throw new IllegalArgumentException("File " + filename + " not found!");
-    }
-    StringBuilder builder = new StringBuilder();
-    //read the file line by line, and populate a string. This will throw away any comment lines
-    while (sc.hasNextLine()) {
-      String s = sc.nextLine();
-      if (s.charAt(0) != '#') {
-        builder.append(s + System.lineSeparator());
-      }
-    }
-
-    // now set up the scanner to read from the string we just built
-    sc = new Scanner(builder.toString());
-
-    String token;
-
-    token = sc.next();
-    if (!token.equals("P3")) {
-      System.out.println("Invalid PPM file: plain RAW file should begin with P3");
-    }
-    int width = sc.nextInt();
-    int height = sc.nextInt();
-
-    Pixel[][] pixels = new Pixel[height][width];
-
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        int r = sc.nextInt();
-        int g = sc.nextInt();
-        int b = sc.nextInt();
-        pixels[i][j] = new Pixel(i, j, r, g, b);
-      }
-    }
-
-    return pixels;
+    return PPMReader.readFile(filename).getImage();
   }
 
   /**
-   * Runs the program to test output for methods within the project.
+   * Runs the program to test output for methods within the project. With no arguments or {@code
+   * -text}, runs the text controller on the standard input. Given {@code -batch <script>
+   * <directory> [<glob>]}, runs the script template in the given file once for every image of the
+   * directory matching the glob (every PPM by default) instead, with one worker per processor.
+   * Given {@code -server [<port>]}, serves image processing requests on the given local port (8080
+   * by default) until the program is stopped (see {@link ImageProcessingServer}).
    *
    * @param args the string argument
    */
   public static void main(String[] args) throws IOException {
-    args[0] = "-text";
-    Appendable out = System.out;
-    switch (args.length) {
-      case 1:
-        if (args[0].equalsIgnoreCase("-text")) {
-          Readable in = new InputStreamReader(System.in);
-          IImageProcessingController controller = new SimpleIImageProcessingController(
-              new LayerModel(), in, out);
+    int workers = Runtime.getRuntime().availableProcessors();
+    if (args.length >= 3 && args[0].equalsIgnoreCase("-batch")) {
+      String script = new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8);
+      new BatchImageProcessingController(script, Paths.get(args[2]),
+          args.length > 3 ? args[3] : "*.ppm", workers, 2 * workers, System.out).processImage();
+    } else if (args.length <= 2 && args.length >= 1 && args[0].equalsIgnoreCase("-server")) {
+      int port = args.length == 2 ? Integer.parseInt(args[1]) : 8080;
+      ImageProcessingServer server = new ImageProcessingServer(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), port), workers, 4 * workers);
+      server.start();
+      System.out.println("Listening on " + server.getAddress() + ".");
+    } else if (args.length == 0 || (args.length == 1 && args[0].equalsIgnoreCase("-text"))) {
+      Readable in = new InputStreamReader(System.in);
+      // color transformations are fused until the image is saved or flushed
+      IImageProcessingController controller = new SimpleIImageProcessingController(
+          new LayerModel(true), in, System.out);
 
-          controller.processImage();
-        } else {
-          // for invalid commands, display error message and quit
-          System.out.println("Invalid command!");
-          new SimpleIImageProcessingController(new LayerModel(), new StringReader("q"), out);
-        }
-        break;
-      default:
-        // for invalid commands, display error message and quit
-        System.out.println("Invalid command!");
-        try {
-          Runtime.getRuntime().exec("taskkill /f /im cmd.exe");
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-        break;
+      controller.processImage();
+    } else {
+      // for invalid commands, display error message and quit
+      System.out.println("Invalid command!");
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,212 @@
+package utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Runs an action over a range of rows of an image in tiles of whole rows, on the calling thread if
+ * the range has too few pixels to be worth splitting, or else in parallel on a {@link
+ * ForkJoinPool}, where every task splits its rows in half until they fit in a single tile. The
+ * engines that transform and flatten images share this class for their parallelism.
+ *
+ * <p>A runner created with its own parallelism level owns its pool, whose threads are stopped once
+ * the runner is closed. The default runner runs on the common pool, which it never stops.
+ */
+public final class TileRunner implements AutoCloseable {
+
+  /**
+   * The default minimum number of pixels for a range of rows to be split between threads.
+   */
+  public static final int DEFAULT_SERIAL_THRESHOLD = 1 << 18;
+
+  private static final TileRunner DEFAULT = new TileRunner(ForkJoinPool.commonPool(), false,
+      DEFAULT_SERIAL_THRESHOLD);
+
+  private final ForkJoinPool pool;
+  // true if the pool was created for this runner, and is shut down with it
+  private final boolean ownsPool;
+  private final int serialThreshold;
+
+  /**
+   * Constructs a {@code TileRunner} object which runs on its own pool with the given parallelism
+   * level.
+   *
+   * @param parallelism     the number of threads to run actions with
+   * @param serialThreshold the minimum number of pixels for a range of rows to be split between
+   *                        threads
+   * @throws IllegalArgumentException if the parallelism is not positive or the threshold is
+   *                                  negative
+   */
+  public TileRunner(int parallelism, int serialThreshold) throws IllegalArgumentException {
+    this(createPool(parallelism), true, serialThreshold);
+  }
+
+  /**
+   * Constructs a {@code TileRunner} object which runs on the given pool.
+   *
+   * @param pool            the pool to run actions on
+   * @param ownsPool        true if the pool is shut down when this runner is closed
+   * @param serialThreshold the minimum number of pixels for a range of rows to be split between
+   *                        threads
+   * @throws IllegalArgumentException if the pool is null or the threshold is negative
+   */
+  private TileRunner(ForkJoinPool pool, boolean ownsPool, int serialThreshold)
+      throws IllegalArgumentException {
+    if (pool == null || serialThreshold < 0) {
+      throw new IllegalArgumentException("Invalid pool or threshold.");
+    }
+    this.pool = pool;
+    this.ownsPool = ownsPool;
+    this.serialThreshold = serialThreshold;
+  }
+
+  /**
+   * Creates a pool with the given parallelism level.
+   *
+   * @param parallelism the number of threads of the pool
+   * @return the new pool
+   * @throws IllegalArgumentException if the parallelism is not positive
+   */
+  private static ForkJoinPool createPool(int parallelism) throws IllegalArgumentException {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive.");
+    }
+    return new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Gets the default runner, which runs on the common pool.
+   *
+   * @return the default runner
+   */
+  public static TileRunner getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Gets the parallelism level of this runner.
+   *
+   * @return the number of threads this runner runs actions with
+   */
+  public int getParallelism() {
+    return this.pool.getParallelism();
+  }
+
+  /**
+   * Determines whether this runner is closed.
+   *
+   * @return true if this runner is closed
+   */
+  public boolean isClosed() {
+    return this.pool.isShutdown();
+  }
+
+  /**
+   * Stops the threads of the pool of this runner once the actions being run are done, if the
+   * runner owns its pool. Closing the default runner does nothing.
+   */
+  @Override
+  public void close() {
+    if (this.ownsPool) {
+      this.pool.shutdown();
+    }
+  }
+
+  /**
+   * Runs the given action over the given rows of an image of the given width, one tile of rows at
+   * a time, and waits for every tile to be done.
+   *
+   * @param fromRow  the first row (inclusive)
+   * @param toRow    the last row (exclusive)
+   * @param width    the number of pixels in a row
+   * @param tileRows the number of rows of a tile
+   * @param action   the action to run over every tile
+   * @throws IllegalArgumentException if the action is null or the number of rows of a tile is not
+   *                                  positive
+   */
+  public void forEachTile(int fromRow, int toRow, int width, int tileRows, TileAction action)
+      throws IllegalArgumentException {
+    if (action == null || tileRows <= 0) {
+      throw new IllegalArgumentException("Invalid action or tile.");
+    }
+    if ((long) (toRow - fromRow) * width < this.serialThreshold
+        || this.pool.getParallelism() == 1) {
+      for (int row = fromRow; row < toRow; row += tileRows) {
+        action.run(row, Math.min(toRow, row + tileRows));
+      }
+    } else {
+      this.pool.invoke(new TileTask(action, fromRow, toRow, tileRows));
+    }
+  }
+
+  /**
+   * Runs the given work on the pool of this runner and waits for its result, so that the parallel
+   * streams and tasks it starts run on the same pool.
+   *
+   * @param work the work to run
+   * @param <T>  the type of the result of the work
+   * @return the result of the work
+   * @throws IllegalArgumentException if the work is null
+   */
+  public <T> T invoke(Supplier<T> work) throws IllegalArgumentException {
+    if (work == null) {
+      throw new IllegalArgumentException("Work cannot be null.");
+    }
+    return this.pool.submit(work::get).join();
+  }
+
+  /**
+   * Represents an action run over a tile of whole rows of an image.
+   */
+  @FunctionalInterface
+  public interface TileAction {
+
+    /**
+     * Runs this action over the given rows.
+     *
+     * @param fromRow the first row of the tile (inclusive)
+     * @param toRow   the last row of the tile (exclusive)
+     */
+    void run(int fromRow, int toRow);
+  }
+
+  /**
+   * Represents the task of running an action over a range of rows, which splits itself in half
+   * until the range is no larger than a single tile. Tasks are never serialized.
+   */
+  @SuppressWarnings("serial")
+  private static final class TileTask extends RecursiveAction {
+
+    private final TileAction action;
+    private final int fromRow;
+    private final int toRow;
+    private final int tileRows;
+
+    /**
+     * Constructs a {@code TileTask} object which runs the action over the given range of rows.
+     *
+     * @param action   the action to run over every tile
+     * @param fromRow  the first row of the range (inclusive)
+     * @param toRow    the last row of the range (exclusive)
+     * @param tileRows the number of rows of a tile
+     */
+    TileTask(TileAction action, int fromRow, int toRow, int tileRows) {
+      this.action = action;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+      this.tileRows = tileRows;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.toRow - this.fromRow <= this.tileRows) {
+        this.action.run(this.fromRow, this.toRow);
+      } else {
+        int middle = (this.fromRow + this.toRow) >>> 1;
+        invokeAll(new TileTask(this.action, this.fromRow, middle, this.tileRows),
+            new TileTask(this.action, middle, this.toRow, this.tileRows));
+      }
+    }
+  }
+}
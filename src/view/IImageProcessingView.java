@@ -15,4 +15,12 @@ public interface IImageProcessingView {
    * @throws IOException if transmission to the provided data destination fails
    */
   void renderMessage(String message) throws IOException;
+
+  /**
+   * Render the layers of the model, along with the current layer, to the provided data
+   * destination.
+   *
+   * @throws IOException if transmission to the provided data destination fails
+   */
+  void renderLayers() throws IOException;
 }
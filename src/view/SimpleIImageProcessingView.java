@@ -1,7 +1,9 @@
 package view;
 
 import java.io.IOException;
+import java.util.List;
 import model.ILayerModelState;
+import model.layer.LayerInfo;
 
 /**
  * Represents the text view for an image processing model which displays the interface to the user
@@ -50,4 +52,22 @@ public class SimpleIImageProcessingView implements IImageProcessingView {
   public void renderMessage(String message) throws IOException {
     out.append(message);
   }
+
+  @Override
+  public void renderLayers() throws IOException {
+    List<LayerInfo> layers = this.model.getLayerInfo();
+    int current = this.model.getCurrentIndex();
+    StringBuilder newString = new StringBuilder();
+
+    for (int i = 0; i < layers.size(); i++) {
+      newString.append("Layer #").append(i + 1).append(", ").append(layers.get(i)).append("\n");
+    }
+    newString.append("Number of valid layers created: ").append(layers.size()).append("\n");
+    if (current == -1) {
+      newString.append("Current not yet set.\n");
+    } else {
+      newString.append("Current Layer: ").append(layers.get(current)).append("\n");
+    }
+    out.append(newString);
+  }
 }
@@ -0,0 +1,153 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import model.color.AColorTransformation;
+import model.color.ColorMatrixCompiler;
+import model.color.ColorTransformEngine;
+import model.color.CompiledColorMatrix;
+import model.color.Grayscale;
+import model.color.GrayscaleBlue;
+import model.color.GrayscaleGreen;
+import model.color.GrayscaleRed;
+import model.color.IRasterKernel;
+import model.color.KernelPipeline;
+import model.color.VectorColorMatrix;
+import model.image.IImage;
+import model.image.Image;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests that the compiled backends of the color transformations (the lookup tables and
+ * the SIMD backend of the Vector API) give exactly the same results as the scalar reference path
+ * of {@link AColorTransformation} for every matrix in {@code model.color}, and that a {@link
+ * ColorTransformEngine} gives the same pixels whether it splits an image between threads or not.
+ */
+public class testColorTransformations {
+
+  private int[] allColors;
+  private AColorTransformation[] transformations;
+  private double[][][] matrices;
+
+  @Before
+  public void setUp() {
+    allColors = new int[1 << 24];
+    for (int i = 0; i < allColors.length; i++) {
+      allColors[i] = i;
+    }
+    transformations = new AColorTransformation[]{new Grayscale(), new GrayscaleRed(),
+        new GrayscaleGreen(), new GrayscaleBlue()};
+    matrices = new double[][][]{
+        {{.2126, .7512, .0722}, {.2126, .7512, .0722}, {.2126, .7512, .0722}},
+        {{1, .7512, .0722}, {1, .7512, .0722}, {1, .7512, .0722}},
+        {{.2126, .7512, 1}, {.2126, .7512, 1}, {.2126, .7512, 1}},
+        {{.2126, 1, .0722}, {.2126, 1, .0722}, {.2126, 1, .0722}}};
+  }
+
+  /**
+   * Applies the given kernel to every possible color, over a range that does not start or end on a
+   * vector boundary so the tail of the kernel is exercised as well.
+   *
+   * @param kernel the kernel to apply
+   * @return the transformed colors
+   */
+  private int[] applyToAllColors(IRasterKernel kernel) {
+    int[] colors = allColors.clone();
+    kernel.applyToRange(colors, 0, 3);
+    kernel.applyToRange(colors, 3, colors.length - 5);
+    kernel.applyToRange(colors, colors.length - 5, colors.length);
+    return colors;
+  }
+
+  @Test
+  public void testLookupTablesMatchScalarReference() {
+    for (int i = 0; i < transformations.length; i++) {
+      assertArrayEquals(applyToAllColors(transformations[i]),
+          applyToAllColors(new CompiledColorMatrix(matrices[i])));
+    }
+  }
+
+  @Test
+  public void testVectorBackendMatchesScalarReference() {
+    assertTrue(ColorMatrixCompiler.isVectorAvailable());
+    for (int i = 0; i < transformations.length; i++) {
+      int[] weights = ColorMatrixCompiler.fixedPointWeights(matrices[i]);
+      assertNotNull(weights);
+      assertArrayEquals(applyToAllColors(transformations[i]),
+          applyToAllColors(new VectorColorMatrix(weights)));
+    }
+  }
+
+  @Test
+  public void testCompilerPicksVectorBackend() {
+    for (double[][] matrix : matrices) {
+      assertEquals(VectorColorMatrix.class,
+          ColorMatrixCompiler.compile(matrix, new Grayscale()).getClass());
+    }
+  }
+
+  @Test
+  public void testFusedPipelineMatchesKernelsAppliedInTurn() {
+    IRasterKernel swap = (raster, from, to) -> {
+      for (int i = from; i < to; i++) {
+        raster[i] = ((raster[i] & 0xFF) << 16) | (raster[i] & 0xFF00) | (raster[i] >> 16);
+      }
+    };
+    IRasterKernel[] chain = {swap, transformations[1], swap, transformations[2].getCompiledKernel(),
+        transformations[0], transformations[3].getCompiledKernel()};
+
+    KernelPipeline pipeline = KernelPipeline.empty();
+    int[] expected = allColors.clone();
+    for (IRasterKernel kernel : chain) {
+      pipeline = pipeline.then(kernel);
+      kernel.applyToRange(expected, 0, expected.length);
+    }
+    // everything after the first grayscale is folded into a table
+    assertEquals(2, pipeline.size());
+    assertArrayEquals(expected, applyToAllColors(pipeline));
+  }
+
+  @Test
+  public void testCompilerFallsBackForNegativeMatrix() {
+    AColorTransformation scalar = new Grayscale();
+    double[][] negative = {{1, -.5, 0}, {0, 1, 0}, {0, 0, 1}};
+    assertEquals(scalar, ColorMatrixCompiler.compile(negative, scalar));
+  }
+
+  @Test
+  public void testParallelEngineMatchesSerialEngine() {
+    // an odd size, so that neither the tiles nor the halves of the rows split evenly
+    int width = 333;
+    int height = 211;
+    int[] colors = new int[width * height];
+    Random random = new Random(5);
+    for (int i = 0; i < colors.length; i++) {
+      colors[i] = random.nextInt(1 << 24);
+    }
+    IImage image = new Image(width, height, colors, "odd");
+    ColorTransformEngine parallel = new ColorTransformEngine(4, 0);
+    ColorTransformEngine serial = new ColorTransformEngine(1, 0);
+    try {
+      for (AColorTransformation transformation : transformations) {
+        int[] expected = serial.run(image, transformation);
+        assertArrayEquals(expected, parallel.run(image, transformation));
+        int[] transformed = new int[width * height];
+        parallel.transform(image, transformation).getRows(0, height, transformed, 0);
+        assertArrayEquals(expected, transformed);
+      }
+    } finally {
+      parallel.close();
+      serial.close();
+    }
+    try {
+      parallel.run(image, transformations[0]);
+      fail("A closed engine should not transform images.");
+    } catch (IllegalStateException e) {
+      assertEquals("The engine is closed.", e.getMessage());
+    }
+  }
+}
@@ -1,27 +1,77 @@
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import controller.BatchImageProcessingController;
+import controller.BlendCommand;
+import controller.CompiledScript;
 import controller.CreateImageLayerCommand;
+import controller.FlipHorizontallyCommand;
+import controller.FlipVerticallyCommand;
+import controller.FlushCommand;
+import controller.GrayscaleBlueCommand;
 import controller.GrayscaleCommand;
+import controller.GrayscaleRedCommand;
 import controller.IImageProcessingController;
 import controller.IPhotoCommands;
+import controller.ImageProcessingServer;
 import controller.LoadAllCommand;
 import controller.LoadSingleCommand;
+import controller.RedoCommand;
 import controller.SaveAllCommand;
 import controller.SaveSingleCommand;
+import controller.ScriptCompiler;
 import controller.SetCurrentCommand;
+import controller.UndoCommand;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import model.ILayerModelState;
+import model.LayerModelState;
+import model.color.ColorTransformEngine;
 import model.color.Grayscale;
+import model.color.IColorTransformation;
+import model.color.IRasterKernel;
+import model.exports.BinaryPPMExportFilename;
+import model.exports.PPMExportFilename;
 import model.image.IImage;
+import model.image.IImageView;
 import model.image.IPixel;
 import model.image.Image;
 import model.image.Pixel;
+import model.layer.BlendMode;
 import model.layer.ILayer;
 import model.layer.ILayerModel;
 import model.layer.Layer;
+import model.layer.LayerCompositor;
+import model.layer.LayerInfo;
 import model.layer.LayerModel;
+import model.managers.BinaryPPMReader;
+import model.managers.DecodedImageCache;
+import model.managers.InputFilenameManager;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -151,6 +201,134 @@ public class testCommands {
     assertEquals("Grid1", model.getLayers().get(0).getImage().getFilename());
   }
 
+  @Test
+  public void testDeferredTransformsRunAsOnePassOnFlush() {
+    int[] raster = new int[97 * 53];
+    for (int i = 0; i < raster.length; i++) {
+      raster[i] = (int) ((i * 2654435761L) & 0xFFFFFF);
+    }
+    IPhotoCommands[] script = {new GrayscaleRedCommand(), new FlipHorizontallyCommand(),
+        new GrayscaleCommand(), new FlipVerticallyCommand(), new GrayscaleBlueCommand()};
+    ILayerModel immediate = new LayerModel();
+    ILayerModel deferred = new LayerModel(true);
+    for (ILayerModel m : new ILayerModel[]{immediate, deferred}) {
+      m.createImageLayer("only");
+      m.loadLayer(new Image(97, 53, raster.clone(), "Random"));
+      for (IPhotoCommands command : script) {
+        command.runCommand(m);
+      }
+    }
+    new FlushCommand().runCommand(deferred);
+    assertEquals(immediate.getCurrentLayer().getImage(), deferred.getCurrentLayer().getImage());
+
+    // every probe logs the kernel and the first pixel of every range it is applied to
+    List<int[]> calls = Collections.synchronizedList(new ArrayList<>());
+    int numProbes = 3;
+    for (int probe = 0; probe < numProbes; probe++) {
+      deferred.colorTransformCurrent(probeTransformation(probe, calls));
+      assertTrue(deferred.getCurrentLayer().hasDeferredOperations());
+      assertTrue(calls.isEmpty());
+    }
+    assertEquals(1, deferred.getLayerInfo().size());
+    assertTrue(calls.isEmpty());
+
+    new FlushCommand().runCommand(deferred);
+    assertFalse(deferred.getCurrentLayer().hasDeferredOperations());
+    long[] pixels = new long[numProbes];
+    int lastProbeFirstCall = -1;
+    int firstProbeLastCall = -1;
+    for (int i = 0; i < calls.size(); i++) {
+      int[] call = calls.get(i);
+      pixels[call[0]] += call[2] - call[1];
+      if (call[0] == numProbes - 1 && lastProbeFirstCall == -1) {
+        lastProbeFirstCall = i;
+      }
+      if (call[0] == 0) {
+        firstProbeLastCall = i;
+      }
+    }
+    for (int probe = 0; probe < numProbes; probe++) {
+      assertEquals(97 * 53, pixels[probe]);
+    }
+    // the chain runs block by block in one pass, rather than one pass per transformation
+    assertTrue(lastProbeFirstCall < firstProbeLastCall);
+  }
+
+  /**
+   * Creates a color transformation which leaves pixels unchanged and logs every range of pixels
+   * its kernel is applied to, as its number, the start and the end of the range.
+   *
+   * @param number the number of the transformation
+   * @param calls  the log of the calls
+   * @return the transformation
+   */
+  private static IColorTransformation probeTransformation(int number, List<int[]> calls) {
+    IRasterKernel kernel = (raster, from, to) -> calls.add(new int[]{number, from, to});
+    return new IColorTransformation() {
+      @Override
+      public IImage apply(IImage image) {
+        return ColorTransformEngine.getDefault().transform(image, kernel);
+      }
+
+      @Override
+      public IRasterKernel getCompiledKernel() {
+        return kernel;
+      }
+    };
+  }
+
+  @Test
+  public void testUndoAndRedoRestoreEveryChange() {
+    ILayerModel m = new LayerModel();
+    m.createImageLayer("only");
+    m.loadLayer(new Image(97, 53, new int[97 * 53], "Black"));
+    int[] raster = new int[97 * 53];
+    for (int i = 0; i < raster.length; i++) {
+      raster[i] = (int) ((i * 2654435761L) & 0xFFFFFF);
+    }
+    IImage loaded = new Image(97, 53, raster, "Random");
+    m.loadLayer(loaded);
+    new GrayscaleCommand().runCommand(m);
+    IImage gray = m.getCurrentLayer().getImage();
+    new FlipHorizontallyCommand().runCommand(m);
+    IImage flipped = m.getCurrentLayer().getImage();
+    new BlendCommand("multiply").runCommand(m);
+
+    new UndoCommand().runCommand(m);
+    assertEquals(BlendMode.NORMAL, m.getCurrentLayer().getBlendMode());
+    new UndoCommand().runCommand(m);
+    assertEquals(gray, m.getCurrentLayer().getImage());
+    new UndoCommand().runCommand(m);
+    assertEquals(loaded, m.getCurrentLayer().getImage());
+    new RedoCommand().runCommand(m);
+    new RedoCommand().runCommand(m);
+    assertEquals(flipped, m.getCurrentLayer().getImage());
+
+    // only the grayscale fits in the budget, along with the flip which costs nothing
+    m.setHistoryBudget(4 * 97 * 53);
+    new UndoCommand().runCommand(m);
+    new UndoCommand().runCommand(m);
+    assertEquals(loaded, m.getCurrentLayer().getImage());
+    try {
+      new UndoCommand().runCommand(m);
+      fail("The oldest changes should have been evicted.");
+    } catch (IllegalArgumentException e) {
+      assertEquals(loaded, m.getCurrentLayer().getImage());
+    }
+  }
+
+  @Test
+  public void testFlipHorizontallyCommandDoesNotChangeCopies() {
+    model.setCurrent("first");
+    IImage before = model.getLayers().get(0).getImage();
+    new FlipHorizontallyCommand().runCommand(model);
+    IImage after = model.getLayers().get(0).getImage();
+
+    assertArrayEquals(grid1, before.getImage());
+    assertEquals(before.getRGB(0, 0), after.getRGB(0, 3));
+    assertEquals(before.getRGB(1, 3), after.getRGB(1, 0));
+    assertEquals(0xFF0000, before.view().getRGB(0, 0));
+  }
 
   @Test(expected = IllegalArgumentException.class)
   public void testNullLoadAllCommand() {
@@ -173,6 +351,495 @@ public class testCommands {
   }
 
 
+  @Test
+  public void testLoadSingleCommandWithCommentsAndMaxValue() throws IOException {
+    File f = File.createTempFile("comments", ".ppm");
+    f.deleteOnExit();
+    try (FileWriter wr = new FileWriter(f)) {
+      wr.write("P3\n# a comment\n\n4 4 # inline comment\n15\n");
+      for (int i = 0; i < 16; i++) {
+        wr.write(i + " 0 15\n");
+      }
+    }
+    model.setCurrent("first");
+    new LoadSingleCommand(f.getPath()).runCommand(model);
+
+    IImage loaded = model.getLayers().get(0).getImage();
+    assertEquals(f.getPath(), loaded.getFilename());
+    assertEquals(0x0000FF, loaded.getRGB(0, 0));
+    assertEquals(0x7700FF, loaded.getRGB(1, 3));
+    assertEquals(0xFF00FF, loaded.getRGB(3, 3));
+  }
+
+  @Test
+  public void testSaveSingleCommandBinaryRoundTrip() throws IOException {
+    File gray = File.createTempFile("gray", ".pgm");
+    gray.deleteOnExit();
+    new SaveSingleCommand(gray.getPath()).runCommand(model);
+    model.createImageLayer("fourth");
+    model.setCurrent("fourth");
+    new LoadSingleCommand(gray.getPath()).runCommand(model);
+
+    IImage loaded = model.getLayers().get(3).getImage();
+    assertEquals(0x363636, loaded.getRGB(0, 0));
+    assertEquals(0x000000, loaded.getRGB(0, 1));
+    assertEquals(0x363636, loaded.getRGB(3, 3));
+
+    File color = File.createTempFile("color", ".ppm");
+    color.deleteOnExit();
+    String colorName = color.getPath().substring(0, color.getPath().length() - 4);
+    new BinaryPPMExportFilename(exImage2, colorName, false).export();
+    new LoadSingleCommand(color.getPath()).runCommand(model);
+    // the image is saved in the format it was loaded in, whatever the file holds by now
+    new PPMExportFilename(exImage2, colorName).export();
+    File saved = File.createTempFile("saved", ".ppm");
+    saved.deleteOnExit();
+    new SaveSingleCommand(saved.getPath()).runCommand(model);
+
+    assertEquals("P6", BinaryPPMReader.readMagicNumber(saved.getPath()));
+    Path dir = Files.createTempDirectory("saveAll");
+    Path layers = dir.resolve("layers");
+    new SaveAllCommand(layers.toString()).runCommand(model);
+    assertEquals("P6", BinaryPPMReader.readMagicNumber(layers.resolve("fourth.ppm").toString()));
+    for (File f : layers.toFile().listFiles()) {
+      f.delete();
+    }
+    layers.toFile().delete();
+    dir.toFile().delete();
+    model.setCurrent("first");
+    new LoadSingleCommand(saved.getPath()).runCommand(model);
+    assertArrayEquals(grid2, model.getLayers().get(0).getImage().getImage());
+  }
+
+  @Test
+  public void testBatchRunsScriptForEveryImage() throws IOException {
+    Path dir = Files.createTempDirectory("batch");
+    for (int i = 0; i < 5; i++) {
+      new BinaryPPMExportFilename(exImage2, dir.resolve("in-" + i).toString(), false).export();
+    }
+    // a space in the path of an image stays within its argument
+    new BinaryPPMExportFilename(exImage2, dir.resolve("in-with space").toString(), false).export();
+    Files.write(dir.resolve("in-broken.ppm"), "P6 broken".getBytes(StandardCharsets.US_ASCII));
+    String script = "create base current base load {input} grayscale save "
+        + dir.resolve("out-{name}.ppm");
+    StringBuilder report = new StringBuilder();
+    new BatchImageProcessingController(script, dir, "in-*.ppm", 2, 2, report).processImage();
+
+    assertTrue(report.toString(), report.toString().endsWith(
+        "Processed 7 image(s): 6 succeeded, 1 failed.\n"));
+    assertTrue(report.toString().contains("FAILED " + dir.resolve("in-broken.ppm") + ": load"));
+    IImage expected = new Grayscale().apply(new Image(grid2, "gray"));
+    for (int i = 0; i < 5; i++) {
+      assertTrue(report.toString().contains("OK " + dir.resolve("in-" + i + ".ppm") + "\n"));
+      model.setCurrent("first");
+      new LoadSingleCommand(dir.resolve("out-in-" + i + ".ppm").toString()).runCommand(model);
+      assertArrayEquals(expected.getImage(), model.getLayers().get(0).getImage().getImage());
+    }
+    assertTrue(report.toString().contains("OK " + dir.resolve("in-with space.ppm") + "\n"));
+    model.setCurrent("first");
+    new LoadSingleCommand(dir.resolve("out-in-with space.ppm").toString()).runCommand(model);
+    assertArrayEquals(expected.getImage(), model.getLayers().get(0).getImage().getImage());
+    for (File f : dir.toFile().listFiles()) {
+      f.delete();
+    }
+    dir.toFile().delete();
+  }
+
+  @Test
+  public void testLoadAllKeepsLayerOrderAndReportsEveryFailedLayer() throws IOException {
+    Path dir = Files.createTempDirectory("loadall");
+    StringBuilder manifest = new StringBuilder();
+    for (int i = 0; i < 8; i++) {
+      new BinaryPPMExportFilename(i % 2 == 0 ? exImage : exImage2,
+          dir.resolve("layer" + i).toString(), false).export();
+      manifest.append(i).append(", ").append(dir.resolve("layer" + i + ".ppm")).append(", ")
+          .append(i != 3).append("\n");
+    }
+    manifest.append("8, noimage, false\n");
+    Files.write(dir.resolve("good.txt"), manifest.toString().getBytes(StandardCharsets.UTF_8));
+    manifest.append("9, ").append(dir.resolve("missingA.ppm")).append(", true\n");
+    manifest.append("10, ").append(dir.resolve("missingB.ppm")).append(", true\n");
+    Files.write(dir.resolve("bad.txt"), manifest.toString().getBytes(StandardCharsets.UTF_8));
+
+    ILayerModel loaded = new LayerModel();
+    new LoadAllCommand(dir.resolve("good.txt").toString()).runCommand(loaded);
+    assertEquals(9, loaded.getLayers().size());
+    for (int i = 0; i < 8; i++) {
+      ILayer layer = loaded.getLayers().get(i);
+      assertEquals("layer" + i, layer.getName());
+      assertEquals(i != 3, layer.isVisible());
+      assertArrayEquals((i % 2 == 0 ? grid1 : grid2), layer.getImage().getImage());
+    }
+    assertNull(loaded.getLayers().get(8).getImageView());
+
+    try {
+      new LoadAllCommand(dir.resolve("bad.txt").toString()).runCommand(new LayerModel());
+      fail("The missing layers should have been reported.");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("layer 10 (missingA)"));
+      assertTrue(e.getMessage(), e.getMessage().contains("layer 11 (missingB)"));
+      assertFalse(e.getMessage(), e.getMessage().contains("layer 1 "));
+    }
+    for (File f : dir.toFile().listFiles()) {
+      f.delete();
+    }
+    dir.toFile().delete();
+  }
+
+  @Test
+  public void testDecodedImageCacheDecodesEachFileOnce() throws IOException {
+    Path dir = Files.createTempDirectory("cache");
+    String first = dir.resolve("first.ppm").toString();
+    String second = dir.resolve("second.ppm").toString();
+    new BinaryPPMExportFilename(exImage, dir.resolve("first").toString(), false).export();
+    new BinaryPPMExportFilename(exImage2, dir.resolve("second").toString(), false).export();
+    int[] decodes = new int[1];
+    Function<String, IImage> decoder = filename -> {
+      decodes[0]++;
+      return BinaryPPMReader.readFile(filename);
+    };
+
+    DecodedImageCache cache = new DecodedImageCache(
+        4L * exImage.getWidth() * exImage.getHeight());
+    IImage loaded = cache.load(first, decoder);
+    IImage again = cache.load(dir.resolve(".").resolve("first.ppm").toString(), decoder);
+    assertEquals(1, decodes[0]);
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    loaded.flipImageH();
+    assertArrayEquals(grid1, again.getImage());
+
+    // only one image fits, so loading another evicts the first
+    assertArrayEquals(grid2, cache.load(second, decoder).getImage());
+    assertArrayEquals(grid1, cache.load(first, decoder).getImage());
+    assertEquals(3, decodes[0]);
+    assertEquals(4L * exImage.getWidth() * exImage.getHeight(), cache.getBytes());
+
+    // a file that is written again is decoded again
+    Files.delete(dir.resolve("first.ppm"));
+    new BinaryPPMExportFilename(exImage2, dir.resolve("first").toString(), false).export();
+    assertArrayEquals(grid2, cache.load(first, decoder).getImage());
+    assertEquals(4, decodes[0]);
+
+    long hits = DecodedImageCache.getDefault().getHits();
+    new InputFilenameManager(second).apply();
+    new InputFilenameManager(second).apply();
+    assertTrue(DecodedImageCache.getDefault().getHits() > hits);
+    for (File f : dir.toFile().listFiles()) {
+      f.delete();
+    }
+    dir.toFile().delete();
+  }
+
+  @Test
+  public void testServerProcessesImagesAndShedsLoad() throws IOException {
+    Path dir = Files.createTempDirectory("server");
+    new BinaryPPMExportFilename(exImage, dir.resolve("in").toString(), false).export();
+    byte[] upload = Files.readAllBytes(dir.resolve("in.ppm"));
+    ImageProcessingServer server = new ImageProcessingServer(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 1);
+    server.start();
+    String base = "http://localhost:" + server.getAddress().getPort() + "/process?script=";
+    try {
+      DecodedImageCache cache = DecodedImageCache.getDefault();
+      long loads = cache.getHits() + cache.getMisses();
+      HttpURLConnection ok = post(base + "grayscale%20flip-h%20flip-h", upload);
+      assertEquals(200, ok.getResponseCode());
+      // uploads are not decoded through the shared cache
+      assertEquals(loads, cache.getHits() + cache.getMisses());
+      Files.copy(ok.getInputStream(), dir.resolve("out.ppm"));
+      assertArrayEquals(new Grayscale().apply(exImage).getImage(),
+          BinaryPPMReader.readFile(dir.resolve("out.ppm").toString()).getImage());
+
+      // a response is sent before its request leaves the only slot, so every request waits for it
+      awaitRequestsInFlight(server, 0);
+      assertEquals(400, post(base + "bogus", upload).getResponseCode());
+      // scripts cannot touch the files of the server
+      awaitRequestsInFlight(server, 0);
+      String leak = URLEncoder.encode(dir.resolve("leak.ppm").toString(), StandardCharsets.UTF_8);
+      assertEquals(400, post(base + "save%20" + leak, upload).getResponseCode());
+      assertFalse(Files.exists(dir.resolve("leak.ppm")));
+
+      // a request still sending its image holds the only slot, so the next one is turned away
+      awaitRequestsInFlight(server, 0);
+      HttpURLConnection slow = (HttpURLConnection) new URL(base + "grayscale").openConnection();
+      slow.setReadTimeout(10000);
+      slow.setDoOutput(true);
+      slow.setChunkedStreamingMode(16);
+      OutputStream slowBody = slow.getOutputStream();
+      slowBody.write(upload, 0, 4);
+      slowBody.flush();
+      awaitRequestsInFlight(server, 1);
+      assertEquals(503, post(base + "grayscale", upload).getResponseCode());
+      slowBody.write(upload, 4, upload.length - 4);
+      slowBody.close();
+      assertEquals(200, slow.getResponseCode());
+    } finally {
+      server.stop(0);
+      for (File f : dir.toFile().listFiles()) {
+        f.delete();
+      }
+      dir.toFile().delete();
+    }
+  }
+
+  /**
+   * Waits up to ten seconds for the given number of requests to be in flight on the given server.
+   *
+   * @param server   the server
+   * @param requests the number of requests to wait for
+   */
+  private static void awaitRequestsInFlight(ImageProcessingServer server, int requests) {
+    for (int i = 0; i < 1000 && server.getRequestsInFlight() != requests; i++) {
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    assertEquals(requests, server.getRequestsInFlight());
+  }
+
+  /**
+   * Sends the given body to the given URL.
+   *
+   * @param url  the URL to send the body to
+   * @param body the body of the request
+   * @return the connection of the request, whose response can be read
+   * @throws IOException if the request cannot be sent
+   */
+  private static HttpURLConnection post(String url, byte[] body) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setReadTimeout(10000);
+    connection.setDoOutput(true);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body);
+    }
+    return connection;
+  }
+
+  @Test
+  public void testCompiledScriptRunsAgainstManyModels() throws IOException {
+    try {
+      ScriptCompiler.compile("create first\nbogus\nblend nowhere\ncurrent");
+      fail("The invalid script should have been rejected.");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("line 2: Invalid input bogus!"));
+      assertTrue(e.getMessage(), e.getMessage().contains("line 3: blend is invalid"));
+      assertTrue(e.getMessage(), e.getMessage().contains("line 4: Missing argument for current!"));
+    }
+    try {
+      ScriptCompiler.compile("create first\nsave out\ngrayscale",
+          new HashSet<>(Arrays.asList("create", "grayscale")));
+      fail("The command that is not allowed should have been rejected.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Invalid script! line 2: Command save is not allowed!", e.getMessage());
+    }
+
+    Path dir = Files.createTempDirectory("script");
+    new BinaryPPMExportFilename(exImage, dir.resolve("in").toString(), false).export();
+    CompiledScript script = ScriptCompiler.compile("create base\n  current base load "
+        + dir.resolve("in.ppm") + "\n\ngrayscale flip-h\nq\nbogus");
+    assertEquals(5, script.size());
+    assertEquals("grayscale", script.getName(3));
+    assertEquals(4, script.getLine(3));
+
+    IImage expected = new Grayscale().apply(exImage);
+    for (int i = 0; i < 3; i++) {
+      ILayerModel model = new LayerModel(i % 2 == 0);
+      script.run(model);
+      model.flipCurrentHorizontally();
+      assertArrayEquals(expected.getImage(), model.getCurrentLayer().getImage().getImage());
+    }
+    try {
+      script.run(new LayerModel());
+      dir.resolve("in.ppm").toFile().delete();
+      script.run(new LayerModel());
+      fail("The missing image should have been reported.");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("load failed on line 2: "));
+    }
+    dir.toFile().delete();
+  }
+
+  @Test
+  public void testCompiledScriptBindsPlaceholdersOnEveryRun() throws IOException {
+    Path dir = Files.createTempDirectory("placeholders");
+    new BinaryPPMExportFilename(exImage, dir.resolve("first in").toString(), false).export();
+    new BinaryPPMExportFilename(exImage2, dir.resolve("second").toString(), false).export();
+    CompiledScript script = ScriptCompiler.compile(
+        "create base current base load {input} grayscale save {dir}/{name}-out.ppm");
+    assertEquals(Arrays.asList("input", "dir", "name"), new ArrayList<>(script.getPlaceholders()));
+
+    for (String name : new String[] {"first in", "second"}) {
+      Map<String, String> values = new HashMap<>();
+      values.put("input", dir.resolve(name + ".ppm").toString());
+      values.put("dir", dir.toString());
+      values.put("name", name);
+      script.run(new LayerModel(true), values);
+    }
+    assertArrayEquals(new Grayscale().apply(exImage).getImage(),
+        BinaryPPMReader.readFile(dir.resolve("first in-out.ppm").toString()).getImage());
+    assertArrayEquals(new Grayscale().apply(exImage2).getImage(),
+        BinaryPPMReader.readFile(dir.resolve("second-out.ppm").toString()).getImage());
+    try {
+      script.run(new LayerModel());
+      fail("The placeholders without values should have been reported.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("No value for {input}!", e.getMessage());
+    }
+    for (File f : dir.toFile().listFiles()) {
+      f.delete();
+    }
+    dir.toFile().delete();
+  }
+
+  @Test
+  public void testLayerInfoDoesNotFlushTheLayers() {
+    ILayerModel m = new LayerModel(true);
+    m.createImageLayer("first");
+    m.createImageLayer("second");
+    m.setCurrent("second");
+    m.loadLayer(new Image(40, 30, new int[40 * 30], "Base"));
+    m.colorTransformCurrent(new Grayscale());
+
+    ILayerModelState state = new LayerModelState(m);
+    List<LayerInfo> info = state.getLayerInfo();
+    assertEquals(1, state.getCurrentIndex());
+    assertFalse(info.get(0).hasImage());
+    assertEquals("Base", info.get(1).getFilename());
+    assertEquals(40, info.get(1).getWidth());
+    assertEquals(30, info.get(1).getHeight());
+    assertEquals(m.getCurrentLayer().toString(), info.get(1).toString());
+    assertTrue(m.getCurrentLayer().hasDeferredOperations());
+  }
+
+  @Test
+  public void testDeferredTransformsRunOnTheEngineOfTheModel() {
+    AtomicInteger transforms = new AtomicInteger();
+    ColorTransformEngine counting = new ColorTransformEngine(2, 0) {
+      @Override
+      public IImage transform(IImage image, IRasterKernel kernel) {
+        transforms.incrementAndGet();
+        return super.transform(image, kernel);
+      }
+    };
+    ILayerModel m = new LayerModel(true);
+    m.createImageLayer("first");
+    m.loadLayer(new Image(40, 30, new int[40 * 30], "Base"));
+    m.setEngine(counting);
+    m.createImageLayer("second");
+    m.setCurrent("second");
+    m.loadLayer(new Image(40, 30, new int[40 * 30], "Base"));
+    m.colorTransformCurrent(new Grayscale());
+    m.setCurrent("first");
+    m.colorTransformCurrent(new Grayscale());
+
+    // reading the version of a layer does not flush it
+    ILayer first = m.getCurrentLayer();
+    long version = first.getVersion();
+    assertTrue(first.hasDeferredOperations());
+    assertEquals(0, transforms.get());
+
+    m.flush();
+    assertEquals(2, transforms.get());
+    assertTrue(first.getVersion() > version);
+    m.close();
+    counting.close();
+  }
+
+  @Test
+  public void testLayersMustMatchTheCanvasWidthAndHeight() {
+    ILayerModel m = new LayerModel();
+    for (int i = 0; i < 3; i++) {
+      m.createImageLayer("layer" + i);
+    }
+    m.setCurrent("layer0");
+    m.loadLayer(new Image(40, 30, new int[40 * 30], "Base"));
+    m.setCurrent("layer1");
+    m.loadLayer(new Image(40, 30, new int[40 * 30], "Same"));
+    m.setCurrent("layer2");
+    try {
+      m.loadLayer(new Image(41, 30, new int[41 * 30], "Wider"));
+      fail("An image of another width should have been rejected.");
+    } catch (IllegalArgumentException e) {
+      assertNull(m.getCurrentLayer().getImageView());
+    }
+    assertEquals("layer1", m.getLayers().get(1).getName());
+    m.setCurrent("layer1");
+    assertEquals("Same", m.getCurrentLayer().getImageView().getFilename());
+  }
+
+  @Test
+  public void testCanvasIsForgottenOnceNoLayerHasAnImage() {
+    ILayerModel m = new LayerModel();
+    m.createImageLayer("layer0");
+    m.createImageLayer("layer1");
+    m.loadLayer(new Image(40, 30, new int[40 * 30], "Base"));
+    m.undo();
+    m.loadLayer(new Image(20, 10, new int[20 * 10], "Smaller"));
+    assertEquals(20, m.getCurrentLayer().getImageView().getWidth());
+
+    m.setCurrent("layer1");
+    try {
+      m.loadLayer(new Image(40, 30, new int[40 * 30], "Base"));
+      fail("An image of another size should have been rejected.");
+    } catch (IllegalArgumentException e) {
+      assertNull(m.getCurrentLayer().getImageView());
+    }
+  }
+
+  @Test
+  public void testSaveAllOnlyRewritesChangedLayers() throws IOException {
+    Path dir = Files.createTempDirectory("saveall");
+    StringBuilder manifest = new StringBuilder();
+    for (int i = 0; i < 2; i++) {
+      new BinaryPPMExportFilename(i == 0 ? exImage : exImage2,
+          dir.resolve("layer" + i).toString(), false).export();
+      manifest.append(i).append(", ").append(dir.resolve("layer" + i + ".ppm")).append(", true\n");
+    }
+    Files.write(dir.resolve("in.txt"), manifest.toString().getBytes(StandardCharsets.UTF_8));
+    ILayerModel model = new LayerModel();
+    new LoadAllCommand(dir.resolve("in.txt").toString()).runCommand(model);
+
+    Path saved = dir.resolve("saved");
+    new SaveAllCommand(saved.toString()).runCommand(model);
+    Path savedManifest = saved.resolve(SaveAllCommand.MANIFEST);
+    for (String line : Files.readAllLines(savedManifest, StandardCharsets.UTF_8)) {
+      assertEquals(line, 4, line.split(", ").length);
+    }
+    FileTime old = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(saved.resolve("layer0.ppm"), old);
+    Files.setLastModifiedTime(saved.resolve("layer1.ppm"), old);
+
+    // a save that stopped while writing a layer only leaves a partial file behind
+    Files.write(saved.resolve(".layer1.partial.ppm"), new byte[]{'P', '6'});
+
+    // saving into the same directory only rewrites the layer that changed
+    model.setCurrent("layer1");
+    model.flipCurrentHorizontally();
+    new SaveAllCommand(saved.toString()).runCommand(model);
+    assertFalse(Files.exists(dir.resolve("saved1")));
+    assertEquals(old, Files.getLastModifiedTime(saved.resolve("layer0.ppm")));
+    assertNotEquals(old, Files.getLastModifiedTime(saved.resolve("layer1.ppm")));
+    assertEquals(2, saved.toFile().listFiles().length - 1);
+
+    ILayerModel loaded = new LayerModel();
+    new LoadAllCommand(savedManifest.toString()).runCommand(loaded);
+    for (int i = 0; i < 2; i++) {
+      assertArrayEquals(model.getLayers().get(i).getImage().getImage(),
+          loaded.getLayers().get(i).getImage().getImage());
+    }
+    for (File f : saved.toFile().listFiles()) {
+      f.delete();
+    }
+    saved.toFile().delete();
+    for (File f : dir.toFile().listFiles()) {
+      f.delete();
+    }
+    dir.toFile().delete();
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testNullSaveAllCommand() {
     new SaveAllCommand(null);
@@ -220,4 +887,131 @@ public class testCommands {
                     + "Current Layer: Name of Layer: second, Image Filename: Grid2, Visibility: true\n",
             model.toString());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testFlattenBlendsVisibleLayers() {
+    ILayerModel layers = new LayerModel();
+    layers.createImageLayer("bottom");
+    layers.loadLayer(new Image(2, 1, new int[]{0xC86432, 0xC86432}, "Bottom"));
+    layers.createImageLayer("top");
+    layers.setCurrent("top");
+    layers.loadLayer(new Image(2, 1, new int[]{0x80FF00, 0x80FF00},
+        new byte[]{(byte) 255, (byte) 128}, "Top"));
+
+    // half of the second pixel of the top layer shows the bottom layer
+    IImage normal = layers.flatten();
+    assertFalse(normal.hasAlpha());
+    assertEquals("Top", normal.getFilename());
+    assertEquals(0x80FF00, normal.getRGB(0, 0));
+    assertEquals(0xA4B219, normal.getRGB(0, 1));
+
+    new BlendCommand("multiply").runCommand(layers);
+    assertEquals(0x646400, layers.flatten().getRGB(0, 0));
+    new BlendCommand("screen").runCommand(layers);
+    assertEquals(0xE4FF32, layers.flatten().getRGB(0, 0));
+
+    // with the top layer hidden, the bottom layer is flattened on its own
+    layers.getCurrentLayer().setVisibility(false);
+    assertEquals(0xC86432, layers.flatten().getRGB(0, 1));
+  }
+
+  @Test
+  public void testFlattenAgainMatchesFlatteningFromScratch() {
+    // the compositor of the model records the rows every flatten flattens again
+    List<int[]> flattened = new ArrayList<>();
+    LayerCompositor probe = new LayerCompositor(1, 0) {
+      @Override
+      protected void flattenRows(IImageView[] images, BlendMode[] modes, int[] raster,
+          byte[] alpha, int fromRow, int toRow) {
+        flattened.add(new int[]{fromRow, toRow});
+        super.flattenRows(images, modes, raster, alpha, fromRow, toRow);
+      }
+    };
+    ILayerModel layers = new LayerModel(false, probe);
+    int[] raster = new int[300 * 200];
+    byte[] alpha = new byte[raster.length];
+    for (int i = 0; i < raster.length; i++) {
+      raster[i] = (int) ((i * 2654435761L) & 0xFFFFFF);
+      alpha[i] = (byte) (i * 7);
+    }
+    for (String name : new String[]{"bottom", "middle", "top"}) {
+      layers.createImageLayer(name);
+      layers.setCurrent(name);
+      layers.loadLayer(new Image(300, 200, raster.clone(), alpha.clone(), name));
+    }
+
+    IImage first = layers.flatten();
+    int[] firstColors = new int[raster.length];
+    first.getRows(0, 200, firstColors, 0);
+    assertRowsFlattened(flattened, 0, 200);
+    // an unchanged stack flattens nothing
+    assertEquals(first, layers.flatten());
+    assertRowsFlattened(flattened);
+    new BlendCommand("multiply").runCommand(layers);
+    assertEquals(LayerCompositor.getDefault().flatten(layers.getLayers()), layers.flatten());
+    assertRowsFlattened(flattened, 0, 200);
+    layers.setCurrent("middle");
+    new FlipVerticallyCommand().runCommand(layers);
+    new GrayscaleCommand().runCommand(layers);
+    assertEquals(LayerCompositor.getDefault().flatten(layers.getLayers()), layers.flatten());
+    assertRowsFlattened(flattened, 0, 200);
+    layers.getCurrentLayer().setVisibility(false);
+    assertEquals(LayerCompositor.getDefault().flatten(layers.getLayers()), layers.flatten());
+    assertRowsFlattened(flattened, 0, 200);
+    // an edit of a hidden layer flattens nothing
+    new FlipVerticallyCommand().runCommand(layers);
+    layers.flatten();
+    assertRowsFlattened(flattened);
+    layers.getCurrentLayer().setVisibility(true);
+    assertEquals(LayerCompositor.getDefault().flatten(layers.getLayers()), layers.flatten());
+    assertRowsFlattened(flattened, 0, 200);
+    // the image returned by the first flatten is not changed by later ones
+    int[] colors = new int[raster.length];
+    first.getRows(0, 200, colors, 0);
+    assertArrayEquals(firstColors, colors);
+
+    // every edit through a model changes whole images, so a layer that only changes some rows
+    // reports them itself, and only the tiles of 54 rows covering them are flattened again
+    int[][] changed = new int[1][];
+    Layer partial = new Layer("partial") {
+      @Override
+      public int[] getChangedRows(long sinceVersion) {
+        int[] rows = super.getChangedRows(sinceVersion);
+        return changed[0] != null && rows != null && rows[0] < rows[1] ? changed[0] : rows;
+      }
+    };
+    partial.setImage(new Image(300, 200, raster.clone(), alpha.clone(), "partial"));
+    Layer below = new Layer("below");
+    below.setImage(new Image(300, 200, raster.clone(), "below"));
+    ILayerModel edits = new LayerModel(false, probe);
+    edits.loadAll(Arrays.asList(below, partial));
+    edits.flatten();
+    assertRowsFlattened(flattened, 0, 200);
+    int[] edited = raster.clone();
+    for (int i = 90 * 300; i < 110 * 300; i++) {
+      edited[i] ^= 0xFFFFFF;
+    }
+    partial.setImage(new Image(300, 200, edited, alpha.clone(), "partial"));
+    changed[0] = new int[]{90, 110};
+    assertEquals(LayerCompositor.getDefault().flatten(edits.getLayers()), edits.flatten());
+    assertRowsFlattened(flattened, 54, 162);
+    probe.close();
+  }
+
+  /**
+   * Checks that the given rows, and only them, were flattened again since the last check, and
+   * forgets them.
+   *
+   * @param flattened the first and last rows of every call that flattened rows, in order
+   * @param rows      the first and last rows of every expected call, in order
+   */
+  private static void assertRowsFlattened(List<int[]> flattened, int... rows) {
+    int[] actual = new int[2 * flattened.size()];
+    for (int i = 0; i < flattened.size(); i++) {
+      actual[2 * i] = flattened.get(i)[0];
+      actual[2 * i + 1] = flattened.get(i)[1];
+    }
+    assertArrayEquals(rows, actual);
+    flattened.clear();
+  }
+}
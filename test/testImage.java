@@ -0,0 +1,333 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import model.color.Grayscale;
+import model.exports.PPMExport;
+import model.image.IImage;
+import model.image.IPixel;
+import model.image.Image;
+import model.image.OffHeapImage;
+import model.image.TileCache;
+import model.image.TiledImage;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests that the lazy flips and rotations of {@link Image} give the same pixels as
+ * flipping and rotating the pixels directly, for every chain of up to four of them, and that a
+ * {@link TiledImage} and an {@link OffHeapImage} give the same pixels as an {@link Image}, that the
+ * tiles of an unused {@link TiledImage} are dropped, that an {@link OffHeapImage} transforms every
+ * block of its pixels, and that a {@link PPMExport} writes the expected bytes.
+ */
+public class testImage {
+
+  private static final int WIDTH = 67;
+  private static final int HEIGHT = 131;
+
+  private int[][] pixels;
+
+  @Before
+  public void setUp() {
+    Random random = new Random(7);
+    pixels = new int[HEIGHT][WIDTH];
+    for (int i = 0; i < HEIGHT; i++) {
+      for (int j = 0; j < WIDTH; j++) {
+        pixels[i][j] = random.nextInt(1 << 24);
+      }
+    }
+  }
+
+  @Test
+  public void testPlainExportMatchesReferenceWriter() throws IOException {
+    List<IImage> images = new ArrayList<>();
+    // all white images whose samples fill the buffer of the export up to and past its end
+    for (int width = 126; width <= 130; width++) {
+      int[] white = new int[width * 128];
+      Arrays.fill(white, 0xFFFFFF);
+      images.add(new Image(width, 128, white, "white"));
+    }
+    // a first line of exactly 70 characters, after which the next sample wraps
+    int[] edge = new int[12];
+    Arrays.fill(edge, 0, 5, 0xFFFFFF);
+    edge[5] = 0xFF0A64;
+    Arrays.fill(edge, 6, 12, 0x070707);
+    images.add(new Image(12, 1, edge, "edge"));
+    images.add(new Image(WIDTH, HEIGHT, pack(pixels), "random"));
+
+    for (IImage image : images) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new PPMExport(image, out).export();
+      String exported = out.toString(StandardCharsets.US_ASCII);
+      assertEquals(referencePlainExport(image), exported);
+      // the samples are the same as the ones of the export before its output was buffered
+      assertEquals(Arrays.asList(baselinePlainExport(image).trim().split("\\s+")),
+          Arrays.asList(exported.trim().split("\\s+")));
+    }
+  }
+
+  @Test
+  public void testChainsOfFlipsAndRotations() {
+    for (int chain = 0; chain < 4 * 4 * 4 * 4; chain++) {
+      IImage image = new Image(WIDTH, HEIGHT, pack(pixels), "chain");
+      IImage copy = image.copy();
+      int[][] expected = pixels;
+      for (int step = 0, ops = chain; step < 4; step++, ops /= 4) {
+        expected = apply(image, expected, ops % 4);
+      }
+
+      assertEquals(expected.length, image.getHeight());
+      assertEquals(expected[0].length, image.getWidth());
+      int[] rows = new int[image.getWidth() * image.getHeight()];
+      image.getRows(0, image.getHeight(), rows, 0);
+      assertArrayEquals(pack(expected), rows);
+      assertEquals(expected[expected.length - 1][0], image.getRGB(expected.length - 1, 0));
+
+      // the copy taken before the flips and rotations is unchanged
+      int[] original = new int[WIDTH * HEIGHT];
+      copy.getRows(0, HEIGHT, original, 0);
+      assertArrayEquals(pack(pixels), original);
+    }
+  }
+
+  @Test
+  public void testFlipTwiceIsIdentity() {
+    IImage image = new Image(WIDTH, HEIGHT, pack(pixels), "twice");
+    image.flipImageH();
+    image.flipImageV();
+    image.flipImageH();
+    image.flipImageV();
+    assertEquals(new Image(WIDTH, HEIGHT, pack(pixels), "twice"), image);
+  }
+
+  @Test
+  public void testTiledImageMatchesImage() {
+    // 3 by 3 tiles, with a cache of only 3 tiles so that tiles are evicted and written back
+    int width = 600;
+    int height = 530;
+    Random random = new Random(11);
+    int[][] grid = new int[height][width];
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        grid[i][j] = random.nextInt(1 << 24);
+      }
+    }
+    TileCache cache = new TileCache(3 * 4 * 256 * 256);
+    TiledImage tiled = new TiledImage(width, height, "tiled", cache);
+    tiled.setRows(0, height, pack(grid), 0);
+    assertEquals(3 * 4 * 256 * 256, cache.getBytes());
+
+    for (int chain = 0; chain < 4 * 4 * 4; chain++) {
+      IImage image = tiled.copy();
+      int[][] expected = grid;
+      for (int step = 0, ops = chain; step < 3; step++, ops /= 4) {
+        expected = apply(image, expected, ops % 4);
+      }
+      int[] rows = new int[width * height];
+      image.getRows(0, image.getHeight(), rows, 0);
+      assertArrayEquals(pack(expected), rows);
+      assertEquals(expected[expected.length - 1][0], image.getRGB(expected.length - 1, 0));
+    }
+
+    tiled.rotateImageClockwise();
+    IImage reference = new Image(width, height, pack(grid), "tiled");
+    reference.rotateImageClockwise();
+    int[] expected = new int[width * height];
+    new Grayscale().apply(reference).getRows(0, width, expected, 0);
+    int[] actual = new int[width * height];
+    new Grayscale().apply(tiled).getRows(0, width, actual, 0);
+    assertArrayEquals(expected, actual);
+  }
+
+  @Test
+  public void testTilesOfUnusedImagesAreDropped() {
+    long tileBytes = 4 * 256 * 256;
+    TileCache cache = new TileCache(16 * tileBytes);
+    TiledImage unused = new TiledImage(600, 530, "unused", cache);
+    unused.setRows(0, 530, new int[600 * 530], 0);
+    assertEquals(9 * tileBytes, cache.getBytes());
+    TiledImage kept = new TiledImage(1, 1, "kept", cache);
+    kept.setRows(0, 1, new int[] {0x123456}, 0);
+    assertEquals(10 * tileBytes, cache.getBytes());
+
+    // the tiles of an image are dropped as they are once it is collected, leaving the others
+    cache.drop(unused);
+    assertEquals(tileBytes, cache.getBytes());
+    assertEquals(0x123456, kept.getRGB(0, 0));
+  }
+
+  @Test
+  public void testOffHeapImageMatchesImage() {
+    OffHeapImage offHeap = new OffHeapImage(new Image(WIDTH, HEIGHT, pack(pixels), "offHeap"));
+    for (int chain = 0; chain < 4 * 4 * 4; chain++) {
+      IImage image = offHeap.copy();
+      int[][] expected = pixels;
+      for (int step = 0, ops = chain; step < 3; step++, ops /= 4) {
+        expected = apply(image, expected, ops % 4);
+      }
+      int[] rows = new int[WIDTH * HEIGHT];
+      image.getRows(0, image.getHeight(), rows, 0);
+      assertArrayEquals(pack(expected), rows);
+      assertEquals(expected[expected.length - 1][0], image.getRGB(expected.length - 1, 0));
+    }
+
+    IImage copy = offHeap.copy();
+    copy.flipImageV();
+    IImage reference = new Image(WIDTH, HEIGHT, pack(pixels), "offHeap");
+    reference.flipImageV();
+    int[] expected = new int[WIDTH * HEIGHT];
+    new Grayscale().apply(reference).getRows(0, HEIGHT, expected, 0);
+    int[] actual = new int[WIDTH * HEIGHT];
+    new Grayscale().apply(copy).getRows(0, HEIGHT, actual, 0);
+    assertArrayEquals(expected, actual);
+
+    // closing an image leaves its copies readable
+    offHeap.close();
+    assertTrue(offHeap.isClosed());
+    assertEquals(pixels[HEIGHT - 1][0], copy.getRGB(0, 0));
+    try {
+      offHeap.getRGB(0, 0);
+      fail("A closed image should not be readable.");
+    } catch (IllegalStateException e) {
+      assertEquals("The image is closed.", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testOffHeapMapTilesTransformsEveryBlock() {
+    // more than one block of 65536 pixels, the last of which is partial
+    int width = 301;
+    int height = 251;
+    int[] colors = new int[width * height];
+    Random random = new Random(3);
+    for (int i = 0; i < colors.length; i++) {
+      colors[i] = random.nextInt(1 << 24);
+    }
+    OffHeapImage offHeap = new OffHeapImage(new Image(width, height, colors.clone(), "blocks"));
+    OffHeapImage mapped = offHeap.mapTiles((block, count) -> {
+      for (int i = 0; i < count; i++) {
+        block[i] ^= 0xFFFFFF;
+      }
+    });
+    int[] expected = new int[colors.length];
+    for (int i = 0; i < colors.length; i++) {
+      expected[i] = colors[i] ^ 0xFFFFFF;
+    }
+    int[] actual = new int[colors.length];
+    mapped.getRows(0, height, actual, 0);
+    assertArrayEquals(expected, actual);
+
+    // closing an image only drops its own references, so the mapped image stays readable
+    offHeap.close();
+    assertEquals(expected[colors.length - 1], mapped.getRGB(height - 1, width - 1));
+  }
+
+  private int[][] apply(IImage image, int[][] grid, int op) {
+    int height = grid.length;
+    int width = grid[0].length;
+    int[][] result;
+    switch (op) {
+      case 0:
+        image.flipImageH();
+        result = new int[height][width];
+        for (int i = 0; i < height; i++) {
+          for (int j = 0; j < width; j++) {
+            result[i][j] = grid[i][width - 1 - j];
+          }
+        }
+        return result;
+      case 1:
+        image.flipImageV();
+        result = new int[height][];
+        for (int i = 0; i < height; i++) {
+          result[i] = grid[height - 1 - i];
+        }
+        return result;
+      case 2:
+        image.rotateImageClockwise();
+        result = new int[width][height];
+        for (int i = 0; i < width; i++) {
+          for (int j = 0; j < height; j++) {
+            result[i][j] = grid[height - 1 - j][i];
+          }
+        }
+        return result;
+      default:
+        image.rotateImageCounterclockwise();
+        result = new int[width][height];
+        for (int i = 0; i < width; i++) {
+          for (int j = 0; j < height; j++) {
+            result[i][j] = grid[j][width - 1 - i];
+          }
+        }
+        return result;
+    }
+  }
+
+  private static int[] pack(int[][] grid) {
+    int[] raster = new int[grid.length * grid[0].length];
+    for (int i = 0; i < grid.length; i++) {
+      System.arraycopy(grid[i], 0, raster, i * grid[i].length, grid[i].length);
+    }
+    return raster;
+  }
+
+  /**
+   * Exports the given image to the plain PPM format one sample at a time, wrapping lines at 70
+   * characters, which is the output expected from {@link PPMExport}.
+   *
+   * @param image the image to export
+   * @return the exported file
+   */
+  private static String referencePlainExport(IImage image) {
+    StringBuilder file = new StringBuilder();
+    file.append("P3\n").append(image.getWidth()).append(" ").append(image.getHeight())
+        .append("\n255\n");
+    int lineLength = 0;
+    for (int i = 0; i < image.getHeight(); i++) {
+      for (int j = 0; j < image.getWidth(); j++) {
+        int rgb = image.getRGB(i, j);
+        for (int shift = 16; shift >= 0; shift -= 8) {
+          String sample = String.valueOf((rgb >> shift) & 0xFF);
+          if (lineLength > 0 && lineLength + 1 + sample.length() > 70) {
+            file.append("\n");
+            lineLength = 0;
+          } else if (lineLength > 0) {
+            file.append(" ");
+            lineLength++;
+          }
+          file.append(sample);
+          lineLength += sample.length();
+        }
+      }
+    }
+    return file.append("\n").toString();
+  }
+
+  /**
+   * Exports the given image the way {@link PPMExport} did before it buffered its output, as every
+   * pixel followed by a space after a single header line.
+   *
+   * @param image the image to export
+   * @return the exported file
+   */
+  private static String baselinePlainExport(IImage image) {
+    StringBuilder file = new StringBuilder(String.format("P3 %d %d %d\n", image.getWidth(),
+        image.getHeight(), 255));
+    IPixel[][] grid = image.getImage();
+    for (IPixel[] row : grid) {
+      for (IPixel pixel : row) {
+        file.append(pixel.toString()).append(" ");
+      }
+    }
+    return file.toString();
+  }
+}